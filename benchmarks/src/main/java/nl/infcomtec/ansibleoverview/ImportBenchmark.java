@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Variables of a whole SyntheticTree: importing every group_vars, host_vars
+ * and role defaults/vars file (parse and apply, as the scanner does) and
+ * resolving against the model a full scan of the tree produces. Scale 1 is
+ * 100 hosts in 10 groups with 10 roles, scale 50 is 5000 hosts in 500 groups
+ * with 500 roles.
+ *
+ * @author walter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImportBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    /**
+     * SyntheticTree scale factor.
+     */
+    @Param({"1", "10", "50"})
+    public int scale;
+
+    private File dir;
+    /**
+     * The scanned tree, to resolve against.
+     */
+    private Main main;
+    /**
+     * Imports into this one, so main stays as scanned.
+     */
+    private Main target;
+    private final List<ScanResult> files = new ArrayList<>();
+    private final List<byte[]> data = new ArrayList<>();
+    private String[] queryHosts;
+    private String[] queryNames;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("ansover-bench").toFile();
+        new SyntheticTree().scale(scale).write(dir);
+        main = new Main();
+        main.rescan(Arrays.asList(dir.getPath()));
+        target = new Main();
+        File[] groupVars = new File(dir, "group_vars").listFiles();
+        for (File f : null == groupVars ? new File[0] : groupVars) {
+            add(new ScanResult(ScanResult.Kind.VARS, f, null, null, f.getName().replace(".yml", ""), null));
+        }
+        File[] hostVars = new File(dir, "host_vars").listFiles();
+        for (File f : null == hostVars ? new File[0] : hostVars) {
+            add(new ScanResult(ScanResult.Kind.VARS, f, null, f.getName().replace(".yml", ""), null, null));
+        }
+        File[] roles = new File(dir, "roles").listFiles();
+        for (File role : null == roles ? new File[0] : roles) {
+            for (String part : new String[]{"defaults", "vars"}) {
+                File f = new File(role, part + "/main.yml");
+                if (f.isFile()) {
+                    add(new ScanResult(ScanResult.Kind.VARS, f, role.getName(), null, null, part));
+                }
+            }
+        }
+        VariableIndex index = main.session.getVariableIndex();
+        String[] hosts = index.getHosts().toArray(new String[0]);
+        String[] names = index.getNames().toArray(new String[0]);
+        Random rnd = new Random(42);
+        queryHosts = new String[QUERIES];
+        queryNames = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            queryHosts[q] = hosts[rnd.nextInt(hosts.length)];
+            queryNames[q] = names[rnd.nextInt(names.length)];
+        }
+    }
+
+    private void add(ScanResult res) throws IOException {
+        files.add(res);
+        data.add(Files.readAllBytes(res.file.toPath()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        delete(dir);
+    }
+
+    private static void delete(File f) {
+        File[] list = f.listFiles();
+        if (null != list) {
+            for (File c : list) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+
+    /**
+     * Every variables file of the tree into an empty model.
+     */
+    @Benchmark
+    public int importVars() {
+        target.reset();
+        for (int i = 0; i < files.size(); i++) {
+            ScanResult proto = files.get(i);
+            ScanResult res = new ScanResult(ScanResult.Kind.VARS, proto.file, proto.role, proto.host, proto.group, proto.part);
+            res.data = ByteBuffer.wrap(data.get(i));
+            target.parse(res).apply(target);
+        }
+        return target.session.vars.rows();
+    }
+
+    @Benchmark
+    public Variable getVar() {
+        int q = next++ & (QUERIES - 1);
+        return main.session.getVar(queryNames[q], queryHosts[q], null, null);
+    }
+
+    @Benchmark
+    public VariableIndex buildIndex() {
+        main.session.invalidate();
+        return main.session.getVariableIndex();
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.ini4j.Ini;
+import org.ini4j.Profile;
+
+/**
+ * The code the benchmarked paths replaced, kept as it was so the benchmarks
+ * can time old against new on the same input.
+ *
+ * @author walter
+ */
+public class Legacy {
+
+    /**
+     * Utils.html before the single pass version: recursion on substrings and
+     * a String per character.
+     *
+     * @param text Text to encode.
+     * @return Encoded text.
+     */
+    public static String html(String text) {
+        if (text == null) {
+            return "";
+        }
+        int amp = text.indexOf('&');
+        if (amp >= 0) {
+            int semi = text.indexOf(';', amp);
+            if (semi > amp && semi - amp < 7) { // seems a valid html entity
+                StringBuilder sb = new StringBuilder();
+                if (amp > 0) {
+                    sb.append(html(text.substring(0, amp)));
+                }
+                sb.append(text.substring(amp, semi));
+                if (semi < text.length() - 1) {
+                    sb.append(html(text.substring(semi + 1)));
+                }
+                return sb.toString();
+            }
+        }
+        StringBuilder ret = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            ret.append(Utils.htmlChar(c));
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Main.pre before the single pass version.
+     *
+     * @param text Text.
+     * @return The pre block.
+     */
+    public static String pre(String text) {
+        StringBuilder sb = new StringBuilder(Main.EOLN).append("<pre>").append(Main.EOLN);
+        int last = 0;
+        while (last < text.length()) {
+            int open = text.indexOf("{{", last);
+            if (open >= 0) {
+                int close = text.indexOf("}}", open);
+                if (close > 0) {
+                    String varName = text.substring(open + 2, close).trim();
+                    sb.append(html(text.substring(last, open)));
+                    sb.append("<b>{{ ").append(varName).append(" }}</b>");
+                    last = close + 2;
+                } else {
+                    sb.append("{{");
+                    last = open + 2;
+                }
+            } else {
+                sb.append(html(text.substring(last)));
+                last = text.length();
+            }
+        }
+        sb.append(Main.EOLN).append("</pre>").append(Main.EOLN);
+        return sb.toString();
+    }
+
+    /**
+     * Main.parseIniHybrid before IniInventoryParser: a line reader and an
+     * ini4j Ini for every key=value token.
+     *
+     * @param res Result to fill.
+     * @param text Decoded inventory.
+     */
+    public static void iniInventory(ScanResult res, String text) {
+        String currentGroup = null;
+        String sectionType = null;
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("[") && line.endsWith("]")) {
+                    currentGroup = line.substring(1, line.length() - 1);
+                    sectionType = null;
+                    int colon = currentGroup.lastIndexOf(':');
+                    if (colon > 0) {
+                        sectionType = currentGroup.substring(colon + 1);
+                        if (sectionType.equals("children") || sectionType.equals("vars")) {
+                            currentGroup = currentGroup.substring(0, colon);
+                        } else {
+                            sectionType = null;
+                        }
+                    }
+                } else if (!line.isEmpty() && currentGroup != null && "children".equals(sectionType)) {
+                    res.addChild(currentGroup, new StringTokenizer(line).nextToken());
+                } else if (!line.isEmpty() && currentGroup != null && "vars".equals(sectionType)) {
+                    Ini ini = new Ini(new StringReader("[s]\n" + line));
+                    for (Map.Entry<String, Profile.Section> e1 : ini.entrySet()) {
+                        for (Map.Entry<String, String> e2 : e1.getValue().entrySet()) {
+                            res.putVar(e2.getKey(), null, null, currentGroup, e2.getValue());
+                        }
+                    }
+                } else if (!line.isEmpty() && currentGroup != null) {
+                    StringTokenizer toker = new StringTokenizer(line);
+                    String host = toker.nextToken();
+                    res.addHost(currentGroup, host);
+                    while (toker.hasMoreTokens()) {
+                        String var = toker.nextToken();
+                        // abusing Ini to parse one var in a fake section
+                        Ini ini = new Ini(new StringReader("[s]\n" + var));
+                        for (Map.Entry<String, Profile.Section> e1 : ini.entrySet()) {
+                            for (Map.Entry<String, String> e2 : e1.getValue().entrySet()) {
+                                res.putVar(e2.getKey(), null, host, currentGroup, e2.getValue());
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(Legacy.class.getName()).log(Level.SEVERE, null, ex);
+            res.failed = true;
+        }
+    }
+
+    /**
+     * The variables section of Main.outputHTML before the renderers: a
+     * PrintStream.format per cell.
+     *
+     * @param out Output.
+     * @param ansVars Variables by name.
+     */
+    public static void variables(PrintStream out, Map<String, List<Variable>> ansVars) {
+        String EOLN = Main.EOLN;
+        out.print(Main.NAVBAR);
+        out.print(Main.VARS);
+        out.format("<table border=\"1\">%s", EOLN);
+        out.format("<tr><th>Name</th><th width=\"40%%\">Value</th><th>Role</th><th>Host</th><th>Group</th><th width=\"20%%\">File</th></tr>%s", EOLN);
+        for (Map.Entry<String, List<Variable>> e : ansVars.entrySet()) {
+            List<Variable> lv = e.getValue();
+            boolean f1 = true;
+            for (Variable v : lv) {
+                out.format("<tr><td>%s</td>", f1 ? e.getKey() : "");
+                f1 = false;
+                out.print("<td>");
+                out.print(Utils.html(v.value));
+                out.print("</td>");
+                out.format("<td>%s</td>", (null == v.role) ? "&nbsp" : Utils.html(v.role));
+                out.format("<td>%s</td>", (null == v.host) ? "&nbsp" : Utils.html(v.host));
+                out.format("<td>%s</td>", (null == v.group) ? "&nbsp" : Utils.html(v.group));
+                out.format("<td>%s</td>", Utils.html(v.fileId.path));
+                out.format("</tr>%s", EOLN);
+            }
+        }
+        out.print("</table></section>");
+        out.print(EOLN);
+    }
+}
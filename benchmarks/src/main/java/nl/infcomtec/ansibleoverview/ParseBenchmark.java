@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing an INI inventory and a YAML variables file through Main.parse, the
+ * way the scanner does: decode, search for variable uses and extract. The
+ * decoded inventory is also given to IniInventoryParser alone and to the
+ * ini4j code it replaced, to compare the two parsers on the same text.
+ *
+ * @author walter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    /**
+     * Hosts in the inventory, variables in the vars file.
+     */
+    @Param({"100", "2000"})
+    public int size;
+
+    private Main main;
+    private byte[] inventory;
+    private byte[] vars;
+    private String inventoryText;
+
+    @Setup
+    public void setup() throws IOException {
+        main = new Main();
+        inventory = ini(size).getBytes(StandardCharsets.UTF_8);
+        vars = yaml(size).getBytes(StandardCharsets.UTF_8);
+        inventoryText = Utils.decode(ByteBuffer.wrap(inventory), true);
+    }
+
+    /**
+     * An inventory like a data centre has them: groups per tier, a few
+     * variables per host, group variables and a children section.
+     */
+    static String ini(int hosts) {
+        String[] tiers = {"web", "app", "db", "cache", "queue"};
+        StringBuilder sb = new StringBuilder();
+        for (int t = 0; t < tiers.length; t++) {
+            sb.append('[').append(tiers[t]).append("]\n");
+            for (int h = t; h < hosts; h += tiers.length) {
+                sb.append(tiers[t]).append(String.format("%04d", h)).append(".example.com")
+                        .append(" ansible_host=10.").append(h / 250).append('.').append(h % 250).append(".1")
+                        .append(" rack=r").append(h % 40).append(" weight=").append(h % 7).append('\n');
+            }
+            sb.append("\n[").append(tiers[t]).append(":vars]\n");
+            sb.append(tiers[t]).append("_port=").append(8000 + t).append('\n');
+            sb.append(tiers[t]).append("_user=\"svc_").append(tiers[t]).append("\"\n");
+            sb.append("# comment line\n\n");
+        }
+        sb.append("[prod:children]\n");
+        for (String tier : tiers) {
+            sb.append(tier).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A group_vars file: scalars, templated values, lists and maps.
+     */
+    static String yaml(int vars) {
+        StringBuilder sb = new StringBuilder("---\n");
+        for (int i = 0; i < vars; i++) {
+            switch (i % 4) {
+                case 0:
+                    sb.append("app_setting_").append(i).append(": value ").append(i).append('\n');
+                    break;
+                case 1:
+                    sb.append("app_url_").append(i).append(": \"https://{{ app_host }}:{{ app_port | default(443) }}/v").append(i).append("\"\n");
+                    break;
+                case 2:
+                    sb.append("app_list_").append(i).append(":\n  - one\n  - two  # trailing\n  - \"{{ item_").append(i).append(" }}\"\n");
+                    break;
+                default:
+                    sb.append("app_map_").append(i).append(":\n  name: svc").append(i).append("\n  enabled: true\n  limits:\n    cpu: 2\n    mem: 512M\n");
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public ScanResult iniInventory() {
+        ScanResult res = new ScanResult(ScanResult.Kind.INVENTORY, new File("hosts"));
+        res.data = ByteBuffer.wrap(inventory);
+        return main.parse(res);
+    }
+
+    @Benchmark
+    public ScanResult iniParser() {
+        ScanResult res = new ScanResult(ScanResult.Kind.INVENTORY, new File("hosts"));
+        IniInventoryParser.parse(res, inventoryText);
+        return res;
+    }
+
+    @Benchmark
+    public ScanResult iniParserIni4j() {
+        ScanResult res = new ScanResult(ScanResult.Kind.INVENTORY, new File("hosts"));
+        Legacy.iniInventory(res, inventoryText);
+        return res;
+    }
+
+    @Benchmark
+    public ScanResult yamlVars() {
+        ScanResult res = new ScanResult(ScanResult.Kind.VARS, new File("group_vars/all.yml"), null, null, "all", null);
+        res.data = ByteBuffer.wrap(vars);
+        return main.parse(res);
+    }
+}
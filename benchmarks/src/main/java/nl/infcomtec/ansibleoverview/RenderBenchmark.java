@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing file contents into the HTML: escaping with Utils.html and the
+ * preformatted block with highlighted Jinja of Main.pre, each next to the
+ * version it replaced (see Legacy), which builds a String and copies it.
+ *
+ * @author walter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    /**
+     * Characters of text, a small task file to a large template.
+     */
+    @Param({"2048", "262144"})
+    public int size;
+
+    private String text;
+    private StringBuilder out;
+
+    @Setup
+    public void setup() {
+        String[] lines = {
+            "- name: Install {{ app_name }} <{{ app_version }}>\n",
+            "  ansible.builtin.template:\n",
+            "    src: \"templates/app.conf.j2\"\n",
+            "    dest: /etc/app/app.conf\n",
+            "  when: app_enabled and inventory_hostname in groups['web'] && x < 3\n",
+            "{% for h in groups['db'] %}server {{ hostvars[h].ansible_host }}:5432;{% endfor %}\n",
+            "# plain text line without anything special in it at all, just words\n"};
+        StringBuilder sb = new StringBuilder(size + 128);
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append(lines[i % lines.length]);
+        }
+        sb.setLength(size);
+        text = sb.toString();
+        out = new StringBuilder(size * 2);
+    }
+
+    @Benchmark
+    public StringBuilder html() throws IOException {
+        out.setLength(0);
+        Utils.html(text, out);
+        return out;
+    }
+
+    @Benchmark
+    public StringBuilder pre() throws IOException {
+        out.setLength(0);
+        Main.pre(text, out);
+        return out;
+    }
+
+    @Benchmark
+    public StringBuilder htmlOld() {
+        out.setLength(0);
+        out.append(Legacy.html(text));
+        return out;
+    }
+
+    @Benchmark
+    public StringBuilder preOld() {
+        out.setLength(0);
+        out.append(Legacy.pre(text));
+        return out;
+    }
+}
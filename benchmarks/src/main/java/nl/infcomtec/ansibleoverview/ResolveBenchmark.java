@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Variable resolution: a lookup through OverviewSession.getVar, and building
+ * the VariableIndex it uses.
+ *
+ * @author walter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResolveBenchmark {
+
+    private static final int GROUPS = 20;
+    private static final int NAMES = 200;
+    private static final int QUERIES = 1024;
+
+    /**
+     * Number of hosts.
+     */
+    @Param({"100", "2000"})
+    public int hosts;
+
+    private OverviewSession session;
+    private String[] names;
+    private String[] queryHosts;
+    private String[] queryNames;
+    private int next;
+
+    @Setup
+    public void setup() {
+        session = new OverviewSession();
+        FileId defaults = new FileId(session, "/ansible/roles/app/defaults/main.yml");
+        FileId all = new FileId(session, "/ansible/group_vars/all.yml");
+        names = new String[NAMES];
+        for (int n = 0; n < NAMES; n++) {
+            names[n] = "var_" + n;
+            session.putVar(names[n], "app", null, null, defaults, "default " + n);
+            session.putVar(names[n], null, null, "all", all, "all " + n);
+        }
+        for (int g = 0; g < GROUPS; g++) {
+            session.addChild(g < GROUPS / 2 ? "all" : "group" + (g - GROUPS / 2), "group" + g);
+            FileId f = new FileId(session, "/ansible/group_vars/group" + g + ".yml");
+            for (int n = g; n < NAMES; n += 3) {
+                session.putVar(names[n], null, null, "group" + g, f, "group" + g + " " + n);
+            }
+        }
+        for (int h = 0; h < hosts; h++) {
+            String host = "host" + h + ".example.com";
+            session.addHost("group" + (h % GROUPS), host);
+            if (h % 10 == 0) {
+                FileId f = new FileId(session, "/ansible/host_vars/" + host + ".yml");
+                for (int n = h % 7; n < NAMES; n += 11) {
+                    session.putVar(names[n], null, host, null, f, host + " " + n);
+                }
+            }
+        }
+        Random rnd = new Random(42);
+        queryHosts = new String[QUERIES];
+        queryNames = new String[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            queryHosts[q] = "host" + rnd.nextInt(hosts) + ".example.com";
+            queryNames[q] = names[rnd.nextInt(NAMES)];
+        }
+        session.getVariableIndex();
+    }
+
+    @Benchmark
+    public Variable getVar() {
+        int q = next++ & (QUERIES - 1);
+        return session.getVar(queryNames[q], queryHosts[q], null, null);
+    }
+
+    @Benchmark
+    public VariableIndex buildIndex() {
+        session.invalidate();
+        return session.getVariableIndex();
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * End to end scaling curve. Generates SyntheticTrees of increasing size and
+ * runs the full Main pipeline (scan and render, no cache) over each in a
+ * fresh JVM, recording wall time, peak heap, peak RSS and output size.
+ * <p>
+ * The growth column is the exponent between two steps: log(time ratio) /
+ * log(size ratio). About 1 is linear; the first step where it stays well
+ * above 1 is where the tool stops scaling linearly.
+ *
+ * @author walter
+ */
+public class ScaleTest {
+
+    /**
+     * Growth exponents above this are marked.
+     */
+    private static final double SUPERLINEAR = 1.25;
+    private static final String RESULT = "RESULT";
+
+    /**
+     * One step of the curve.
+     */
+    private static class Step {
+
+        int factor, hosts, roles, files;
+        long coldMs, warmMs, heap, rss, output;
+    }
+
+    /**
+     * Run the curve, or (with --run) one measurement in this JVM.
+     *
+     * @param args [--hosts n] [--roles n] [--steps n] [--runs n] [--yaml]
+     * [--xmx size] [--csv file] [--keep]; or --run runs dir.
+     */
+    public static void main(String[] args) {
+        try {
+            if (args.length == 3 && args[0].equals("--run")) {
+                run(Integer.parseInt(args[1]), args[2]);
+            } else {
+                curve(args);
+            }
+        } catch (IOException | InterruptedException | IllegalArgumentException | ArrayIndexOutOfBoundsException ex) {
+            Logger.getLogger(ScaleTest.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private static void curve(String[] args) throws IOException, InterruptedException {
+        SyntheticTree base = new SyntheticTree();
+        int steps = 6;
+        int runs = 3;
+        String xmx = "4g";
+        String csv = null;
+        boolean keep = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--hosts":
+                    base.hosts = Integer.parseInt(args[++i]);
+                    break;
+                case "--roles":
+                    base.roles = Integer.parseInt(args[++i]);
+                    break;
+                case "--steps":
+                    steps = Integer.parseInt(args[++i]);
+                    break;
+                case "--runs":
+                    runs = Math.max(1, Integer.parseInt(args[++i]));
+                    break;
+                case "--yaml":
+                    base.yaml = true;
+                    break;
+                case "--xmx":
+                    xmx = args[++i];
+                    break;
+                case "--csv":
+                    csv = args[++i];
+                    break;
+                case "--keep":
+                    keep = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        List<Step> curve = new ArrayList<>();
+        System.out.println(String.format("%6s %7s %6s %7s %9s %9s %10s %9s %9s %9s %7s",
+                "factor", "hosts", "roles", "files", "cold ms", "warm ms", "us/file", "heap MiB", "RSS MiB", "out MiB", "growth"));
+        for (int s = 0; s < steps; s++) {
+            Step step = new Step();
+            step.factor = 1 << s;
+            SyntheticTree tree = base.scale(step.factor);
+            step.hosts = tree.hosts;
+            step.roles = tree.roles;
+            Path dir = Files.createTempDirectory("ansover-scale-");
+            try {
+                step.files = tree.write(dir.toFile());
+                measure(step, dir.toString(), runs, xmx);
+            } finally {
+                if (keep) {
+                    System.err.println("Kept " + dir);
+                } else {
+                    delete(dir);
+                }
+            }
+            String growth = "";
+            if (!curve.isEmpty()) {
+                Step prev = curve.get(curve.size() - 1);
+                double g = Math.log((double) step.warmMs / Math.max(1, prev.warmMs))
+                        / Math.log((double) step.files / prev.files);
+                growth = String.format(Locale.ROOT, "%.2f%s", g, g > SUPERLINEAR ? " *" : "");
+            }
+            curve.add(step);
+            System.out.println(String.format(Locale.ROOT, "%6d %7d %6d %7d %9d %9d %10.1f %9.1f %9.1f %9.1f %7s",
+                    step.factor, step.hosts, step.roles, step.files, step.coldMs, step.warmMs,
+                    step.warmMs * 1000.0 / step.files, mib(step.heap), mib(step.rss), mib(step.output), growth));
+        }
+        if (null != csv) {
+            try (PrintStream out = new PrintStream(new File(csv), "UTF-8")) {
+                out.println("factor,hosts,roles,files,cold_ms,warm_ms,heap_bytes,rss_bytes,output_bytes");
+                for (Step step : curve) {
+                    out.println(step.factor + "," + step.hosts + "," + step.roles + "," + step.files + ","
+                            + step.coldMs + "," + step.warmMs + "," + step.heap + "," + step.rss + "," + step.output);
+                }
+            }
+        }
+    }
+
+    private static double mib(long bytes) {
+        return bytes < 0 ? -1 : bytes / 1048576.0;
+    }
+
+    /**
+     * One step in a child JVM, so heap and RSS peaks are its own.
+     */
+    private static void measure(Step step, String dir, int runs, String xmx) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder pb = new ProcessBuilder(java, "-Xmx" + xmx, "-cp", System.getProperty("java.class.path"),
+                ScaleTest.class.getName(), "--run", Integer.toString(runs), dir);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process p = pb.start();
+        String result = null;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line = in.readLine(); null != line; line = in.readLine()) {
+                if (line.startsWith(RESULT)) {
+                    result = line;
+                }
+            }
+        }
+        if (p.waitFor() != 0 || null == result) {
+            throw new IOException("Measurement of " + dir + " failed");
+        }
+        String[] f = result.split(" ");
+        step.coldMs = Long.parseLong(f[1]);
+        step.warmMs = Long.parseLong(f[2]);
+        step.heap = Long.parseLong(f[3]);
+        step.rss = Long.parseLong(f[4]);
+        step.output = Long.parseLong(f[5]);
+    }
+
+    /**
+     * Scan and render a tree a number of times in this JVM and print the
+     * first (cold) and fastest (warm) wall time, the peak heap and RSS and the
+     * output size.
+     */
+    private static void run(int runs, String dir) throws IOException {
+        long cold = 0;
+        long warm = Long.MAX_VALUE;
+        long size = 0;
+        for (int i = 0; i < runs; i++) {
+            CountingStream out = new CountingStream();
+            long start = System.nanoTime();
+            Main main = new Main();
+            main.rescan(Arrays.asList(dir));
+            main.output(out);
+            long ms = (System.nanoTime() - start) / 1000000;
+            if (i == 0) {
+                cold = ms;
+            }
+            warm = Math.min(warm, ms);
+            size = out.count;
+        }
+        long heap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heap += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.println(RESULT + " " + cold + " " + warm + " " + heap + " " + rss() + " " + size);
+    }
+
+    /**
+     * @return Peak resident set size from /proc, or -1 where there is none.
+     */
+    private static long rss() {
+        File status = new File("/proc/self/status");
+        if (status.canRead()) {
+            try (BufferedReader in = new BufferedReader(new FileReader(status))) {
+                for (String line = in.readLine(); null != line; line = in.readLine()) {
+                    if (line.startsWith("VmHWM:")) {
+                        return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                    }
+                }
+            } catch (IOException | NumberFormatException ex) {
+                Logger.getLogger(ScaleTest.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+        return -1;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException exc) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Discards the output, counting the bytes.
+     */
+    private static class CountingStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Retained heap of the variables, VariableStore against the TreeMap of
+ * LinkedLists of Variable objects it replaced, at several sizes. The rows
+ * look like a scanned tree: a tenth of them group variables, the rest host
+ * variables, one file per host or group, names shared between files.
+ * <p>
+ * After the build a number of watch rounds remove the variables of a third
+ * of the files and add them again, to show the store stays flat instead of
+ * growing by the removed rows. Measured as used heap after a full GC, so run
+ * it alone:
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar nl.infcomtec.ansibleoverview.StoreFootprint 10000 100000 1000000
+ * </pre>
+ *
+ * @author walter
+ */
+public class StoreFootprint {
+
+    private static final int ROWS_PER_FILE = 20;
+    private static final int NAMES_PER_ROW = 10;
+    private static final int ROUNDS = 5;
+
+    /**
+     * What a scan would have produced: per file its variables.
+     */
+    private static class Input {
+
+        final OverviewSession session = new OverviewSession();
+        final List<FileId> files = new ArrayList<>();
+        final List<String[]> names = new ArrayList<>();
+        final List<Variable[]> vars = new ArrayList<>();
+
+        Input(int rows) {
+            Random rnd = new Random(rows);
+            int nFiles = Math.max(1, rows / ROWS_PER_FILE);
+            int nNames = Math.max(1, rows / NAMES_PER_ROW);
+            for (int f = 0; f < nFiles; f++) {
+                boolean group = f % 10 == 0;
+                String owner = group ? "group" + f : "host" + f + ".example.com";
+                FileId id = new FileId(session, "/ansible/" + (group ? "group_vars/" : "host_vars/") + owner + ".yml");
+                String[] n = new String[ROWS_PER_FILE];
+                Variable[] v = new Variable[ROWS_PER_FILE];
+                for (int i = 0; i < ROWS_PER_FILE; i++) {
+                    n[i] = "var_" + rnd.nextInt(nNames);
+                    String value = "value " + i + " of " + owner + " " + Long.toHexString(rnd.nextLong());
+                    v[i] = group ? new Variable(null, null, owner, id, value) : new Variable(null, owner, null, id, value);
+                }
+                files.add(id);
+                names.add(n);
+                vars.add(v);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        try {
+            String[] sizes = args.length > 0 ? args : new String[]{"10000", "100000", "1000000"};
+            System.out.println(String.format("%9s %12s %12s %12s %7s %12s %12s",
+                    "rows", "old bytes", "store bytes", "estimate", "ratio", "after churn", "rows after"));
+            for (String size : sizes) {
+                measure(Integer.parseInt(size));
+            }
+        } catch (IllegalArgumentException ex) {
+            Logger.getLogger(StoreFootprint.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private static void measure(int rows) {
+        Input in = new Input(rows);
+        long base = used();
+        TreeMap<String, List<Variable>> old = oldLayout(in);
+        long oldBytes = used() - base;
+        old.clear();
+        old = null;
+        base = used();
+        VariableStore store = new VariableStore(in.session.files);
+        for (int f = 0; f < in.files.size(); f++) {
+            for (int i = 0; i < ROWS_PER_FILE; i++) {
+                // a fresh copy of the value, as the parser would hand over
+                Variable v = in.vars.get(f)[i];
+                store.add(in.names.get(f)[i], new Variable(v.role, v.host, v.group, v.fileId, new String(v.value.toCharArray())));
+            }
+        }
+        long storeBytes = used() - base;
+        long estimate = store.footprint();
+        Random rnd = new Random(1);
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int f = 0; f < in.files.size(); f++) {
+                if (rnd.nextInt(3) == 0) {
+                    for (String name : in.names.get(f)) {
+                        store.removeFile(name, in.files.get(f));
+                    }
+                    for (int i = 0; i < ROWS_PER_FILE; i++) {
+                        store.insert(in.names.get(f)[i], in.vars.get(f)[i]);
+                    }
+                }
+            }
+        }
+        long churnBytes = used() - base;
+        // the input must stay reachable until here, or it is counted as freed
+        System.out.println(String.format(Locale.ROOT, "%9d %12d %12d %12d %7.2f %12d %12d",
+                in.files.size() * ROWS_PER_FILE, oldBytes, storeBytes, estimate, (double) oldBytes / Math.max(1, storeBytes),
+                churnBytes, store.rows()));
+    }
+
+    /**
+     * The layout before VariableStore: a LinkedList per name and a Variable
+     * object with its own value String per row.
+     */
+    private static TreeMap<String, List<Variable>> oldLayout(Input in) {
+        TreeMap<String, List<Variable>> ret = new TreeMap<>();
+        for (int f = 0; f < in.files.size(); f++) {
+            for (int i = 0; i < ROWS_PER_FILE; i++) {
+                String name = in.names.get(f)[i];
+                Variable v = in.vars.get(f)[i];
+                List<Variable> get = ret.get(name);
+                if (null == get) {
+                    get = new LinkedList<>();
+                    ret.put(name, get);
+                }
+                get.add(new Variable(v.role, v.host, v.group, v.fileId, new String(v.value.toCharArray())));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Used heap after collecting everything collectable.
+     */
+    private static long used() {
+        Runtime rt = Runtime.getRuntime();
+        long ret = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            ret = Math.min(ret, rt.totalMemory() - rt.freeMemory());
+        }
+        return ret;
+    }
+}
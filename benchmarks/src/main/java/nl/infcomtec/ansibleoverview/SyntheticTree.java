@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes a synthetic Ansible tree: an INI or YAML inventory with nested
+ * groups, group_vars and host_vars, roles with tasks, templates, defaults and
+ * meta dependencies, playbooks and an ansible.cfg. The same settings and seed
+ * always give the same tree.
+ * <p>
+ * Groups form a tree: group g is a child of group (g - 1) / FANOUT, host h is
+ * in group h % groups. Most variable names are shared between groups and
+ * hosts so that resolution has something to decide.
+ *
+ * @author walter
+ */
+public class SyntheticTree {
+
+    /**
+     * Children per group.
+     */
+    private static final int FANOUT = 3;
+
+    public int hosts = 100;
+    public int groups = 10;
+    public int roles = 10;
+    /**
+     * Playbooks, each applying some roles to a group.
+     */
+    public int playbooks = 5;
+    /**
+     * Task files per role, besides tasks/main.yml.
+     */
+    public int tasks = 2;
+    public int templates = 2;
+    /**
+     * Variables per group_vars, host_vars and defaults file.
+     */
+    public int vars = 20;
+    /**
+     * Percentage of hosts with a host_vars file.
+     */
+    public int hostVars = 10;
+    /**
+     * Write the inventory as YAML instead of INI.
+     */
+    public boolean yaml;
+    public long seed = 1;
+
+    private Random rnd;
+    private int files;
+
+    /**
+     * @param factor Multiplier.
+     * @return A copy with factor times the hosts, groups, roles and playbooks.
+     */
+    public SyntheticTree scale(int factor) {
+        SyntheticTree ret = new SyntheticTree();
+        ret.hosts = hosts * factor;
+        ret.groups = groups * factor;
+        ret.roles = roles * factor;
+        ret.playbooks = playbooks * factor;
+        ret.tasks = tasks;
+        ret.templates = templates;
+        ret.vars = vars;
+        ret.hostVars = hostVars;
+        ret.yaml = yaml;
+        ret.seed = seed;
+        return ret;
+    }
+
+    /**
+     * Write the tree.
+     *
+     * @param dir Directory, created if needed; existing files are
+     * overwritten, others are left alone.
+     * @return Number of files written.
+     * @throws IOException From writing.
+     */
+    public int write(File dir) throws IOException {
+        rnd = new Random(seed);
+        files = 0;
+        inventory(dir);
+        for (int g = 0; g < groups; g++) {
+            vars(new File(dir, "group_vars/" + group(g) + ".yml"), group(g));
+        }
+        for (int h = 0; h < hosts; h++) {
+            if (h % 100 < hostVars) {
+                vars(new File(dir, "host_vars/" + host(h) + ".yml"), "host" + h);
+            }
+        }
+        for (int r = 0; r < roles; r++) {
+            role(new File(dir, "roles/" + role(r)), r);
+        }
+        playbooks(dir);
+        try (Writer w = open(new File(dir, "ansible.cfg"))) {
+            w.write("[defaults]\ninventory = hosts\nforks = 20\nhost_key_checking = False\n\n[ssh_connection]\npipelining = True\n");
+        }
+        return files;
+    }
+
+    private static String group(int g) {
+        return "group" + g;
+    }
+
+    private static String host(int h) {
+        return String.format("host%05d.example.com", h);
+    }
+
+    private static String role(int r) {
+        return "role" + r;
+    }
+
+    private List<Integer> children(int g) {
+        List<Integer> ret = new ArrayList<>();
+        for (int c = g * FANOUT + 1; c <= g * FANOUT + FANOUT && c < groups; c++) {
+            ret.add(c);
+        }
+        return ret;
+    }
+
+    private void inventory(File dir) throws IOException {
+        try (Writer w = open(new File(dir, "hosts"))) {
+            if (yaml) {
+                w.write("all:\n  children:\n");
+                for (int g = 0; g < groups; g++) {
+                    w.write("    " + group(g) + ":\n");
+                    w.write("      hosts:\n");
+                    for (int h = g; h < hosts; h += groups) {
+                        w.write("        " + host(h) + ":\n");
+                        w.write("          ansible_host: " + ip(h) + "\n");
+                        w.write("          rack: r" + (h % 40) + "\n");
+                    }
+                    List<Integer> children = children(g);
+                    if (!children.isEmpty()) {
+                        w.write("      children:\n");
+                        for (int c : children) {
+                            w.write("        " + group(c) + ": {}\n");
+                        }
+                    }
+                    w.write("      vars:\n");
+                    w.write("        " + group(g) + "_port: " + (8000 + g) + "\n");
+                }
+            } else {
+                for (int g = 0; g < groups; g++) {
+                    w.write("[" + group(g) + "]\n");
+                    for (int h = g; h < hosts; h += groups) {
+                        w.write(host(h) + " ansible_host=" + ip(h) + " rack=r" + (h % 40) + "\n");
+                    }
+                    List<Integer> children = children(g);
+                    if (!children.isEmpty()) {
+                        w.write("\n[" + group(g) + ":children]\n");
+                        for (int c : children) {
+                            w.write(group(c) + "\n");
+                        }
+                    }
+                    w.write("\n[" + group(g) + ":vars]\n");
+                    w.write(group(g) + "_port=" + (8000 + g) + "\n\n");
+                }
+            }
+        }
+    }
+
+    private static String ip(int h) {
+        return "10." + (h >> 16 & 255) + "." + (h >> 8 & 255) + "." + (h & 255);
+    }
+
+    /**
+     * A variables file: shared names with scalar, templated, list and map
+     * values, and a few names of its own.
+     */
+    private void vars(File f, String owner) throws IOException {
+        try (Writer w = open(f)) {
+            w.write("---\n");
+            for (int i = 0; i < vars; i++) {
+                String name = i % 5 == 4 ? owner + "_own_" + i : "common_" + rnd.nextInt(vars * 2);
+                switch (i % 4) {
+                    case 0:
+                        w.write(name + ": " + owner + " value " + i + "\n");
+                        break;
+                    case 1:
+                        w.write(name + ": \"{{ common_" + rnd.nextInt(vars * 2) + " }}/" + owner + "\"\n");
+                        break;
+                    case 2:
+                        w.write(name + ":\n  - " + owner + "\n  - \"{{ inventory_hostname }}\"\n");
+                        break;
+                    default:
+                        w.write(name + ":\n  enabled: true\n  size: " + rnd.nextInt(1000) + "\n");
+                        break;
+                }
+            }
+        }
+    }
+
+    private void role(File dir, int r) throws IOException {
+        try (Writer w = open(new File(dir, "tasks/main.yml"))) {
+            w.write("---\n");
+            for (int t = 0; t < tasks; t++) {
+                w.write("- name: Step " + t + " of " + role(r) + "\n");
+                w.write("  ansible.builtin.include_tasks: step" + t + ".yml\n");
+            }
+            for (int t = 0; t < templates; t++) {
+                w.write("- name: Configure " + role(r) + " part " + t + "\n");
+                w.write("  ansible.builtin.template:\n");
+                w.write("    src: conf" + t + ".j2\n");
+                w.write("    dest: /etc/" + role(r) + "/conf" + t + "\n");
+                w.write("  when: " + role(r) + "_enabled and common_" + rnd.nextInt(vars * 2) + " is defined\n");
+                w.write("  notify: restart " + role(r) + "\n");
+            }
+        }
+        for (int t = 0; t < tasks; t++) {
+            try (Writer w = open(new File(dir, "tasks/step" + t + ".yml"))) {
+                w.write("---\n");
+                w.write("- name: Package for step " + t + "\n");
+                w.write("  ansible.builtin.package:\n");
+                w.write("    name: \"{{ " + role(r) + "_packages[" + t + "] | default('pkg" + t + "') }}\"\n");
+                w.write("  register: step" + t + "_result\n");
+                w.write("- ansible.builtin.debug:\n");
+                w.write("    msg: \"{{ step" + t + "_result.changed }} on {{ inventory_hostname }}\"\n");
+            }
+        }
+        for (int t = 0; t < templates; t++) {
+            try (Writer w = open(new File(dir, "templates/conf" + t + ".j2"))) {
+                w.write("# {{ ansible_managed }}\n");
+                w.write("[" + role(r) + "]\n");
+                w.write("listen = {{ ansible_host }}:{{ common_" + rnd.nextInt(vars * 2) + " | default(80) }}\n");
+                w.write("{% for h in groups['" + group(r % groups) + "'] %}\n");
+                w.write("peer = {{ hostvars[h].ansible_host }} <{{ h }}> & more\n");
+                w.write("{% endfor %}\n");
+                for (int i = 0; i < 20; i++) {
+                    w.write("option" + i + " = {{ " + role(r) + "_option" + i + " }}\n");
+                }
+            }
+        }
+        try (Writer w = open(new File(dir, "handlers/main.yml"))) {
+            w.write("---\n- name: restart " + role(r) + "\n  ansible.builtin.service:\n    name: " + role(r) + "\n    state: restarted\n");
+        }
+        try (Writer w = open(new File(dir, "defaults/main.yml"))) {
+            w.write("---\n" + role(r) + "_enabled: true\n" + role(r) + "_packages: []\n");
+            for (int i = 0; i < 20; i++) {
+                w.write(role(r) + "_option" + i + ": " + i + "\n");
+            }
+        }
+        try (Writer w = open(new File(dir, "meta/main.yml"))) {
+            w.write("---\ndependencies:\n");
+            if (r > 0) {
+                TreeSet<Integer> deps = new TreeSet<>();
+                for (int i = 0; i < 2; i++) {
+                    deps.add(rnd.nextInt(r));
+                }
+                for (int d : deps) {
+                    w.write("  - role: " + role(d) + "\n");
+                }
+            }
+        }
+    }
+
+    private void playbooks(File dir) throws IOException {
+        try (Writer site = open(new File(dir, "site.yml"))) {
+            site.write("---\n");
+            for (int p = 0; p < playbooks; p++) {
+                String name = "play" + p + ".yml";
+                site.write("- import_playbook: " + name + "\n");
+                try (Writer w = open(new File(dir, name))) {
+                    w.write("---\n- hosts: " + group(p % groups) + "\n  become: true\n  roles:\n");
+                    TreeSet<Integer> used = new TreeSet<>();
+                    for (int i = 0; i < 3; i++) {
+                        used.add(rnd.nextInt(roles));
+                    }
+                    for (int r : used) {
+                        w.write("    - " + role(r) + "\n");
+                    }
+                    w.write("  tasks:\n    - name: Done\n      ansible.builtin.debug:\n        msg: \"{{ play_message | default('done') }}\"\n");
+                }
+            }
+        }
+    }
+
+    private Writer open(File f) throws IOException {
+        File parent = f.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        files++;
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write a tree.
+     *
+     * @param args [--hosts n] [--groups n] [--roles n] [--playbooks n]
+     * [--tasks n] [--templates n] [--vars n] [--host-vars percent] [--yaml]
+     * [--seed n] dir
+     */
+    public static void main(String[] args) {
+        SyntheticTree tree = new SyntheticTree();
+        String dir = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--hosts":
+                        tree.hosts = Integer.parseInt(args[++i]);
+                        break;
+                    case "--groups":
+                        tree.groups = Integer.parseInt(args[++i]);
+                        break;
+                    case "--roles":
+                        tree.roles = Integer.parseInt(args[++i]);
+                        break;
+                    case "--playbooks":
+                        tree.playbooks = Integer.parseInt(args[++i]);
+                        break;
+                    case "--tasks":
+                        tree.tasks = Integer.parseInt(args[++i]);
+                        break;
+                    case "--templates":
+                        tree.templates = Integer.parseInt(args[++i]);
+                        break;
+                    case "--vars":
+                        tree.vars = Integer.parseInt(args[++i]);
+                        break;
+                    case "--host-vars":
+                        tree.hostVars = Integer.parseInt(args[++i]);
+                        break;
+                    case "--yaml":
+                        tree.yaml = true;
+                        break;
+                    case "--seed":
+                        tree.seed = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        dir = args[i];
+                        break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            Logger.getLogger(SyntheticTree.class.getName()).log(Level.SEVERE, "Invalid arguments", ex);
+            return;
+        }
+        if (null == dir || tree.groups < 1) {
+            Logger.getLogger(SyntheticTree.class.getName()).log(Level.SEVERE, "Usage: SyntheticTree [options] dir");
+            return;
+        }
+        try {
+            System.out.println(tree.write(new File(dir)) + " files written to " + dir);
+        } catch (IOException ex) {
+            Logger.getLogger(SyntheticTree.class.getName()).log(Level.SEVERE, dir, ex);
+        }
+    }
+}
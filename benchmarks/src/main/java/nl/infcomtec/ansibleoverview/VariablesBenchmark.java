@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The variables section of the HTML page, written by HtmlRenderer with its
+ * precompiled templates and by the PrintStream.format code it replaced (see
+ * Legacy), both to a buffered stream that only counts the bytes.
+ *
+ * @author walter
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VariablesBenchmark {
+
+    /**
+     * Rows in the table.
+     */
+    @Param({"1000", "100000"})
+    public int rows;
+
+    private TreeMap<String, List<Variable>> vars;
+    private Sink sink;
+
+    /**
+     * Counts what is written and drops it.
+     */
+    static class Sink extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    /**
+     * Four rows per name, as a tree with one file per group and host: a
+     * global default, two groups and a host.
+     */
+    @Setup
+    public void setup() {
+        OverviewSession session = new OverviewSession();
+        vars = new TreeMap<>();
+        FileId all = new FileId(session, "/ansible/group_vars/all.yml");
+        for (int i = 0; i < rows; i++) {
+            String name = "app_setting_" + (i / 4);
+            List<Variable> lv = vars.get(name);
+            if (null == lv) {
+                lv = new ArrayList<>();
+                vars.put(name, lv);
+            }
+            int n = i / 4;
+            switch (i % 4) {
+                case 0:
+                    lv.add(new Variable(null, null, null, all, "default " + n));
+                    break;
+                case 1:
+                    lv.add(new Variable(null, null, "web", new FileId(session, "/ansible/group_vars/web.yml"),
+                            "https://{{ app_host }}:{{ app_port }}/v" + n + "?a=1&b=2"));
+                    break;
+                case 2:
+                    lv.add(new Variable(null, null, "db", new FileId(session, "/ansible/group_vars/db.yml"),
+                            "{{ x < " + n + " }}"));
+                    break;
+                default:
+                    String host = "host" + (n % 500) + ".example.com";
+                    lv.add(new Variable(null, host, null, new FileId(session, "/ansible/host_vars/" + host + ".yml"),
+                            "value of " + host));
+                    break;
+            }
+        }
+        sink = new Sink();
+    }
+
+    @Benchmark
+    public long renderer() throws IOException {
+        sink.count = 0;
+        Writer w = new BufferedWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8), 1 << 16);
+        HtmlRenderer r = new HtmlRenderer(w);
+        r.beginVariables();
+        for (Map.Entry<String, List<Variable>> e : vars.entrySet()) {
+            RenderEngine.variable(r, e.getKey(), e.getValue());
+        }
+        r.endVariables();
+        w.flush();
+        return sink.count;
+    }
+
+    @Benchmark
+    public long printStream() throws IOException {
+        sink.count = 0;
+        PrintStream ps = new PrintStream(new BufferedOutputStream(sink), false, "UTF-8");
+        Legacy.variables(ps, vars);
+        ps.flush();
+        return sink.count;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Role files by contents. The first file in document order with given
+ * contents is the original, later files with the same SHA-256 are copies
+ * that are rendered as a link to it. Files smaller than MIN_SIZE are left
+ * alone, a link would not be shorter than the contents.
+ *
+ * @author walter
+ */
+public class ContentPool {
+
+    /**
+     * Smallest file worth replacing by a link.
+     */
+    public static final long MIN_SIZE = 512;
+
+    /**
+     * Files with the same contents.
+     */
+    public static class Cluster {
+
+        /**
+         * Original first, then the copies in document order.
+         */
+        public final List<FileId> files = new ArrayList<>();
+
+        public FileId getOriginal() {
+            return files.get(0);
+        }
+    }
+
+    private final Map<FileId, FileId> originals = new HashMap<>();
+    private final Map<FileId, String> roles = new HashMap<>();
+    private final Map<FileId, String> labels = new HashMap<>();
+    private final List<Cluster> clusters = new ArrayList<>();
+
+    /**
+     * @param roleFiles Role files by role, part and file name.
+     */
+    public ContentPool(TreeMap<String, TreeMap<String, TreeMap<String, FileId>>> roleFiles) {
+        Map<ByteBuffer, Cluster> byHash = new LinkedHashMap<>();
+        for (Map.Entry<String, TreeMap<String, TreeMap<String, FileId>>> e1 : roleFiles.entrySet()) {
+            for (Map.Entry<String, TreeMap<String, FileId>> e2 : e1.getValue().entrySet()) {
+                for (Map.Entry<String, FileId> e3 : e2.getValue().entrySet()) {
+                    FileId f = e3.getValue();
+                    if (null == f.hash) {
+                        continue;
+                    }
+                    ByteBuffer key = ByteBuffer.wrap(f.hash);
+                    Cluster c = byHash.get(key);
+                    if (null == c) {
+                        c = new Cluster();
+                        byHash.put(key, c);
+                    }
+                    c.files.add(f);
+                    roles.put(f, e1.getKey());
+                    labels.put(f, e1.getKey() + "/" + e2.getKey() + "/" + e3.getKey());
+                }
+            }
+        }
+        for (Cluster c : byHash.values()) {
+            if (c.files.size() > 1 && c.getOriginal().length() >= MIN_SIZE) {
+                clusters.add(c);
+                for (FileId f : c.files.subList(1, c.files.size())) {
+                    originals.put(f, c.getOriginal());
+                }
+            } else {
+                for (FileId f : c.files) {
+                    roles.remove(f);
+                    labels.remove(f);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param f Role file.
+     * @return The file it is a copy of, or null if it is not a copy.
+     */
+    public FileId original(FileId f) {
+        return originals.get(f);
+    }
+
+    /**
+     * @param f Role file.
+     * @return true if other files are copies of this one.
+     */
+    public boolean hasCopies(FileId f) {
+        return labels.containsKey(f) && !originals.containsKey(f);
+    }
+
+    /**
+     * @param f A file in a cluster.
+     * @return Its role.
+     */
+    public String role(FileId f) {
+        return roles.get(f);
+    }
+
+    /**
+     * @param f A file in a cluster.
+     * @return "role/part/name".
+     */
+    public String label(FileId f) {
+        return labels.get(f);
+    }
+
+    /**
+     * @return Clusters of two or more files, in order of their original.
+     */
+    public List<Cluster> getClusters() {
+        return Collections.unmodifiableList(clusters);
+    }
+}
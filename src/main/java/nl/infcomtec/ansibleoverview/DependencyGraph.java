@@ -0,0 +1,535 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Which playbooks, roles and task files depend on which: import_playbook,
+ * the roles of a play, include_role and import_role, role meta dependencies
+ * and include_tasks and import_tasks, from the references YamlExtractor found
+ * while scanning. A playbook depends on what it references, a role on what
+ * any of its files reference.
+ * <p>
+ * Kept up to date with the files like UsageIndex: a changed file only
+ * replaces its own edges. The transitive dependencies of a node are
+ * memoized, so a role that many playbooks share is resolved once; a change
+ * only forgets the closures of the nodes that could reach the changed one.
+ * Cycles are found on the strongly connected components.
+ *
+ * @author walter
+ */
+public class DependencyGraph {
+
+    /**
+     * The kinds of nodes, in the order they are listed.
+     */
+    public enum Kind {
+        PLAYBOOK("playbook"), ROLE("role"), TASKS("tasks");
+        public final String label;
+
+        private Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * A playbook by file name, a role by name or a task file by path: the
+     * role file label (role/tasks/name) or the path as written.
+     */
+    public static class Node implements Comparable<Node> {
+
+        public final Kind kind;
+        public final String name;
+
+        public Node(Kind kind, String name) {
+            this.kind = kind;
+            this.name = name;
+        }
+
+        @Override
+        public int compareTo(Node o) {
+            int ret = kind.compareTo(o.kind);
+            return ret != 0 ? ret : name.compareTo(o.name);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Node && ((Node) obj).kind == kind && ((Node) obj).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return kind.hashCode() * 31 + name.hashCode();
+        }
+
+        /**
+         * @return Like "role web".
+         */
+        @Override
+        public String toString() {
+            return kind.label + " " + name;
+        }
+    }
+
+    /**
+     * What one file contributed.
+     */
+    private static class Contribution {
+
+        final Node owner;
+        /**
+         * The node of the file itself, for a task file of a role; else null.
+         */
+        final Node self;
+        final List<Node> targets;
+
+        Contribution(Node owner, Node self, List<Node> targets) {
+            this.owner = owner;
+            this.self = self;
+            this.targets = targets;
+        }
+    }
+
+    private final Map<Integer, Contribution> byFile = new HashMap<>();
+    /**
+     * Edges with the number of files that make them, both ways.
+     */
+    private final TreeMap<Node, TreeMap<Node, Integer>> edges = new TreeMap<>();
+    private final TreeMap<Node, TreeMap<Node, Integer>> reverse = new TreeMap<>();
+    /**
+     * Nodes that exist as files, with the number of files.
+     */
+    private final TreeMap<Node, Integer> present = new TreeMap<>();
+    /**
+     * Transitive dependencies by node, filled on demand.
+     */
+    private final ConcurrentHashMap<Node, Set<Node>> closures = new ConcurrentHashMap<>();
+    /**
+     * Strongly connected component per node, null when stale.
+     */
+    private Map<Node, List<Node>> components;
+    private List<List<Node>> cycles;
+
+    /**
+     * The node a reference points to.
+     *
+     * @param res The file with the reference.
+     * @param ref {kind, target} as in ScanResult.refs.
+     * @return The node, or null for an unknown kind.
+     */
+    public static Node target(ScanResult res, String[] ref) {
+        switch (ref[0]) {
+            case "playbook":
+                return new Node(Kind.PLAYBOOK, new File(ref[1]).getName());
+            case "role":
+                // a role can be given by its path
+                return new Node(Kind.ROLE, new File(ref[1]).getName());
+            case "tasks":
+                if (null != res.role) {
+                    return new Node(Kind.TASKS, res.role + "/tasks/" + ref[1]);
+                }
+                return new Node(Kind.TASKS, ref[1]);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Add what a playbook or role file references.
+     *
+     * @param f The file.
+     * @param res Its scan result.
+     */
+    public synchronized void add(FileId f, ScanResult res) {
+        Node owner;
+        Node self = null;
+        if (res.kind == ScanResult.Kind.PLAYBOOK) {
+            owner = new Node(Kind.PLAYBOOK, res.file.getName());
+        } else if (res.kind == ScanResult.Kind.ROLE_FILE) {
+            owner = new Node(Kind.ROLE, res.role);
+            if ("tasks".equals(res.part)) {
+                self = new Node(Kind.TASKS, res.label());
+            }
+        } else {
+            return;
+        }
+        List<Node> targets = new ArrayList<>();
+        for (String[] ref : res.refs) {
+            Node t = target(res, ref);
+            if (null != t) {
+                targets.add(t);
+            }
+        }
+        byFile.put(f.id, new Contribution(owner, self, targets));
+        count(present, owner, 1);
+        if (null != self) {
+            count(present, self, 1);
+        }
+        for (Node t : targets) {
+            count(edges, owner, t, 1);
+            count(reverse, t, owner, 1);
+        }
+        changed(owner);
+    }
+
+    /**
+     * Forget what a file references.
+     *
+     * @param f The file.
+     */
+    public synchronized void remove(FileId f) {
+        Contribution c = byFile.remove(f.id);
+        if (null == c) {
+            return;
+        }
+        changed(c.owner);
+        count(present, c.owner, -1);
+        if (null != c.self) {
+            count(present, c.self, -1);
+        }
+        for (Node t : c.targets) {
+            count(edges, c.owner, t, -1);
+            count(reverse, t, c.owner, -1);
+        }
+    }
+
+    public synchronized void clear() {
+        byFile.clear();
+        edges.clear();
+        reverse.clear();
+        present.clear();
+        closures.clear();
+        components = null;
+        cycles = null;
+    }
+
+    /**
+     * The closures of the nodes that reach the owner are stale.
+     */
+    private void changed(Node owner) {
+        for (Node n : reach(owner, reverse)) {
+            closures.remove(n);
+        }
+        closures.remove(owner);
+        components = null;
+        cycles = null;
+    }
+
+    private static void count(TreeMap<Node, Integer> map, Node n, int d) {
+        Integer c = map.get(n);
+        int v = (null == c ? 0 : c) + d;
+        if (v == 0) {
+            map.remove(n);
+        } else {
+            map.put(n, v);
+        }
+    }
+
+    private static void count(TreeMap<Node, TreeMap<Node, Integer>> map, Node from, Node to, int d) {
+        TreeMap<Node, Integer> m = map.get(from);
+        if (null == m) {
+            m = new TreeMap<>();
+            map.put(from, m);
+        }
+        count(m, to, d);
+        if (m.isEmpty()) {
+            map.remove(from);
+        }
+    }
+
+    /**
+     * Everything reachable from a node, not counting the node itself unless
+     * it is on a cycle.
+     */
+    private static Set<Node> reach(Node from, TreeMap<Node, TreeMap<Node, Integer>> map) {
+        Set<Node> ret = new TreeSet<>();
+        ArrayDeque<Node> todo = new ArrayDeque<>();
+        todo.add(from);
+        while (!todo.isEmpty()) {
+            TreeMap<Node, Integer> next = map.get(todo.poll());
+            if (null != next) {
+                for (Node n : next.keySet()) {
+                    if (ret.add(n)) {
+                        todo.add(n);
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return Nothing references anything?
+     */
+    public synchronized boolean isEmpty() {
+        return edges.isEmpty();
+    }
+
+    /**
+     * @return The playbooks and roles, and the task files that are referenced
+     * or reference something, in Kind and name order.
+     */
+    public synchronized List<Node> getNodes() {
+        Set<Node> ret = new TreeSet<>();
+        for (Node n : present.keySet()) {
+            if (n.kind != Kind.TASKS) {
+                ret.add(n);
+            }
+        }
+        ret.addAll(edges.keySet());
+        ret.addAll(reverse.keySet());
+        return new ArrayList<>(ret);
+    }
+
+    /**
+     * @param n A node.
+     * @return false if a reference points to it but there is no such file.
+     */
+    public synchronized boolean isPresent(Node n) {
+        return present.containsKey(n);
+    }
+
+    /**
+     * @param n A node.
+     * @return What it references directly, sorted.
+     */
+    public synchronized Collection<Node> uses(Node n) {
+        TreeMap<Node, Integer> m = edges.get(n);
+        return null == m ? Collections.<Node>emptyList() : new ArrayList<>(m.keySet());
+    }
+
+    /**
+     * @param n A node.
+     * @return What references it directly, sorted.
+     */
+    public synchronized Collection<Node> usedBy(Node n) {
+        TreeMap<Node, Integer> m = reverse.get(n);
+        return null == m ? Collections.<Node>emptyList() : new ArrayList<>(m.keySet());
+    }
+
+    /**
+     * What is affected by a change to a node: everything that depends on it,
+     * directly or not.
+     *
+     * @param n A node.
+     * @return Nodes, sorted.
+     */
+    public synchronized Set<Node> affected(Node n) {
+        return reach(n, reverse);
+    }
+
+    /**
+     * Find a node by name: a role, else a playbook, else a task file.
+     *
+     * @param name Name.
+     * @return The node or null.
+     */
+    public synchronized Node find(String name) {
+        for (Kind k : new Kind[]{Kind.ROLE, Kind.PLAYBOOK, Kind.TASKS}) {
+            Node n = new Node(k, name);
+            if (present.containsKey(n) || reverse.containsKey(n)) {
+                return n;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * All transitive dependencies of a node, memoized.
+     *
+     * @param n A node.
+     * @return Nodes, sorted; the node itself if it is on a cycle.
+     */
+    public Set<Node> closure(Node n) {
+        Set<Node> ret = closures.get(n);
+        if (null == ret) {
+            List<Node> scc;
+            Collection<Node> next;
+            synchronized (this) {
+                scc = components().get(n);
+                if (null == scc) {
+                    return Collections.emptySet();
+                }
+                next = new ArrayList<>();
+                for (Node m : scc) {
+                    next.addAll(uses(m));
+                }
+            }
+            Set<Node> set = new TreeSet<>();
+            for (Node m : next) {
+                set.add(m);
+                if (!scc.contains(m)) {
+                    set.addAll(closure(m));
+                }
+            }
+            ret = Collections.unmodifiableSet(set);
+            // the whole component shares it
+            for (Node m : scc) {
+                closures.putIfAbsent(m, ret);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Resolve the closures of all playbooks in parallel, the roles they share
+     * are resolved once.
+     *
+     * @param parallelism Threads.
+     */
+    public void resolve(int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            List<ForkJoinTask<Void>> tasks = new ArrayList<>();
+            for (final Node n : getNodes()) {
+                if (n.kind == Kind.PLAYBOOK) {
+                    tasks.add(pool.submit(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            closure(n);
+                        }
+                    }));
+                }
+            }
+            for (ForkJoinTask<Void> t : tasks) {
+                t.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return The cycles, each as the path from its first node back to it.
+     */
+    public synchronized List<List<Node>> cycles() {
+        if (null == cycles) {
+            cycles = new ArrayList<>();
+            Set<List<Node>> seen = new HashSet<>();
+            for (List<Node> scc : components().values()) {
+                if (!seen.add(scc)) {
+                    continue;
+                }
+                Node first = scc.get(0);
+                if (scc.size() > 1 || uses(first).contains(first)) {
+                    cycles.add(path(first, scc));
+                }
+            }
+        }
+        return cycles;
+    }
+
+    /**
+     * A shortest path from a node back to itself within its component.
+     */
+    private List<Node> path(Node first, List<Node> scc) {
+        Map<Node, Node> from = new HashMap<>();
+        ArrayDeque<Node> todo = new ArrayDeque<>();
+        todo.add(first);
+        Node last = null;
+        while (null == last && !todo.isEmpty()) {
+            Node n = todo.poll();
+            for (Node m : uses(n)) {
+                if (m.equals(first)) {
+                    last = n;
+                    break;
+                }
+                if (scc.contains(m) && !from.containsKey(m)) {
+                    from.put(m, n);
+                    todo.add(m);
+                }
+            }
+        }
+        List<Node> ret = new ArrayList<>();
+        ret.add(first);
+        for (Node n = last; null != n && !n.equals(first); n = from.get(n)) {
+            ret.add(1, n);
+        }
+        ret.add(first);
+        return ret;
+    }
+
+    /**
+     * Tarjan's strongly connected components, iterative. Every node of a
+     * component maps to the same sorted list.
+     */
+    private Map<Node, List<Node>> components() {
+        if (null != components) {
+            return components;
+        }
+        Map<Node, List<Node>> ret = new HashMap<>();
+        Map<Node, Integer> index = new HashMap<>();
+        Map<Node, Integer> low = new HashMap<>();
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        Set<Node> onStack = new HashSet<>();
+        for (Node root : getNodes()) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+            // frames: a node and the iterator over its successors
+            ArrayDeque<Object[]> frames = new ArrayDeque<>();
+            frames.push(new Object[]{root, uses(root).iterator()});
+            index.put(root, index.size());
+            low.put(root, index.get(root));
+            stack.push(root);
+            onStack.add(root);
+            while (!frames.isEmpty()) {
+                Object[] frame = frames.peek();
+                Node n = (Node) frame[0];
+                @SuppressWarnings("unchecked")
+                Iterator<Node> it = (Iterator<Node>) frame[1];
+                if (it.hasNext()) {
+                    Node m = it.next();
+                    if (!index.containsKey(m)) {
+                        index.put(m, index.size());
+                        low.put(m, index.get(m));
+                        stack.push(m);
+                        onStack.add(m);
+                        frames.push(new Object[]{m, uses(m).iterator()});
+                    } else if (onStack.contains(m)) {
+                        low.put(n, Math.min(low.get(n), index.get(m)));
+                    }
+                } else {
+                    frames.pop();
+                    if (!frames.isEmpty()) {
+                        Node parent = (Node) frames.peek()[0];
+                        low.put(parent, Math.min(low.get(parent), low.get(n)));
+                    }
+                    if (low.get(n).equals(index.get(n))) {
+                        List<Node> scc = new ArrayList<>();
+                        Node m;
+                        do {
+                            m = stack.pop();
+                            onStack.remove(m);
+                            scc.add(m);
+                        } while (!m.equals(n));
+                        Collections.sort(scc);
+                        for (Node s : scc) {
+                            ret.put(s, scc);
+                        }
+                    }
+                }
+            }
+        }
+        components = ret;
+        return ret;
+    }
+}
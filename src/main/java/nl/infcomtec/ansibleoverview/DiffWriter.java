@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the report of a ModelDiff in one format, row by row as the diff
+ * finds them: a section per kind of change, each a table with a change
+ * column (+, - or ~) and a count of each change at its end.
+ *
+ * @author walter
+ */
+public abstract class DiffWriter {
+
+    /**
+     * Output formats by name, for --format with --diff.
+     */
+    public static final String[] FORMATS = {"html", "json", "text"};
+
+    /**
+     * Where everything goes; should be buffered.
+     */
+    protected final Writer out;
+
+    protected DiffWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * @param format One of FORMATS.
+     * @param out Output, should be buffered.
+     * @return The writer or null for an unknown format.
+     */
+    public static DiffWriter create(String format, Writer out) {
+        switch (format) {
+            case "html":
+                return new Html(out);
+            case "json":
+                return new Json(out);
+            case "text":
+            case "txt":
+                return new Text(out);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param before What is compared, as given.
+     * @param after What it is compared with, as given.
+     * @throws IOException From the output.
+     */
+    public abstract void begin(String before, String after) throws IOException;
+
+    /**
+     * @param id Short name.
+     * @param title Heading.
+     * @param columns Names of the cells of every row.
+     * @throws IOException From the output.
+     */
+    public abstract void beginSection(String id, String title, String... columns) throws IOException;
+
+    /**
+     * @param change '+' added, '-' removed or '~' changed.
+     * @param cells One per column, null for none.
+     * @throws IOException From the output.
+     */
+    public abstract void row(char change, String... cells) throws IOException;
+
+    /**
+     * @param added Rows with +.
+     * @param removed Rows with -.
+     * @param changed Rows with ~.
+     * @throws IOException From the output.
+     */
+    public abstract void endSection(int added, int removed, int changed) throws IOException;
+
+    /**
+     * Finish and flush, the output is not closed.
+     *
+     * @throws IOException From the output.
+     */
+    public abstract void end() throws IOException;
+
+    /**
+     * A page with a table per section.
+     */
+    public static class Html extends DiffWriter {
+
+        private static final String EOLN = Main.EOLN;
+
+        public Html(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void begin(String before, String after) throws IOException {
+            out.write("<html><body>");
+            out.write(EOLN);
+            out.write("<h1>Changes from ");
+            Utils.html(before, out);
+            out.write(" to ");
+            Utils.html(after, out);
+            out.write("</h1>");
+            out.write(EOLN);
+        }
+
+        @Override
+        public void beginSection(String id, String title, String... columns) throws IOException {
+            out.write("<section id=\"" + id + "\">" + EOLN + "<h2>" + title + "</h2>" + EOLN + "<table border=\"1\"><tr><th>&nbsp;</th>");
+            for (String c : columns) {
+                out.write("<th>" + c + "</th>");
+            }
+            out.write("</tr>");
+            out.write(EOLN);
+        }
+
+        @Override
+        public void row(char change, String... cells) throws IOException {
+            out.write("<tr><td>" + change + "</td>");
+            for (String c : cells) {
+                out.write("<td>");
+                if (null == c) {
+                    out.write("&nbsp;");
+                } else {
+                    Utils.html(c, out);
+                }
+                out.write("</td>");
+            }
+            out.write("</tr>");
+            out.write(EOLN);
+        }
+
+        @Override
+        public void endSection(int added, int removed, int changed) throws IOException {
+            out.write("</table>" + EOLN + "<p>" + added + " added, " + removed + " removed, " + changed + " changed</p></section>" + EOLN);
+        }
+
+        @Override
+        public void end() throws IOException {
+            out.write("</body></html>");
+            out.write(EOLN);
+            out.flush();
+        }
+    }
+
+    /**
+     * One object: before, after and per section the columns, the rows as
+     * arrays starting with the change, and the counts.
+     */
+    public static class Json extends DiffWriter {
+
+        private boolean firstSection;
+        private boolean firstRow;
+
+        public Json(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void begin(String before, String after) throws IOException {
+            out.write("{\"before\":");
+            Utils.json(before, out);
+            out.write(",\"after\":");
+            Utils.json(after, out);
+            out.write(",\"sections\":{");
+            firstSection = true;
+        }
+
+        @Override
+        public void beginSection(String id, String title, String... columns) throws IOException {
+            if (!firstSection) {
+                out.write(',');
+            }
+            firstSection = false;
+            firstRow = true;
+            Utils.json(id, out);
+            out.write(":{\"columns\":[");
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                Utils.json(columns[i], out);
+            }
+            out.write("],\"rows\":[");
+        }
+
+        @Override
+        public void row(char change, String... cells) throws IOException {
+            if (!firstRow) {
+                out.write(',');
+            }
+            firstRow = false;
+            out.write("\n[\"" + change + "\"");
+            for (String c : cells) {
+                out.write(',');
+                Utils.json(c, out);
+            }
+            out.write(']');
+        }
+
+        @Override
+        public void endSection(int added, int removed, int changed) throws IOException {
+            out.write("],\"added\":" + added + ",\"removed\":" + removed + ",\"changed\":" + changed + "}");
+        }
+
+        @Override
+        public void end() throws IOException {
+            out.write("}}\n");
+            out.flush();
+        }
+    }
+
+    /**
+     * Tab separated rows under a heading per section.
+     */
+    public static class Text extends DiffWriter {
+
+        public Text(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void begin(String before, String after) throws IOException {
+            out.write("Changes from " + before + " to " + after + "\n");
+        }
+
+        @Override
+        public void beginSection(String id, String title, String... columns) throws IOException {
+            out.write("\n" + title + "\n\t" + String.join("\t", columns) + "\n");
+        }
+
+        @Override
+        public void row(char change, String... cells) throws IOException {
+            out.write(change);
+            for (String c : cells) {
+                out.write('\t');
+                out.write(null == c ? "-" : c.replace('\t', ' ').replace('\n', ' '));
+            }
+            out.write('\n');
+        }
+
+        @Override
+        public void endSection(int added, int removed, int changed) throws IOException {
+            out.write(added + " added, " + removed + " removed, " + changed + " changed\n");
+        }
+
+        @Override
+        public void end() throws IOException {
+            out.flush();
+        }
+    }
+}
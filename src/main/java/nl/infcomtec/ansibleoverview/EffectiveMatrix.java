@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The effective value of every variable on every host.
+ * <p>
+ * Stored sparse, row per host: rowStart[h] to rowStart[h + 1] index into the
+ * parallel columns col (variable name index) and winner. Hosts are sorted
+ * case insensitively, names are sorted and so is each row.
+ *
+ * @author walter
+ */
+public class EffectiveMatrix {
+
+    /**
+     * Hosts per leaf task.
+     */
+    private static final int CHUNK = 64;
+
+    private final String[] hosts;
+    private final String[] hostKeys;
+    private final String[] names;
+    private final int[] rowStart;
+    private final int[] col;
+    private final Variable[] winner;
+
+    /**
+     * Compute the matrix, hosts are resolved in parallel.
+     *
+     * @param index Variables to resolve.
+     * @param parallelism Number of threads.
+     */
+    public EffectiveMatrix(VariableIndex index, int parallelism) {
+        hosts = index.getHosts().toArray(new String[0]);
+        hostKeys = new String[hosts.length];
+        for (int h = 0; h < hosts.length; h++) {
+            hostKeys[h] = VariableIndex.hostKey(hosts[h]);
+        }
+        names = index.getNames().toArray(new String[0]);
+        Build b = new Build(index, hosts, names);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            pool.invoke(new RowTask(b, 0, hosts.length));
+        } finally {
+            pool.shutdown();
+        }
+        rowStart = new int[hosts.length + 1];
+        for (int h = 0; h < hosts.length; h++) {
+            rowStart[h + 1] = rowStart[h] + b.rowCols[h].length;
+        }
+        col = new int[rowStart[hosts.length]];
+        winner = new Variable[col.length];
+        for (int h = 0; h < hosts.length; h++) {
+            System.arraycopy(b.rowCols[h], 0, col, rowStart[h], b.rowCols[h].length);
+            System.arraycopy(b.rowVals[h], 0, winner, rowStart[h], b.rowVals[h].length);
+        }
+    }
+
+    /**
+     * Rows under construction, each written by exactly one task.
+     */
+    private static class Build {
+
+        final VariableIndex index;
+        final String[] hosts;
+        final Map<String, Integer> nameIndex = new HashMap<>();
+        final int[][] rowCols;
+        final Variable[][] rowVals;
+
+        Build(VariableIndex index, String[] hosts, String[] names) {
+            this.index = index;
+            this.hosts = hosts;
+            for (int i = 0; i < names.length; i++) {
+                nameIndex.put(names[i], i);
+            }
+            rowCols = new int[hosts.length][];
+            rowVals = new Variable[hosts.length][];
+        }
+
+        void row(int h) {
+            TreeMap<String, Variable> vars = index.resolveHost(hosts[h]);
+            int[] c = new int[vars.size()];
+            Variable[] v = new Variable[vars.size()];
+            int i = 0;
+            for (Map.Entry<String, Variable> e : vars.entrySet()) {
+                c[i] = nameIndex.get(e.getKey());
+                v[i++] = e.getValue();
+            }
+            rowCols[h] = c;
+            rowVals[h] = v;
+        }
+    }
+
+    /**
+     * Splits a host range until it is small enough.
+     */
+    private static class RowTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Build b;
+        private final int from, to;
+
+        RowTask(Build b, int from, int to) {
+            this.b = b;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                for (int h = from; h < to; h++) {
+                    b.row(h);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RowTask(b, from, mid), new RowTask(b, mid, to));
+            }
+        }
+    }
+
+    public String[] getHosts() {
+        return hosts.clone();
+    }
+
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * @return Number of (host, variable) pairs with a value.
+     */
+    public int size() {
+        return col.length;
+    }
+
+    /**
+     * Effective variable of a host.
+     *
+     * @param host Host name, case insensitive.
+     * @param name Variable name.
+     * @return The winning variable or null.
+     */
+    public Variable get(String host, String name) {
+        int h = Arrays.binarySearch(hostKeys, VariableIndex.hostKey(host));
+        if (h < 0) {
+            return null;
+        }
+        int n = Arrays.binarySearch(names, name);
+        if (n < 0) {
+            return null;
+        }
+        int i = Arrays.binarySearch(col, rowStart[h], rowStart[h + 1], n);
+        return i < 0 ? null : winner[i];
+    }
+
+    /**
+     * Row of one host, in name order.
+     *
+     * @param h Host index.
+     * @return Winning variable by name.
+     */
+    public TreeMap<String, Variable> row(int h) {
+        TreeMap<String, Variable> ret = new TreeMap<>();
+        for (int i = rowStart[h]; i < rowStart[h + 1]; i++) {
+            ret.put(names[col[i]], winner[i]);
+        }
+        return ret;
+    }
+}
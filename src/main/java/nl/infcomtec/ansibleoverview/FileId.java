@@ -4,6 +4,8 @@
 package nl.infcomtec.ansibleoverview;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * File with uid.
@@ -12,17 +14,60 @@ public class FileId {
 
     public final int id;
     public final String path;
+    /**
+     * SHA-256 of the contents when known, else null. Replaced when the file
+     * is parsed again, the FileId itself is kept.
+     */
+    public volatile byte[] hash;
+    /**
+     * Contents and modification time when the model was loaded from a
+     * Snapshot, the file itself is then not read.
+     */
+    volatile ByteBuffer contents;
+    volatile long modified;
 
     public File getFile() {
         return new File(path);
     }
 
-    public FileId(String path) {
-        synchronized (Main.ansFiles) {
-            this.id = Main.nextSeq++;
-            this.path = path;
-            Main.ansFiles.put(id, this);
-        }
+    /**
+     * @return The contents, from the snapshot or else from the file.
+     * @throws IOException From reading the file.
+     */
+    public ByteBuffer read() throws IOException {
+        ByteBuffer c = contents;
+        return null == c ? Utils.read(getFile()) : c.duplicate();
+    }
+
+    /**
+     * @return Size of the contents, 0 if unknown.
+     */
+    public long length() {
+        ByteBuffer c = contents;
+        return null == c ? getFile().length() : c.remaining();
+    }
+
+    /**
+     * @return Modification time of the file, 0 if unknown.
+     */
+    public long lastModified() {
+        return null == contents ? getFile().lastModified() : modified;
+    }
+
+    public FileId(OverviewSession session, String path) {
+        this(session, path, null);
+    }
+
+    /**
+     * @param session Hands out the id and registers the file.
+     * @param path Absolute path.
+     * @param hash SHA-256 of the contents or null.
+     */
+    public FileId(OverviewSession session, String path, byte[] hash) {
+        this.id = session.nextId();
+        this.path = path;
+        this.hash = hash;
+        session.files.put(id, this);
     }
 
     public String getId() {
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder events around every phase, every scanned file and every
+ * rendered segment. They cost next to nothing unless a recording is running,
+ * for example with
+ * <pre>
+ * java -XX:StartFlightRecording=filename=run.jfr -jar AnsibleOverview.jar ...
+ * </pre>
+ * On a JVM without Flight Recorder the begin methods return null and nothing
+ * else happens; the event classes are then never loaded.
+ *
+ * @author walter
+ */
+public class FlightEvents {
+
+    private static final boolean AVAILABLE = available();
+
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    @Name("nl.infcomtec.ansibleoverview.Phase")
+    @Label("Phase")
+    @Category("AnsibleOverview")
+    static class PhaseEvent extends Event {
+
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("nl.infcomtec.ansibleoverview.Parse")
+    @Label("Scan File")
+    @Category("AnsibleOverview")
+    static class ParseEvent extends Event {
+
+        @Label("Path")
+        String path;
+        @Label("Kind")
+        String kind;
+        @Label("Parser")
+        String parser;
+        @Label("Size")
+        @DataAmount
+        long bytes;
+        @Label("Variables")
+        int variables;
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("nl.infcomtec.ansibleoverview.Render")
+    @Label("Render Segment")
+    @Category("AnsibleOverview")
+    static class RenderEvent extends Event {
+
+        @Label("Segment")
+        String segment;
+        @Label("Characters")
+        long chars;
+    }
+
+    /**
+     * @return An event to pass to endPhase, or null.
+     */
+    public static Object beginPhase() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        PhaseEvent e = new PhaseEvent();
+        e.begin();
+        return e;
+    }
+
+    /**
+     * @param event From beginPhase.
+     * @param phase Name of the phase.
+     */
+    public static void endPhase(Object event, String phase) {
+        if (null != event) {
+            PhaseEvent e = (PhaseEvent) event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.phase = phase;
+                e.commit();
+            }
+        }
+    }
+
+    /**
+     * @return An event to pass to endParse, or null.
+     */
+    public static Object beginParse() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        ParseEvent e = new ParseEvent();
+        e.begin();
+        return e;
+    }
+
+    /**
+     * @param event From beginParse.
+     * @param res Outcome of the scan; a null parser means a cache hit.
+     */
+    public static void endParse(Object event, ScanResult res) {
+        if (null != event) {
+            ParseEvent e = (ParseEvent) event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.path = res.file.getPath();
+                e.kind = res.kind.name();
+                e.parser = null == res.parser ? "cache" : res.parser;
+                e.bytes = res.file.length();
+                e.variables = res.defs.size();
+                e.failed = res.failed;
+                e.commit();
+            }
+        }
+    }
+
+    /**
+     * @return An event to pass to endRender, or null.
+     */
+    public static Object beginRender() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        RenderEvent e = new RenderEvent();
+        e.begin();
+        return e;
+    }
+
+    /**
+     * @param event From beginRender.
+     * @param segment What was rendered.
+     * @param chars Size of the output.
+     */
+    public static void endRender(Object event, String segment, long chars) {
+        if (null != event) {
+            RenderEvent e = (RenderEvent) event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.segment = segment;
+                e.chars = chars;
+                e.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Group hierarchy with precomputed transitive membership.
+ * <p>
+ * Every host gets an int id (host names are case insensitive, as in
+ * VariableIndex); every group keeps a BitSet of the hosts it
+ * contains directly or through its children, so a membership test is a single
+ * bit lookup. "all" contains every host. The depth of a group is its longest
+ * distance from "all" and decides precedence between groups: deeper groups
+ * override shallower ones, at equal depth the alphabetically last one wins,
+ * like Ansible does.
+ *
+ * @author walter
+ */
+public class GroupTree {
+
+    public static final String ALL = "all";
+
+    private static class Node {
+
+        final String name;
+        final TreeSet<String> parents = new TreeSet<>();
+        final TreeSet<String> children = new TreeSet<>();
+        final BitSet direct = new BitSet();
+        BitSet closure;
+        int depth = -1;
+        boolean busy;
+
+        Node(String name) {
+            this.name = name;
+        }
+    }
+
+    private final List<String> hostNames = new ArrayList<>();
+    private final HashMap<String, Integer> hostIds = new HashMap<>();
+    private final TreeMap<String, Node> groups = new TreeMap<>();
+    /**
+     * All groups, lowest precedence first.
+     */
+    private final List<Node> byPrecedence;
+
+    /**
+     * Build the tree.
+     *
+     * @param members Direct hosts by group.
+     * @param children Child groups by group.
+     */
+    public GroupTree(Map<String, Set<String>> members, Map<String, Set<String>> children) {
+        node(ALL);
+        for (Map.Entry<String, Set<String>> e : members.entrySet()) {
+            Node n = node(e.getKey());
+            for (String host : e.getValue()) {
+                n.direct.set(hostId(host));
+            }
+        }
+        for (Map.Entry<String, Set<String>> e : children.entrySet()) {
+            Node n = node(e.getKey());
+            for (String child : e.getValue()) {
+                n.children.add(child);
+                node(child).parents.add(e.getKey());
+            }
+        }
+        for (Node n : groups.values()) {
+            closure(n);
+            depth(n);
+        }
+        groups.get(ALL).closure.set(0, hostNames.size());
+        byPrecedence = new ArrayList<>(groups.values());
+        Collections.sort(byPrecedence, new Comparator<Node>() {
+            @Override
+            public int compare(Node o1, Node o2) {
+                if (o1.depth != o2.depth) {
+                    return Integer.compare(o1.depth, o2.depth);
+                }
+                return o1.name.compareTo(o2.name);
+            }
+        });
+    }
+
+    private Node node(String name) {
+        Node n = groups.get(name);
+        if (null == n) {
+            n = new Node(name);
+            groups.put(name, n);
+        }
+        return n;
+    }
+
+    private int hostId(String host) {
+        String key = VariableIndex.hostKey(host);
+        Integer id = hostIds.get(key);
+        if (null == id) {
+            id = hostNames.size();
+            hostNames.add(host);
+            hostIds.put(key, id);
+        }
+        return id;
+    }
+
+    private Integer findHost(String host) {
+        return null == host ? null : hostIds.get(VariableIndex.hostKey(host));
+    }
+
+    private BitSet closure(Node n) {
+        if (null != n.closure) {
+            return n.closure;
+        }
+        if (n.busy) {
+            Logger.getLogger(GroupTree.class.getName()).log(Level.WARNING, "Group cycle through {0}", n.name);
+            return n.direct;
+        }
+        n.busy = true;
+        BitSet bs = (BitSet) n.direct.clone();
+        for (String child : n.children) {
+            bs.or(closure(groups.get(child)));
+        }
+        n.busy = false;
+        n.closure = bs;
+        return bs;
+    }
+
+    private int depth(Node n) {
+        if (n.depth >= 0) {
+            return n.depth;
+        }
+        if (n.name.equals(ALL)) {
+            return n.depth = 0;
+        }
+        if (n.busy) {
+            return 0; // cycle, already reported by closure()
+        }
+        n.busy = true;
+        int d = 1;
+        for (String parent : n.parents) {
+            d = Math.max(d, depth(groups.get(parent)) + 1);
+        }
+        n.busy = false;
+        return n.depth = d;
+    }
+
+    /**
+     * @return All group names, sorted.
+     */
+    public Set<String> getGroups() {
+        return Collections.unmodifiableSet(groups.keySet());
+    }
+
+    /**
+     * @return All host names as first seen, in order of their ids.
+     */
+    public List<String> getHosts() {
+        return Collections.unmodifiableList(hostNames);
+    }
+
+    /**
+     * Is the host in the group, directly or through a child group?
+     *
+     * @param group Group name.
+     * @param host Host name, case insensitive.
+     * @return true if so.
+     */
+    public boolean contains(String group, String host) {
+        Node n = groups.get(group);
+        Integer id = findHost(host);
+        return null != n && null != id && n.closure.get(id);
+    }
+
+    /**
+     * @param group Group name.
+     * @return Every host in the group, directly or indirectly.
+     */
+    public Set<String> getMembers(String group) {
+        TreeSet<String> ret = new TreeSet<>();
+        Node n = groups.get(group);
+        if (null != n) {
+            for (int i = n.closure.nextSetBit(0); i >= 0; i = n.closure.nextSetBit(i + 1)) {
+                ret.add(hostNames.get(i));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param group Group name.
+     * @return Direct child groups.
+     */
+    public Set<String> getChildren(String group) {
+        Node n = groups.get(group);
+        return null == n ? Collections.<String>emptySet() : Collections.unmodifiableSet(n.children);
+    }
+
+    /**
+     * @param group Group name.
+     * @return Direct parent groups.
+     */
+    public Set<String> getParents(String group) {
+        Node n = groups.get(group);
+        return null == n ? Collections.<String>emptySet() : Collections.unmodifiableSet(n.parents);
+    }
+
+    /**
+     * @param group Group name.
+     * @return Longest distance from "all", -1 for an unknown group.
+     */
+    public int getDepth(String group) {
+        Node n = groups.get(group);
+        return null == n ? -1 : n.depth;
+    }
+
+    /**
+     * Groups containing the host, lowest precedence first.
+     *
+     * @param host Host name, case insensitive.
+     * @return Groups, "all" included.
+     */
+    public List<String> groupsOf(String host) {
+        List<String> ret = new ArrayList<>();
+        Integer id = findHost(host);
+        for (Node n : byPrecedence) {
+            if (n.name.equals(ALL) || (null != id && n.closure.get(id))) {
+                ret.add(n.name);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * A group and the groups containing it, lowest precedence first.
+     *
+     * @param group Group name.
+     * @return Groups, "all" included.
+     */
+    public List<String> selfAndAncestors(String group) {
+        TreeSet<String> up = new TreeSet<>();
+        ancestors(group, up);
+        List<String> ret = new ArrayList<>();
+        for (Node n : byPrecedence) {
+            if (n.name.equals(ALL) || up.contains(n.name)) {
+                ret.add(n.name);
+            }
+        }
+        return ret;
+    }
+
+    private void ancestors(String group, Set<String> acc) {
+        if (acc.add(group)) {
+            for (String p : getParents(group)) {
+                ancestors(p, acc);
+            }
+        }
+    }
+}
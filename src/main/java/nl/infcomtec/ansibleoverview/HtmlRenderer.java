@@ -0,0 +1,406 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The HTML page, one section per kind of content with a navigation bar.
+ *
+ * @author walter
+ */
+public class HtmlRenderer extends Renderer {
+
+    private static final String EOLN = Main.EOLN;
+    private static final Template PLAYBOOK = Template.compile("<tr><td><h2>{0}</h2></td>" + EOLN + "<td>");
+    private static final Template ROLE_FILE = Template.compile("<tr><td><h2>{0}</h2></td>" + EOLN
+            + "<td><h3>{1}</h3></td>" + EOLN + "<td>{2}</td><td>");
+    private static final Template PLAYBOOK_ID = Template.compile("<tr id=\"{1}\"><td><h2>{0}</h2></td>" + EOLN + "<td>");
+    private static final Template ROLE_FILE_ID = Template.compile("<tr id=\"{3}\"><td><h2>{0}</h2></td>" + EOLN
+            + "<td><h3>{1}</h3></td>" + EOLN + "<td>{2}</td><td>");
+    private static final String CONTENTS_END = "</td></tr>" + EOLN;
+    private static final String ROLE_START = "<table border=\"1\"><tr><th>Role</th><th>Section</th><th>Filename</th><th>Contents</th></tr>";
+    private static final String ROLE_END = "</table><p>&nbsp;</p>";
+    private static final String VAR_HEADER = "<table border=\"1\">" + EOLN
+            + "<tr><th>Name</th><th width=\"40%\">Value</th><th>Role</th><th>Host</th><th>Group</th><th width=\"20%\">File</th></tr>" + EOLN;
+    private static final String VAR_HEADER_USES = VAR_HEADER.replace("File</th>", "File</th><th>Used in</th>");
+    private static final Template VAR_START = Template.compile("<tr><td>{0}</td><td>{1:e}</td>");
+    private static final Template CELL = Template.compile("<td>{0:e}</td>");
+    private static final String EMPTY_CELL = "<td>&nbsp</td>";
+    private static final Template ROW_END = Template.compile("<td>{0:e}</td></tr>" + EOLN);
+    private static final String USAGE = "<section id=\"usage\">" + EOLN + "<h1>Variable usage</h1>" + EOLN;
+    private static final Template USE_LINK = Template.compile("<a href=\"{0}\">{1:e}</a>:{2}");
+    private static final Template USE = Template.compile("{0:e}:{1}");
+    private static final String EFFECTIVE_HEADER = "<table border=\"1\">" + EOLN
+            + "<tr><th>Host</th><th>Name</th><th width=\"40%\">Value</th><th>Level</th><th width=\"20%\">File</th></tr>" + EOLN;
+    private static final Template EFFECTIVE_ROW = Template.compile("<tr><td>{0:e}</td><td>{1}</td><td>{2:e}</td><td>{3}</td><td>{4:e}</td></tr>" + EOLN);
+    private static final String DUPLICATES_HEADER = "<h2>Duplicate files</h2>" + EOLN
+            + "<table border=\"1\"><tr><th>Files</th><th>Size</th><th>Copies</th></tr>" + EOLN;
+    private static final Template DUPLICATE_LINK = Template.compile("<a href=\"{0}\">{1:e}</a>");
+    private static final Template DUPLICATE_END = Template.compile("</td><td>{0}</td><td>{1}</td></tr>" + EOLN);
+    private static final String SECTION_END = "</table></section>" + EOLN;
+    private static final String DEPENDENCIES = "<section id=\"dependencies\">" + EOLN + "<h1>Dependencies</h1>" + EOLN
+            + "<table border=\"1\"><tr><th>Name</th><th>Uses</th><th>Used by</th><th>All dependencies</th></tr>" + EOLN;
+
+    /**
+     * Page the navigation bar links point into, empty for this page.
+     */
+    private final String base;
+    /**
+     * Give playbook and role file rows their FileId as id.
+     */
+    private final boolean anchors;
+    /**
+     * Page of every playbook and role file when they are on pages of their
+     * own, else null.
+     */
+    private Map<Integer, String> filePages;
+
+    public HtmlRenderer(Writer out) {
+        this(out, "", false);
+    }
+
+    /**
+     * @param out Output.
+     * @param base Page the navigation bar links point into, empty for this
+     * page.
+     * @param anchors Give playbook and role file rows their FileId as id.
+     */
+    public HtmlRenderer(Writer out, String base, boolean anchors) {
+        super(out);
+        this.base = base;
+        this.anchors = anchors;
+    }
+
+    @Override
+    protected Renderer newInstance(Writer out) {
+        HtmlRenderer r = new HtmlRenderer(out, base, anchors);
+        r.filePages = filePages;
+        return r;
+    }
+
+    /**
+     * @param filePages Page per playbook and role file by FileId.id, relative
+     * to the index page.
+     */
+    public void setFilePages(Map<Integer, String> filePages) {
+        this.filePages = filePages;
+    }
+
+    /**
+     * Link to a playbook or role file.
+     */
+    private String href(FileId f) {
+        if (null == filePages) {
+            return "#" + f.getId();
+        }
+        return base.substring(0, base.lastIndexOf('/') + 1) + filePages.get(f.id) + "#" + f.getId();
+    }
+
+    /**
+     * @return Does the file have a row to link to?
+     */
+    private boolean linkable(UsageIndex.Usage u) {
+        return u.row && (null == filePages || filePages.containsKey(u.file.id));
+    }
+
+    /**
+     * @return The navigation bar.
+     */
+    public String navbar() {
+        String nav = effective ? Main.NAVBAR_EFFECTIVE : Main.NAVBAR;
+        if (usage || dependencies) {
+            int at = nav.indexOf(EOLN, nav.indexOf("#variables")) + EOLN.length();
+            nav = nav.substring(0, at) + (usage ? Main.NAVBAR_USAGE : "") + (dependencies ? Main.NAVBAR_DEPENDENCIES : "")
+                    + nav.substring(at);
+        }
+        return base.isEmpty() ? nav : nav.replace("href=\"#", "href=\"" + base + "#");
+    }
+
+    @Override
+    public void escape(CharSequence text) throws IOException {
+        Utils.html(text, out);
+    }
+
+    @Override
+    public void begin(boolean effective) throws IOException {
+        super.begin(effective);
+        out.write("<html><body>");
+        out.write(EOLN);
+    }
+
+    @Override
+    public void beginPlaybooks() throws IOException {
+        out.write(navbar());
+        out.write(Main.PLAYBOOKS);
+        out.write("<table border=\"1\">");
+        out.write(EOLN);
+    }
+
+    @Override
+    public void playbook(String name, FileId file) throws IOException {
+        if (anchors || (null != usages && usages.uses(file))) {
+            PLAYBOOK_ID.write(this, name, file.getId());
+        } else {
+            PLAYBOOK.write(this, name);
+        }
+        contents(file);
+        out.write(CONTENTS_END);
+    }
+
+    @Override
+    public void endPlaybooks() throws IOException {
+        out.write(SECTION_END);
+    }
+
+    @Override
+    public void beginRoles() throws IOException {
+        out.write(navbar());
+        out.write(Main.ROLES);
+    }
+
+    @Override
+    public void beginRole(String role) throws IOException {
+        out.write(ROLE_START);
+    }
+
+    @Override
+    public void roleFile(String role, String part, String name, FileId file) throws IOException {
+        if (anchors || (null != pool && pool.hasCopies(file)) || (null != usages && usages.uses(file))) {
+            ROLE_FILE_ID.write(this, role, part, name, file.getId());
+        } else {
+            ROLE_FILE.write(this, role, part, name);
+        }
+        contents(file);
+        out.write(CONTENTS_END);
+    }
+
+    @Override
+    public void endRole() throws IOException {
+        out.write(ROLE_END);
+    }
+
+    @Override
+    public void duplicates() throws IOException {
+        out.write(DUPLICATES_HEADER);
+        for (ContentPool.Cluster c : pool.getClusters()) {
+            out.write("<tr><td>");
+            boolean first = true;
+            for (FileId f : c.files) {
+                if (!first) {
+                    out.write("<br>");
+                }
+                first = false;
+                DUPLICATE_LINK.write(this, href(f), pool.label(f));
+            }
+            DUPLICATE_END.write(this, Long.toString(c.getOriginal().length()), Integer.toString(c.files.size() - 1));
+        }
+        out.write("</table>");
+        out.write(EOLN);
+    }
+
+    @Override
+    public void endRoles() throws IOException {
+        out.write("</section>");
+        out.write(EOLN);
+    }
+
+    @Override
+    public void beginVariables() throws IOException {
+        out.write(navbar());
+        out.write(Main.VARS);
+        out.write(null == usages ? VAR_HEADER : VAR_HEADER_USES);
+    }
+
+    @Override
+    public void variable(String name, Variable v, Collection<UsageIndex.Usage> uses) throws IOException {
+        VAR_START.write(this, name, v.value);
+        cell(v.role);
+        cell(v.host);
+        cell(v.group);
+        if (null == usages) {
+            ROW_END.write(this, v.fileId.path);
+            return;
+        }
+        cell(v.fileId.path);
+        if (null == uses || uses.isEmpty()) {
+            out.write(EMPTY_CELL);
+        } else {
+            out.write("<td>");
+            uses(uses);
+            out.write("</td>");
+        }
+        out.write("</tr>");
+        out.write(EOLN);
+    }
+
+    /**
+     * Files and line numbers, linked to the file where it is shown.
+     */
+    private void uses(Collection<UsageIndex.Usage> uses) throws IOException {
+        boolean first = true;
+        for (UsageIndex.Usage u : uses) {
+            if (!first) {
+                out.write("<br>");
+            }
+            first = false;
+            if (linkable(u)) {
+                USE_LINK.write(this, href(u.file), u.label, u.getLines());
+            } else {
+                USE.write(this, u.label, u.getLines());
+            }
+        }
+    }
+
+    private void cell(String s) throws IOException {
+        if (null == s) {
+            out.write(EMPTY_CELL);
+        } else {
+            CELL.write(this, s);
+        }
+    }
+
+    @Override
+    public void endVariables() throws IOException {
+        out.write(SECTION_END);
+    }
+
+    @Override
+    public void usage(List<String> unused, Map<String, Collection<UsageIndex.Usage>> undefined) throws IOException {
+        out.write(navbar());
+        out.write(USAGE);
+        if (!unused.isEmpty()) {
+            out.write("<h2>Defined but not used</h2>");
+            out.write(EOLN);
+            out.write("<p>");
+            for (int i = 0; i < unused.size(); i++) {
+                if (i > 0) {
+                    out.write(", ");
+                }
+                escape(unused.get(i));
+            }
+            out.write("</p>");
+            out.write(EOLN);
+        }
+        if (!undefined.isEmpty()) {
+            out.write("<h2>Used but not defined</h2>");
+            out.write(EOLN);
+            out.write("<table border=\"1\"><tr><th>Name</th><th>Used in</th></tr>");
+            out.write(EOLN);
+            for (Map.Entry<String, Collection<UsageIndex.Usage>> e : undefined.entrySet()) {
+                out.write("<tr><td>");
+                escape(e.getKey());
+                out.write("</td><td>");
+                uses(e.getValue());
+                out.write("</td></tr>");
+                out.write(EOLN);
+            }
+            out.write("</table>");
+            out.write(EOLN);
+        }
+        out.write("</section>");
+        out.write(EOLN);
+    }
+
+    @Override
+    public void beginDependencies() throws IOException {
+        out.write(navbar());
+        out.write(DEPENDENCIES);
+    }
+
+    @Override
+    public void dependency(DependencyGraph.Node node, boolean present, Collection<DependencyGraph.Node> uses,
+            Collection<DependencyGraph.Node> usedBy, Collection<DependencyGraph.Node> all) throws IOException {
+        out.write("<tr><td>");
+        escape(node.toString());
+        if (!present) {
+            out.write(" (missing)");
+        }
+        out.write("</td><td>");
+        nodes(uses, "<br>");
+        out.write("</td><td>");
+        nodes(usedBy, "<br>");
+        out.write("</td><td>");
+        nodes(all, "<br>");
+        out.write("</td></tr>");
+        out.write(EOLN);
+    }
+
+    @Override
+    public void endDependencies(List<List<DependencyGraph.Node>> cycles) throws IOException {
+        out.write("</table>");
+        out.write(EOLN);
+        if (!cycles.isEmpty()) {
+            out.write("<h2>Cycles</h2>");
+            out.write(EOLN);
+            out.write("<p>");
+            for (int i = 0; i < cycles.size(); i++) {
+                if (i > 0) {
+                    out.write("<br>");
+                }
+                nodes(cycles.get(i), " &rarr; ");
+            }
+            out.write("</p>");
+            out.write(EOLN);
+        }
+        out.write("</section>");
+        out.write(EOLN);
+    }
+
+    @Override
+    public void beginEffective() throws IOException {
+        out.write(navbar());
+        out.write(Main.EFFECTIVE);
+        out.write(EFFECTIVE_HEADER);
+    }
+
+    @Override
+    public void effective(String host, String name, Variable v) throws IOException {
+        EFFECTIVE_ROW.write(this, host, name, v.value, v.level.toString(), v.fileId.path);
+    }
+
+    @Override
+    public void endEffective() throws IOException {
+        out.write(SECTION_END);
+    }
+
+    @Override
+    public void end() throws IOException {
+        out.write("</body></html>");
+        out.write(EOLN);
+        super.end();
+    }
+
+    @Override
+    protected void text(CharSequence text) throws IOException {
+        Main.pre(text, out);
+    }
+
+    @Override
+    protected void binary(long size) throws IOException {
+        out.write(EOLN);
+        out.write("<p><i>Binary file, " + size + " bytes</i></p>");
+        out.write(EOLN);
+    }
+
+    @Override
+    protected void unreadable() throws IOException {
+        out.write(EOLN);
+        out.write("<p><i>Unreadable file</i></p>");
+        out.write(EOLN);
+    }
+
+    @Override
+    protected void duplicate(FileId original) throws IOException {
+        out.write(EOLN);
+        out.write("<p><i>Same as ");
+        DUPLICATE_LINK.write(this, href(original), pool.label(original));
+        out.write("</i></p>");
+        out.write(EOLN);
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streaming parser for INI style Ansible inventories.
+ * <p>
+ * Works on the text by index: the only objects created are the strings that
+ * end up in the ScanResult, plus a reused buffer for values that need
+ * unquoting. Understands:
+ * <ul>
+ * <li>[group], [group:vars] and [group:children] sections;</li>
+ * <li>comment lines starting with # or ; and # comments after host
+ * lines;</li>
+ * <li>host lines with key=value variables, values may be quoted with " or '
+ * and may contain backslash escapes, as ini4j did;</li>
+ * <li>host ranges like web[01:50], db-[a:f] or web[1:10:2], at most
+ * MAX_HOSTS hosts per line; an empty range such as web[9:1] is ignored with a
+ * warning.</li>
+ * </ul>
+ * Hosts before the first section are ignored, as before.
+ *
+ * @author walter
+ */
+public class IniInventoryParser {
+
+    /**
+     * Most hosts one host pattern expands to.
+     */
+    static final int MAX_HOSTS = 10000;
+
+    private final ScanResult res;
+    private final String text;
+    private final StringBuilder sb = new StringBuilder();
+    /**
+     * The host name being expanded and the hosts of the current line.
+     */
+    private final StringBuilder name = new StringBuilder();
+    private final List<String> hosts = new ArrayList<>();
+    private boolean capped;
+    private int lineNo;
+
+    private IniInventoryParser(ScanResult res, String text) {
+        this.res = res;
+        this.text = text;
+    }
+
+    /**
+     * Parse an inventory.
+     *
+     * @param res Receives hosts, children and variables.
+     * @param text Contents of the inventory.
+     */
+    public static void parse(ScanResult res, String text) {
+        new IniInventoryParser(res, text).parse();
+    }
+
+    private void parse() {
+        String currentGroup = null;
+        String sectionType = null;
+        int len = text.length();
+        for (int pos = 0; pos < len;) {
+            int eol = pos;
+            while (eol < len && text.charAt(eol) != '\n') {
+                eol++;
+            }
+            lineNo++;
+            int s = skipBlanks(pos, eol);
+            int e = trimEnd(s, eol);
+            pos = eol + 1;
+            if (s == e || text.charAt(s) == '#' || text.charAt(s) == ';') {
+                continue;
+            }
+            if (text.charAt(s) == '[' && text.charAt(e - 1) == ']') {
+                currentGroup = text.substring(s + 1, e - 1);
+                sectionType = null;
+                int colon = currentGroup.lastIndexOf(':');
+                if (colon > 0) {
+                    sectionType = currentGroup.substring(colon + 1);
+                    if (sectionType.equals("children") || sectionType.equals("vars")) {
+                        currentGroup = currentGroup.substring(0, colon);
+                    } else {
+                        sectionType = null;
+                    }
+                }
+            } else if (null == currentGroup) {
+                // ungrouped host, not supported
+            } else if ("children".equals(sectionType)) {
+                res.addChild(currentGroup, text.substring(s, tokenEnd(s, e)));
+            } else if ("vars".equals(sectionType)) {
+                int eq = indexOf('=', s, e);
+                if (eq < 0) {
+                    warn("no '=' in variable");
+                } else {
+                    int ke = trimEnd(s, eq);
+                    if (ke == s) {
+                        warn("no variable name");
+                    } else {
+                        res.putVar(text.substring(s, ke), null, null, currentGroup, value(skipBlanks(eq + 1, e), e));
+                    }
+                }
+            } else {
+                hostLine(currentGroup, s, e);
+            }
+        }
+    }
+
+    private void hostLine(String group, int s, int e) {
+        int he = tokenEnd(s, e);
+        hosts.clear();
+        name.setLength(0);
+        capped = false;
+        if (!expand(s, he)) {
+            warn("bad host range " + text.substring(s, he));
+            hosts.clear();
+            hosts.add(text.substring(s, he));
+        } else if (capped) {
+            warn("host range " + text.substring(s, he) + " has more than " + MAX_HOSTS + " hosts, only the first " + MAX_HOSTS + " are used");
+        } else if (hosts.isEmpty()) {
+            warn("host range " + text.substring(s, he) + " is empty, the line is ignored");
+            return;
+        }
+        for (String host : hosts) {
+            res.addHost(group, host);
+        }
+        for (int t = skipBlanks(he, e); t < e && text.charAt(t) != '#'; t = skipBlanks(t, e)) {
+            int te = tokenEnd(t, e);
+            int eq = indexOf('=', t, te);
+            if (eq <= t) {
+                warn("expected key=value");
+            } else {
+                String key = text.substring(t, eq);
+                String val = value(eq + 1, te);
+                for (String host : hosts) {
+                    res.putVar(key, null, host, group, val);
+                }
+            }
+            t = te;
+        }
+    }
+
+    /**
+     * Expand a host pattern into hosts, each name prefixed with what name
+     * holds; recursive for the ranges after the first. Stops at MAX_HOSTS
+     * and sets capped.
+     *
+     * @param from Start of the pattern in text.
+     * @param to End of the pattern in text.
+     * @return false if a range is malformed.
+     */
+    private boolean expand(int from, int to) {
+        int open = indexOf('[', from, to);
+        int close = open < 0 ? -1 : indexOf(']', open, to);
+        int colon = close < 0 ? -1 : indexOf(':', open, close);
+        int mark = name.length();
+        if (colon < 0) {
+            if (hosts.size() < MAX_HOSTS) {
+                name.append(text, from, to);
+                hosts.add(name.toString());
+                name.setLength(mark);
+            } else {
+                capped = true;
+            }
+            return true;
+        }
+        int colon2 = indexOf(':', colon + 1, close);
+        if (colon2 >= 0 && indexOf(':', colon2 + 1, close) >= 0) {
+            return false;
+        }
+        int last = colon2 < 0 ? close : colon2;
+        long step = colon2 < 0 ? 1 : number(colon2 + 1, close);
+        if (step < 1) {
+            return false;
+        }
+        name.append(text, from, open);
+        int head = name.length();
+        char b0 = text.charAt(open + 1);
+        char z0 = text.charAt(colon + 1);
+        if (open + 2 == colon && colon + 2 == last && Character.isLetter(b0) && Character.isLetter(z0)) {
+            for (long c = b0; c <= z0 && !capped; c += step) {
+                name.append((char) c);
+                if (!expand(close + 1, to)) {
+                    return false;
+                }
+                name.setLength(head);
+            }
+        } else {
+            long b = open + 1 == colon ? 0 : number(open + 1, colon);
+            long z = number(colon + 1, last);
+            if (b < 0 || z < 0) {
+                return false;
+            }
+            // a leading zero pads to the width of the start
+            int width = colon - open - 1 > 1 && b0 == '0' ? colon - open - 1 : 0;
+            for (long i = b; i <= z && !capped; i += step) {
+                for (int pad = width - digits(i); pad > 0; pad--) {
+                    name.append('0');
+                }
+                name.append(i);
+                if (!expand(close + 1, to)) {
+                    return false;
+                }
+                name.setLength(head);
+            }
+        }
+        name.setLength(mark);
+        return true;
+    }
+
+    /**
+     * A non-negative decimal number of at most 18 digits, so stepping past
+     * it cannot overflow.
+     *
+     * @return The number or -1.
+     */
+    private long number(int from, int to) {
+        if (from == to || to - from > 18) {
+            return -1;
+        }
+        long ret = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            ret = ret * 10 + c - '0';
+        }
+        return ret;
+    }
+
+    private static int digits(long n) {
+        int ret = 1;
+        while (n >= 10) {
+            n /= 10;
+            ret++;
+        }
+        return ret;
+    }
+
+    /**
+     * Decode a value: quotes are removed, backslash escapes are resolved
+     * outside single quotes. A quote without a matching one is taken
+     * literally.
+     *
+     * @param from Start in text.
+     * @param to End in text.
+     * @return The value.
+     */
+    private String value(int from, int to) {
+        int i = from;
+        while (i < to && text.charAt(i) != '"' && text.charAt(i) != '\'' && text.charAt(i) != '\\') {
+            i++;
+        }
+        if (i == to) {
+            return text.substring(from, to);
+        }
+        sb.setLength(0);
+        sb.append(text, from, i);
+        while (i < to) {
+            char c = text.charAt(i++);
+            if ((c == '"' || c == '\'') && closingQuote(c, i, to) >= 0) {
+                int q = closingQuote(c, i, to);
+                while (i < q) {
+                    char d = text.charAt(i++);
+                    if (d == '\\' && c == '"' && i < q) {
+                        i = escape(i, q);
+                    } else {
+                        sb.append(d);
+                    }
+                }
+                i = q + 1;
+            } else if (c == '\\' && i < to) {
+                i = escape(i, to);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Append the escaped character at text[i].
+     *
+     * @return Index after the escape.
+     */
+    private int escape(int i, int to) {
+        char c = text.charAt(i++);
+        switch (c) {
+            case 't':
+                sb.append('\t');
+                break;
+            case 'n':
+                sb.append('\n');
+                break;
+            case 'r':
+                sb.append('\r');
+                break;
+            case 'f':
+                sb.append('\f');
+                break;
+            case 'b':
+                sb.append('\b');
+                break;
+            case 'u':
+                if (i + 4 <= to) {
+                    try {
+                        sb.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+                        return i + 4;
+                    } catch (NumberFormatException ex) {
+                        // not an escape after all
+                    }
+                }
+                sb.append(c);
+                break;
+            default:
+                sb.append(c);
+                break;
+        }
+        return i;
+    }
+
+    private int closingQuote(char quote, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && quote == '"') {
+                i++;
+            } else if (c == quote) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * End of the token starting at from: the first blank outside quotes.
+     */
+    private int tokenEnd(int from, int to) {
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\t') {
+                break;
+            }
+            if (c == '"' || c == '\'') {
+                int q = closingQuote(c, i + 1, to);
+                if (q >= 0) {
+                    i = q;
+                }
+            } else if (c == '\\') {
+                i++;
+            }
+            i++;
+        }
+        return Math.min(i, to);
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipBlanks(int from, int to) {
+        while (from < to && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimEnd(int from, int to) {
+        while (to > from && Character.isWhitespace(text.charAt(to - 1))) {
+            to--;
+        }
+        return to;
+    }
+
+    private void warn(String msg) {
+        Logger.getLogger(IniInventoryParser.class.getName()).log(Level.WARNING, "{0}:{1}: {2}", new Object[]{res.file, Integer.toString(lineNo), msg});
+    }
+}
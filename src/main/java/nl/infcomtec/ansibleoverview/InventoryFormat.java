@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+/**
+ * The formats an Ansible inventory can come in, recognized by content.
+ *
+ * @author walter
+ */
+public enum InventoryFormat {
+    INI, YAML, JSON, TOML, SCRIPT;
+
+    /**
+     * Figure out the format from the text. Comments and blank lines are
+     * skipped; a "#!" on the first line means an executable (dynamic)
+     * inventory. A text starting with a section header is INI unless it uses
+     * TOML only constructs: dotted table names, arrays of tables or inline
+     * tables and arrays as values.
+     *
+     * @param text Contents of the inventory.
+     * @return The format, YAML if nothing else fits.
+     */
+    public static InventoryFormat sniff(CharSequence text) {
+        int len = text.length();
+        int pos = skipWhite(text, 0);
+        if (pos + 1 < len && text.charAt(pos) == '#' && text.charAt(pos + 1) == '!') {
+            return SCRIPT;
+        }
+        boolean first = true;
+        boolean ini = false;
+        boolean sections = false;
+        for (; pos < len; pos = nextLine(text, pos)) {
+            pos = skipWhite(text, pos);
+            if (pos >= len) {
+                break;
+            }
+            char c = text.charAt(pos);
+            if (c == '#' || c == ';') {
+                continue;
+            }
+            int eol = endOfLine(text, pos);
+            if (first) {
+                if (c == '{') {
+                    return JSON;
+                }
+                if (c != '[') {
+                    if (c == '-' || c == '%' || indexOf(text, ':', pos, eol) >= 0) {
+                        return YAML;
+                    }
+                    ini = true; // could be ungrouped hosts before the first section
+                }
+                first = false;
+            }
+            if (c == '[') {
+                if (pos + 1 < eol && text.charAt(pos + 1) == '[') {
+                    return TOML;
+                }
+                int close = indexOf(text, ']', pos, eol);
+                if (close < 0) {
+                    continue;
+                }
+                sections = true;
+                if (indexOf(text, ':', pos, close) >= 0) {
+                    return INI;
+                }
+                String header = text.subSequence(pos + 1, close).toString().trim();
+                if (header.endsWith(".hosts") || header.endsWith(".vars") || header.endsWith(".children")) {
+                    return TOML;
+                }
+            } else {
+                int eq = indexOf(text, '=', pos, eol);
+                if (eq > pos && isKey(text, pos, eq)) {
+                    int v = skipBlanks(text, eq + 1, eol);
+                    if (v < eol && (text.charAt(v) == '{' || text.charAt(v) == '[')) {
+                        return TOML;
+                    }
+                }
+            }
+        }
+        return ini && !sections ? YAML : INI;
+    }
+
+    /**
+     * Is text[from, to) a TOML key, possibly padded with blanks?
+     */
+    private static boolean isKey(CharSequence text, int from, int to) {
+        String key = text.subSequence(from, to).toString().trim();
+        if (key.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.' && c != '"') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhite(CharSequence text, int pos) {
+        while (pos < text.length() && (Character.isWhitespace(text.charAt(pos)) || text.charAt(pos) == '\uFEFF')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipBlanks(CharSequence text, int pos, int end) {
+        while (pos < end && (text.charAt(pos) == ' ' || text.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int endOfLine(CharSequence text, int pos) {
+        while (pos < text.length() && text.charAt(pos) != '\n' && text.charAt(pos) != '\r') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int nextLine(CharSequence text, int pos) {
+        return endOfLine(text, pos) + 1;
+    }
+
+    private static int indexOf(CharSequence text, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
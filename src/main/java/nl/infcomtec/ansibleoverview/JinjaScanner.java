@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the variable names a file uses, in one pass over its text. Inside
+ * {{ }} and {% %} every name that is not an attribute, filter, test, function,
+ * keyword argument or Jinja keyword is a use; {% for %} and {% set %} targets
+ * are local. In YAML files the bare expressions of when, changed_when,
+ * failed_when, until and that count as well, and names defined by the file
+ * itself (register, loop_var, the keys under set_fact and vars) are reported
+ * as local.
+ * <p>
+ * This is a tokenizer, not a parser: it does not need the file to be valid
+ * YAML or Jinja, and it may miss or invent a name in odd constructs.
+ *
+ * @author walter
+ */
+public class JinjaScanner {
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "and", "or", "not", "in", "is", "if", "else", "true", "false", "none",
+            "True", "False", "None", "recursive"));
+    /**
+     * YAML keys whose value is a bare Jinja expression.
+     */
+    private static final Set<String> CONDITIONS = new HashSet<>(Arrays.asList(
+            "when", "changed_when", "failed_when", "until", "that"));
+    /**
+     * YAML keys whose value is a variable name the file defines.
+     */
+    private static final Set<String> NAMES = new HashSet<>(Arrays.asList("register", "loop_var"));
+    /**
+     * YAML keys with a map of variables the file defines.
+     */
+    private static final Set<String> MAPS = new HashSet<>(Arrays.asList("set_fact", "vars"));
+    /**
+     * Statements whose names are not variable uses.
+     */
+    private static final Set<String> OPAQUE = new HashSet<>(Arrays.asList(
+            "macro", "call", "import", "from", "include", "extends", "block", "raw"));
+
+    private final CharSequence text;
+    private final List<ScanResult.Use> out;
+    /**
+     * Indent of a condition key whose value is a list on the next lines, or
+     * -1.
+     */
+    private int listIndent = -1;
+    /**
+     * Indent of a set_fact or vars key whose map is on the next lines, or -1.
+     */
+    private int mapIndent = -1;
+    /**
+     * Indent of the keys of that map, -1 until the first one.
+     */
+    private int keyIndent = -1;
+
+    private JinjaScanner(CharSequence text, List<ScanResult.Use> out) {
+        this.text = text;
+        this.out = out;
+    }
+
+    /**
+     * Find the variable uses in a text.
+     *
+     * @param text Contents of a file.
+     * @param yaml Is it YAML (tasks, playbooks, variables), rather than a
+     * template?
+     * @param out Receives the uses in text order.
+     */
+    public static void scan(CharSequence text, boolean yaml, List<ScanResult.Use> out) {
+        new JinjaScanner(text, out).scan(yaml);
+    }
+
+    /**
+     * Files whose names are not YAML are scanned as templates.
+     *
+     * @param name File name.
+     * @return true for YAML.
+     */
+    public static boolean isYaml(String name) {
+        return name.endsWith(".yml") || name.endsWith(".yaml") || !name.contains(".");
+    }
+
+    private void scan(boolean yaml) {
+        int n = text.length();
+        int line = 1;
+        boolean lineStart = true;
+        int i = 0;
+        while (i < n) {
+            if (lineStart && yaml) {
+                int eol = endOfLine(i);
+                if (!yamlLine(i, eol, line)) {
+                    i = eol; // a comment
+                    continue;
+                }
+            }
+            lineStart = false;
+            char c = text.charAt(i);
+            if (c == '\n') {
+                line++;
+                lineStart = true;
+                i++;
+            } else if (c == '{' && i + 1 < n && (text.charAt(i + 1) == '{' || text.charAt(i + 1) == '%' || text.charAt(i + 1) == '#')) {
+                char kind = text.charAt(i + 1);
+                int end = indexOfClose(kind == '{' ? '}' : kind, i + 2);
+                if (end < 0) {
+                    return;
+                }
+                if (kind != '#') {
+                    expression(i + 2, end, line, kind == '%');
+                }
+                for (int j = i; j < end; j++) {
+                    if (text.charAt(j) == '\n') {
+                        line++;
+                    }
+                }
+                i = end + 2;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private int endOfLine(int from) {
+        int n = text.length();
+        while (from < n && text.charAt(from) != '\n') {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Where c followed by '}' starts, or -1.
+     */
+    private int indexOfClose(char c, int from) {
+        for (int i = from; i < text.length() - 1; i++) {
+            if (text.charAt(i) == c && text.charAt(i + 1) == '}') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The YAML constructs of one line.
+     *
+     * @return false for a comment line.
+     */
+    private boolean yamlLine(int from, int to, int line) {
+        int i = from;
+        while (i < to && text.charAt(i) == ' ') {
+            i++;
+        }
+        if (i < to && text.charAt(i) == '#') {
+            return false;
+        }
+        if (i == to || text.charAt(i) == '\r') {
+            return true;
+        }
+        int indent = i - from;
+        boolean item = false;
+        if (text.charAt(i) == '-' && (i + 1 == to || text.charAt(i + 1) == ' ')) {
+            item = true;
+            i++;
+            while (i < to && text.charAt(i) == ' ') {
+                i++;
+            }
+        }
+        if (listIndent >= 0) {
+            if (indent > listIndent || (item && indent == listIndent)) {
+                if (item) {
+                    bare(i, to, line);
+                }
+                return true;
+            }
+            listIndent = -1;
+        }
+        int k = i;
+        while (k < to && isNamePart(text.charAt(k))) {
+            k++;
+        }
+        boolean key = k > i && k < to && text.charAt(k) == ':' && (k + 1 == to || text.charAt(k + 1) <= ' ');
+        if (mapIndent >= 0) {
+            if (indent > mapIndent || (item && indent == mapIndent)) {
+                if (keyIndent < 0) {
+                    keyIndent = i - from;
+                }
+                if (key && i - from == keyIndent) {
+                    out.add(new ScanResult.Use(text.subSequence(i, k).toString(), line, true));
+                }
+                return true;
+            }
+            mapIndent = -1;
+        }
+        if (!key) {
+            return true;
+        }
+        String name = text.subSequence(i, k).toString();
+        int v = k + 1;
+        while (v < to && text.charAt(v) <= ' ') {
+            v++;
+        }
+        int e = to;
+        while (e > v && text.charAt(e - 1) <= ' ') {
+            e--;
+        }
+        boolean empty = v == e || text.charAt(v) == '#';
+        if (CONDITIONS.contains(name)) {
+            if (empty) {
+                listIndent = i - from;
+            } else if (text.charAt(v) != '|' && text.charAt(v) != '>') {
+                bare(v, e, line);
+            }
+        } else if (NAMES.contains(name) && !empty) {
+            int w = v;
+            while (w < e && isNamePart(text.charAt(w))) {
+                w++;
+            }
+            if (w > v && isNameStart(text.charAt(v))) {
+                out.add(new ScanResult.Use(text.subSequence(v, w).toString(), line, true));
+            }
+        } else if (MAPS.contains(name) && empty) {
+            mapIndent = i - from;
+            keyIndent = -1;
+        }
+        return true;
+    }
+
+    /**
+     * A bare expression, possibly quoted or a flow list.
+     */
+    private void bare(int from, int to, int line) {
+        if (to - from >= 2) {
+            char q = text.charAt(from);
+            char last = text.charAt(to - 1);
+            if ((q == '"' || q == '\'') && last == q || q == '[' && last == ']') {
+                from++;
+                to--;
+            }
+        }
+        // a templated condition is scanned as such
+        for (int i = from; i < to - 1; i++) {
+            if (text.charAt(i) == '{' && (text.charAt(i + 1) == '{' || text.charAt(i + 1) == '%')) {
+                return;
+            }
+        }
+        expression(from, to, line, false);
+    }
+
+    /**
+     * The names in an expression or statement.
+     */
+    private void expression(int from, int to, int line, boolean statement) {
+        String tag = null;
+        boolean targets = false;
+        char prev = 0;
+        String prevWord = null;
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                line++;
+                i++;
+            } else if (c <= ' ') {
+                i++;
+            } else if (c == '"' || c == '\'') {
+                i++;
+                while (i < to && text.charAt(i) != c) {
+                    if (text.charAt(i) == '\\') {
+                        i++;
+                    } else if (text.charAt(i) == '\n') {
+                        line++;
+                    }
+                    i++;
+                }
+                i++;
+                prev = '0';
+                prevWord = null;
+            } else if (c >= '0' && c <= '9') {
+                while (i < to && (isNamePart(text.charAt(i)) || text.charAt(i) == '.')) {
+                    i++;
+                }
+                prev = '0';
+                prevWord = null;
+            } else if (isNameStart(c)) {
+                int s = i;
+                while (i < to && isNamePart(text.charAt(i))) {
+                    i++;
+                }
+                String word = text.subSequence(s, i).toString();
+                if (statement && null == tag) {
+                    tag = word;
+                    targets = word.equals("for") || word.equals("set");
+                } else if (targets) {
+                    if (word.equals("in")) {
+                        targets = false;
+                    } else {
+                        out.add(new ScanResult.Use(word, line, true));
+                    }
+                } else if (!(null != tag && (OPAQUE.contains(tag) || tag.startsWith("end")))
+                        && prev != '.' && prev != '|' && !"is".equals(prevWord) && !KEYWORDS.contains(word)
+                        && !isCallOrKeyword(i, to)) {
+                    out.add(new ScanResult.Use(word, line, false));
+                }
+                // "is not defined": the test follows "not"
+                prevWord = "is".equals(prevWord) && word.equals("not") ? "is" : word;
+                prev = 'a';
+            } else {
+                if (c == '=' && "set".equals(tag)) {
+                    targets = false;
+                }
+                prev = c;
+                prevWord = null;
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Is the name at "from" followed by "(" or by "=" (but not "==")?
+     */
+    private boolean isCallOrKeyword(int from, int to) {
+        while (from < to && text.charAt(from) <= ' ') {
+            from++;
+        }
+        if (from == to) {
+            return false;
+        }
+        char c = text.charAt(from);
+        return c == '(' || (c == '=' && (from + 1 == to || text.charAt(from + 1) != '='));
+    }
+
+    private static boolean isNameStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isNamePart(char c) {
+        return isNameStart(c) || (c >= '0' && c <= '9');
+    }
+}
@@ -3,31 +3,39 @@
  */
 package nl.infcomtec.ansibleoverview;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.StringTokenizer;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.ini4j.Ini;
 import org.ini4j.Profile;
-import org.yaml.snakeyaml.Yaml;
-import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.error.YAMLException;
 
 /**
  *
@@ -51,16 +59,16 @@ public class Main {
      * For Future Use: application settings
      */
     public static final File HOME_APPLICATION_CFG = new File(System.getProperty("user.home"), ".ansover.properties");
+    /**
+     * Parse results of earlier runs.
+     */
+    public static final File HOME_SCAN_CACHE = new File(System.getProperty("user.home"), ".ansover.cache");
     /**
      * For Future Use: application settings
      */
     public static final Properties props = new Properties();
 
-    public static int nextSeq = 37;
-    public static final TreeMap<Integer, FileId> ansFiles = new TreeMap<>();
-    public static final TreeMap<String, List<Variable>> ansVars = new TreeMap<>();
-    public static final TreeMap<String, Set<String>> ansGroups = new TreeMap<>();
-    private static final String[] ROLE_PARTS = {"tasks", "handlers", "defaults", "vars", "files", "templates", "meta", "library", "tests"};
+    public static final String[] ROLE_PARTS = {"tasks", "handlers", "defaults", "vars", "files", "templates", "meta", "library", "tests"};
     /**
      * Proper HTML line ending
      */
@@ -69,6 +77,14 @@ public class Main {
     public static String PLAYBOOKS = "<section id=\"playbooks\">\r\n" + "<h1>Playbooks</h1>\r\n";
     public static String VARS = "<section id=\"variables\">\r\n" + "<h1>Variables</h1>\r\n";
     public static String ROLES = "<section id=\"roles\">\r\n" + "<h1>Roles</h1>\r\n";
+    public static String NAVBAR_EFFECTIVE = NAVBAR.replace("    </ul>", "        <li><a href=\"#effective\">Effective values</a></li>\r\n    </ul>");
+    public static String EFFECTIVE = "<section id=\"effective\">\r\n" + "<h1>Effective values</h1>\r\n";
+    /**
+     * Navigation bar entries of the optional sections, added after Variables
+     * when the section is there.
+     */
+    public static String NAVBAR_USAGE = "        <li><a href=\"#usage\">Variable usage</a></li>\r\n";
+    public static String NAVBAR_DEPENDENCIES = "        <li><a href=\"#dependencies\">Dependencies</a></li>\r\n";
 
     public static void main(String[] args) {
         if (HOME_APPLICATION_CFG.exists()) {
@@ -81,367 +97,969 @@ public class Main {
         new Main().init(args);
     }
 
-    public TreeMap<String, String> playbooks = new TreeMap<>();
-    public TreeMap<String, TreeMap<String, TreeMap<String, String>>> roleFiles = new TreeMap<>();
-    public FileId source;
-    private final List<File> roles = new LinkedList<>();
+    /**
+     * Files, variables and groups of this analysis.
+     */
+    public final OverviewSession session = new OverviewSession();
+    /**
+     * Playbooks by file name; the contents are read when rendering.
+     */
+    public TreeMap<String, FileId> playbooks = new TreeMap<>();
+    /**
+     * Role files by role, part and file name; the contents are read when
+     * rendering.
+     */
+    public TreeMap<String, TreeMap<String, TreeMap<String, FileId>>> roleFiles = new TreeMap<>();
+    /**
+     * Where variables are used, found while scanning.
+     */
+    public final UsageIndex usages = new UsageIndex();
+    /**
+     * Which playbooks, roles and task files depend on which.
+     */
+    public final DependencyGraph graph = new DependencyGraph();
+    /**
+     * Number of scanner threads.
+     */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    /**
+     * Parse results of earlier runs, null if disabled.
+     */
+    private ScanCache cache;
+    /**
+     * Add the effective value of every variable on every host.
+     */
+    private boolean effective;
+    /**
+     * Instrumentation for --stats, null if not wanted.
+     */
+    private Stats stats;
+    /**
+     * Output format, one of Renderer.FORMATS.
+     */
+    private String format = "html";
+    /**
+     * The directories scanned, in command line order.
+     */
+    private List<String> directories = new ArrayList<>();
+    /**
+     * Everything scanned, in scan order; kept for incremental updates.
+     */
+    private final List<ScanResult> results = new ArrayList<>();
+    /**
+     * Held for writing while the model changes after the first scan (watch
+     * mode), for reading while another thread renders from it (serve mode).
+     */
+    public final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Counts model changes after the first scan.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * @return The directories scanned, also when loaded from a Snapshot.
+     */
+    public List<String> getDirectories() {
+        return directories;
+    }
+
+    void setDirectories(List<String> directories) {
+        this.directories = new ArrayList<>(directories);
+    }
 
-    public static void addHost(String group, String host) {
-        if (null != group && null != host) {
-            Set<String> get = ansGroups.get(group);
-            if (null == get) {
-                get = new TreeSet<>();
-                ansGroups.put(group, get);
-            }
-            get.add(host);
+    /**
+     * @return Instrumentation of this run, or null.
+     */
+    public Stats getStats() {
+        return stats;
+    }
+
+    /**
+     * @param stats Instrumentation for the following scans and renders, or
+     * null for none.
+     */
+    public void setStats(Stats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Time a phase for --stats and Flight Recorder.
+     *
+     * @param name Phase.
+     * @param start System.nanoTime() at the start.
+     * @param event From FlightEvents.beginPhase().
+     */
+    void endPhase(String name, long start, Object event) {
+        FlightEvents.endPhase(event, name);
+        if (null != stats) {
+            stats.phase(name, start);
         }
     }
 
+    /**
+     * @return Changes to the model so far, to know when derived data is stale.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
     private void init(String[] args) {
-        PrintStream out = System.out;
         List<String> directories = new ArrayList<>();
+        String threads = props.getProperty("parallelism");
+        boolean useCache = true;
+        boolean stats = false;
+        String statsPath = null;
+        boolean watch = false;
+        String outPath = null;
+        String affected = null;
+        String snapshot = null;
+        String fromSnapshot = null;
+        String[] diff = null;
+        int port = -1;
+        InetAddress bind = null;
         for (int i = 0; i < args.length; i++) {
             switch (args[i]) {
+                case "-j":
+                    if (i + 1 < args.length) {
+                        threads = args[++i];
+                    } else {
+                        Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "-j specified but no thread count provided.");
+                        return;
+                    }
+                    break;
+                case "--no-cache":
+                    useCache = false;
+                    break;
+                case "--stats":
+                    // the report file goes in --stats=<file>; a file after --stats would become a directory to scan
+                    if (i + 1 < args.length && !args[i + 1].startsWith("-") && !new File(args[i + 1]).isDirectory()) {
+                        Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--stats is followed by " + args[i + 1]
+                                + ", which is not a directory; write the report file as --stats=" + args[i + 1]);
+                        return;
+                    }
+                    stats = true;
+                    break;
+                case "--watch":
+                    watch = true;
+                    break;
+                case "--effective":
+                    effective = true;
+                    break;
+                case "--format":
+                    if (i + 1 < args.length && (null != Renderer.create(args[i + 1], null) || null != DiffWriter.create(args[i + 1], null))) {
+                        format = args[++i];
+                    } else {
+                        Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--format needs one of " + Arrays.toString(Renderer.FORMATS)
+                                + ", with --diff " + Arrays.toString(DiffWriter.FORMATS));
+                        return;
+                    }
+                    break;
+                case "--serve":
+                    try {
+                        port = Integer.parseInt(args[++i]);
+                    } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+                        Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--serve needs a port number.");
+                        return;
+                    }
+                    break;
+                case "--bind":
+                    try {
+                        bind = InetAddress.getByName(args[++i]);
+                    } catch (ArrayIndexOutOfBoundsException | UnknownHostException ex) {
+                        Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--bind needs an address of this machine, 0.0.0.0 for all.");
+                        return;
+                    }
+                    break;
+                case "--affected":
+                    if (i + 1 < args.length) {
+                        affected = args[++i];
+                    } else {
+                        Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--affected needs a role, playbook or task file.");
+                        return;
+                    }
+                    break;
+                case "--snapshot":
+                    if (i + 1 < args.length) {
+                        snapshot = args[++i];
+                    } else {
+                        Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--snapshot needs a file.");
+                        return;
+                    }
+                    break;
+                case "--diff":
+                    if (i + 2 < args.length) {
+                        diff = new String[]{args[++i], args[++i]};
+                    } else {
+                        Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--diff needs two directories or snapshots.");
+                        return;
+                    }
+                    break;
+                case "--from-snapshot":
+                    if (i + 1 < args.length) {
+                        fromSnapshot = args[++i];
+                    } else {
+                        Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--from-snapshot needs a file.");
+                        return;
+                    }
+                    break;
                 case "-o":
                     if (i + 1 < args.length) {
-                        try {
-                            out = new PrintStream(args[i + 1]);
-                        } catch (FileNotFoundException ex) {
-                            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "-o: " + args[i + 1], ex);
-                        }
-                        i++;  // Skip next argument since it's the output path
+                        outPath = args[++i];
                     } else {
                         Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "Output path specified but no path provided.");
                         return;
                     }
                     break;
                 default:
-                    directories.add(args[i]);
+                    if (args[i].startsWith("--stats=")) {
+                        // the report file is attached, so a directory after --stats stays a directory
+                        statsPath = args[i].substring("--stats=".length());
+                        if (statsPath.isEmpty()) {
+                            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--stats= needs a file");
+                            return;
+                        }
+                        stats = true;
+                    } else {
+                        directories.add(args[i]);
+                    }
                     break;
             }
         }
-        if (directories.isEmpty()) {
+        if (null != threads) {
+            try {
+                parallelism = Integer.parseInt(threads.trim());
+            } catch (NumberFormatException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "Invalid thread count: " + threads, ex);
+                return;
+            }
+        }
+        if (null != diff) {
+            if (!directories.isEmpty() || watch || port >= 0 || null != fromSnapshot) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--diff takes no other directories or snapshots and cannot --watch or --serve.");
+                return;
+            }
+            if (null == DiffWriter.create(format, null)) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--diff writes one of " + Arrays.toString(DiffWriter.FORMATS));
+                return;
+            }
+        } else if (null == Renderer.create(format, null)) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--format " + format + " is for --diff only.");
+            return;
+        } else if (null != fromSnapshot) {
+            if (!directories.isEmpty() || watch) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--from-snapshot takes no directories and cannot --watch.");
+                return;
+            }
+        } else if (directories.isEmpty()) {
             Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "No directories provided to analyze.");
             return;
         }
-        scanStandard();
-        scan(directories);
-        outputHTML(out);
-    }
-
-    private void outputHTML(PrintStream out) {
-        out.print("<html><body>");
-        out.print(EOLN);
-        out.print(NAVBAR);
-        out.print(PLAYBOOKS);
-        out.print("<table border=\"1\">");
-        out.print(EOLN);
-        for (Map.Entry<String, String> e1 : playbooks.entrySet()) {
-            out.format("<tr><td><h2>%s</h2></td>%s<td>%s</td></tr>%s",
-                    e1.getKey(), EOLN,
-                    pre(e1.getValue()), EOLN);
-        }
-        out.print("</table></section>");
-        out.print(EOLN);
-        out.print(NAVBAR);
-        out.print(ROLES);
-        for (Map.Entry<String, TreeMap<String, TreeMap<String, String>>> e1 : roleFiles.entrySet()) {
-            out.print("<table border=\"1\"><tr><th>Role</th><th>Section</th><th>Filename</th><th>Contents</th></tr>");
-            boolean f1 = true;
-            for (Map.Entry<String, TreeMap<String, String>> e2 : e1.getValue().entrySet()) {
-                boolean f2 = true;
-                for (Map.Entry<String, String> e3 : e2.getValue().entrySet()) {
-                    out.format("<tr><td><h2>%s</h2></td>%s", f1 ? e1.getKey() : "", EOLN);
-                    out.format("<td><h3>%s</h3></td>%s", f2 ? e2.getKey() : "", EOLN);
-                    out.format("<td>%s</td><td>%s</td></tr>%s", e3.getKey(), pre(e3.getValue()), EOLN);
-                    f1 = f2 = false;
-                }
+        if (null != bind && port < 0) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--bind is for --serve only.");
+            return;
+        }
+        if (watch && null == outPath && port < 0) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--watch needs an output file (-o) or --serve.");
+            return;
+        }
+        boolean sharded = null != outPath && ShardWriter.isShardDir(outPath);
+        if (sharded && !format.equals("html")) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "-o <dir>/ writes HTML pages only.");
+            return;
+        }
+        if (null != statsPath) {
+            this.stats = new Stats();
+        }
+        if (null != diff) {
+            diff(diff[0], diff[1], outPath, useCache);
+            return;
+        }
+        if (null != fromSnapshot) {
+            try {
+                loadSnapshot(new File(fromSnapshot));
+            } catch (IOException | RuntimeException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--from-snapshot: " + fromSnapshot, ex);
+                return;
+            }
+        } else {
+            if (useCache) {
+                cache = new ScanCache(HOME_SCAN_CACHE);
+            }
+            scanStandard();
+            scan(directories);
+            saveCache();
+        }
+        if (null != snapshot) {
+            try {
+                writeSnapshot(new File(snapshot));
+            } catch (IOException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--snapshot: " + snapshot, ex);
+            }
+        }
+        if (null != affected) {
+            DependencyGraph.Node node = graph.find(affected);
+            if (null == node) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--affected: no role, playbook or task file " + affected);
+                return;
+            }
+            for (DependencyGraph.Node n : graph.affected(node)) {
+                System.out.println(n);
+            }
+            return;
+        }
+        ShardWriter shards = null;
+        long start = System.nanoTime();
+        Object event = FlightEvents.beginPhase();
+        if (sharded) {
+            shards = writeShards(outPath);
+        } else if (null != outPath) {
+            try (FileOutputStream fos = new FileOutputStream(outPath)) {
+                output(fos);
+            } catch (IOException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "-o: " + outPath, ex);
+            }
+        } else if (port < 0) {
+            try {
+                output(System.out);
+            } catch (IOException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
             }
-            out.print("</table><p>&nbsp;</p>");
-        }
-        out.print("</section>");
-        out.print(EOLN);
-        out.print(NAVBAR);
-        out.print(VARS);
-        out.format("<table border=\"1\">%s", EOLN);
-        out.format("<tr><th>Name</th><th width=\"40%%\">Value</th><th>Role</th><th>Host</th><th>Group</th><th width=\"20%%\">File</th></tr>%s", EOLN);
-        for (Map.Entry<String, List<Variable>> e : ansVars.entrySet()) {
-            List<Variable> lv = e.getValue();
-            boolean f1 = true;
-            for (Variable v : lv) {
-                out.format("<tr><td>%s</td>", f1 ? e.getKey() : "");
-                f1 = false;
-                out.format("<td>%s</td>", Utils.html(v.value));
-                out.format("<td>%s</td>", (null == v.role) ? "&nbsp" : Utils.html(v.role));
-                out.format("<td>%s</td>", (null == v.host) ? "&nbsp" : Utils.html(v.host));
-                out.format("<td>%s</td>", (null == v.group) ? "&nbsp" : Utils.html(v.group));
-                out.format("<td>%s</td>", Utils.html(v.fileId.path));
-                out.format("</tr>%s", EOLN);
+        }
+        endPhase("render", start, event);
+        if (null != statsPath) {
+            writeStats(statsPath, shards);
+        }
+        if (stats && null != cache) {
+            System.err.format("Scan cache: %d hits, %d misses, %.1f%% hit rate%n",
+                    cache.getHits(), cache.getMisses(), cache.getHitRate());
+        }
+        if (stats && null != shards) {
+            System.err.format("Pages: %d written, %d unchanged%n", shards.getWritten(), shards.getUnchanged());
+        }
+        if (port >= 0) {
+            try {
+                new OverviewServer(this, parallelism, effective).start(null == bind ? InetAddress.getLoopbackAddress() : bind, port);
+            } catch (IOException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--serve " + port, ex);
+                return;
             }
         }
-        out.print("</table></section>");
-        out.print(EOLN);
-        out.print("</body></html>");
-        out.print(EOLN);
+        if (watch) {
+            try {
+                new Watcher(this, directories, outPath).run();
+            } catch (IOException | InterruptedException ex) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--watch stopped", ex);
+            } finally {
+                saveCache();
+            }
+        }
+    }
+
+    /**
+     * Replace the output file; readers never see a partial file. A directory
+     * gets the sharded pages.
+     *
+     * @param path Output file or directory.
+     */
+    public void writeOutput(String path) {
+        if (ShardWriter.isShardDir(path)) {
+            writeShards(path);
+            return;
+        }
+        File target = new File(path).getAbsoluteFile();
+        File tmp = new File(target.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            output(fos);
+        } catch (IOException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "-o: " + tmp, ex);
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "-o: " + target, ex);
+        }
+    }
+
+    /**
+     * Write the overview as pages, only the ones that changed.
+     *
+     * @param path Output directory.
+     * @return The writer, for its statistics.
+     */
+    public ShardWriter writeShards(String path) {
+        ShardWriter sw = new ShardWriter(this, new File(path), parallelism, effective);
+        sw.write();
+        return sw;
+    }
+
+    /**
+     * Render the overview in the selected format.
+     *
+     * @param os Receives the output, is flushed but not closed.
+     * @throws IOException From os.
+     */
+    public void output(OutputStream os) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(os, Charset.defaultCharset()), 1 << 16);
+        render(Renderer.create(format, w));
+    }
+
+    /**
+     * Render the model in document order, the sections and roles in parallel.
+     *
+     * @param r Renderer.
+     * @throws IOException From the renderer.
+     */
+    public void render(Renderer r) throws IOException {
+        new RenderEngine(this, parallelism).render(r, effective);
+    }
+
+    /**
+     * Compare two trees or snapshots, see ModelDiff.
+     *
+     * @param before Directory or snapshot.
+     * @param after Directory or snapshot.
+     * @param outPath Report file or null for standard output.
+     * @param useCache Use the scan cache for directories?
+     */
+    private void diff(String before, String after, String outPath, boolean useCache) {
+        Main a = new Main();
+        Main b = new Main();
+        // one cache for both sides, or the side saved last drops what the
+        // other one added; the second save holds both trees
+        ScanCache shared = useCache ? new ScanCache(HOME_SCAN_CACHE) : null;
+        for (Main m : new Main[]{a, b}) {
+            m.parallelism = parallelism;
+            m.cache = shared;
+        }
+        try {
+            ModelDiff.load(a, before);
+            ModelDiff.load(b, after);
+        } catch (IOException | RuntimeException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--diff " + before + " " + after, ex);
+            return;
+        }
+        try (OutputStream os = null == outPath ? null : new FileOutputStream(outPath)) {
+            Writer w = new BufferedWriter(new OutputStreamWriter(null == os ? System.out : os, StandardCharsets.UTF_8), 1 << 16);
+            new ModelDiff(a, b).write(DiffWriter.create(format, w), before, after);
+        } catch (IOException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--diff", ex);
+        }
+    }
+
+    /**
+     * The --stats report.
+     *
+     * @param path File to write.
+     * @param shards Result of writing pages, or null.
+     */
+    private void writeStats(String path, ShardWriter shards) {
+        stats.model(this);
+        stats.count("parallelism", parallelism);
+        if (null != cache) {
+            stats.count("cache.hits", cache.getHits());
+            stats.count("cache.misses", cache.getMisses());
+        }
+        if (null != shards) {
+            stats.count("pages.written", shards.getWritten());
+            stats.count("pages.unchanged", shards.getUnchanged());
+        }
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.UTF_8))) {
+            stats.write(w);
+        } catch (IOException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "--stats: " + path, ex);
+        }
+    }
+
+    private void saveCache() {
+        if (null != cache) {
+            long start = System.nanoTime();
+            Object event = FlightEvents.beginPhase();
+            cache.save();
+            endPhase("cache.save", start, event);
+        }
     }
 
     private void scanStandard() {
+        long start = System.nanoTime();
+        Object event = FlightEvents.beginPhase();
         if (ETC_INVENTORY.exists()) {
-            inventoryParser(new FileId(ETC_INVENTORY.getAbsolutePath()));
+            remember(scanFile(new ScanResult(ScanResult.Kind.INVENTORY, ETC_INVENTORY)));
         }
         if (ETC_ANSIBLE_CFG.exists()) {
-            FileId fileId = new FileId(ETC_ANSIBLE_CFG.getAbsolutePath());
-            try {
-                Ini ini = new Ini(ETC_ANSIBLE_CFG);
-                for (Map.Entry<String, Profile.Section> e1 : ini.entrySet()) {
-                    for (Map.Entry<String, String> e2 : e1.getValue().entrySet()) {
-                        String key = e2.getKey();
-                        String val = e2.getValue();
-                        Variable.putVar(key, null, null, null, fileId, val);
-                    }
-                }
-            } catch (IOException ex) {
-                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            remember(scanFile(new ScanResult(ScanResult.Kind.CONFIG, ETC_ANSIBLE_CFG)));
         }
         if (HOME_ANSIBLE_CFG.exists()) {
-            FileId fileId = new FileId(HOME_ANSIBLE_CFG.getAbsolutePath());
-            try {
-                Ini ini = new Ini(HOME_ANSIBLE_CFG);
-                for (Map.Entry<String, Profile.Section> e1 : ini.entrySet()) {
-                    for (Map.Entry<String, String> e2 : e1.getValue().entrySet()) {
-                        String key = e2.getKey();
-                        String val = e2.getValue();
-                        Variable.putVar(key, null, null, null, fileId, val);
+            remember(scanFile(new ScanResult(ScanResult.Kind.CONFIG, HOME_ANSIBLE_CFG)));
+        }
+        endPhase("scan.standard", start, event);
+    }
+
+    private void scan(List<String> directories) {
+        setDirectories(directories);
+        long start = System.nanoTime();
+        Object event = FlightEvents.beginPhase();
+        List<ScanResult> scanned = new ScanEngine(this, parallelism).scan(directories);
+        endPhase("scan.parse", start, event);
+        start = System.nanoTime();
+        event = FlightEvents.beginPhase();
+        for (ScanResult res : scanned) {
+            remember(res);
+        }
+        endPhase("scan.apply", start, event);
+    }
+
+    void remember(ScanResult res) {
+        res.apply(this);
+        results.add(res);
+    }
+
+    /**
+     * Forget the model.
+     */
+    void reset() {
+        session.clear();
+        playbooks.clear();
+        roleFiles.clear();
+        usages.clear();
+        graph.clear();
+        results.clear();
+    }
+
+    /**
+     * Write what was scanned to a Snapshot.
+     *
+     * @param file Snapshot file.
+     * @throws IOException From writing.
+     */
+    public void writeSnapshot(File file) throws IOException {
+        long start = System.nanoTime();
+        Object event = FlightEvents.beginPhase();
+        Snapshot.write(file, directories, results);
+        endPhase("snapshot.write", start, event);
+    }
+
+    /**
+     * Replace the model by a Snapshot; the scanned tree is not needed.
+     *
+     * @param file Snapshot file.
+     * @throws IOException If it cannot be read.
+     */
+    public void loadSnapshot(File file) throws IOException {
+        long start = System.nanoTime();
+        Object event = FlightEvents.beginPhase();
+        Snapshot.load(this, file);
+        version.incrementAndGet();
+        endPhase("snapshot.load", start, event);
+    }
+
+    /**
+     * Forget everything and scan again; unchanged files still come from the
+     * cache.
+     *
+     * @param directories Ansible directories, in command line order.
+     */
+    public void rescan(List<String> directories) {
+        reset();
+        scanStandard();
+        scan(directories);
+        saveCache();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Parse changed or deleted files again and update only what they
+     * contributed to the model. The order of variables stays as a full scan
+     * would produce it, because a re-parsed file keeps its FileId and
+     * variables are kept in FileId order.
+     *
+     * @param changed Absolute paths of modified or deleted files.
+     * @return false if a path was never scanned; only a rescan can place it.
+     */
+    public boolean update(Set<String> changed) {
+        long start = System.nanoTime();
+        Object event = FlightEvents.beginPhase();
+        try {
+            return updateFiles(changed);
+        } finally {
+            endPhase("update", start, event);
+        }
+    }
+
+    private boolean updateFiles(Set<String> changed) {
+        for (String path : changed) {
+            boolean known = false;
+            for (int i = 0; i < results.size(); i++) {
+                ScanResult old = results.get(i);
+                if (old.file.getAbsolutePath().equals(path)) {
+                    known = true;
+                    ScanResult res = new ScanResult(old.kind, old.file, old.role, old.host, old.group, old.part);
+                    if (old.file.exists()) {
+                        scanFile(res);
+                        res.fileId = old.fileId;
+                        res.fileId.hash = res.hash;
+                        results.set(i, res);
+                    } else {
+                        session.files.remove(old.fileId.id);
+                        results.remove(i--);
                     }
+                    replace(old, res);
                 }
-            } catch (IOException ex) {
-                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+            }
+            if (!known) {
+                return false;
             }
         }
+        version.incrementAndGet();
+        return true;
     }
 
-    private void scan(List<String> directories) {
-        for (String path : directories) {
-            File dir = new File(path);
-            if (!dir.exists() || !dir.isDirectory()) {
-                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "{0} is not valid.", path);
-                return;
+    private void replace(ScanResult old, ScanResult res) {
+        Set<String> names = new TreeSet<>();
+        for (ScanResult.Def d : old.defs) {
+            names.add(d.name);
+        }
+        for (String name : names) {
+            session.vars.removeFile(name, old.fileId);
+        }
+        if (null != res.fileId && !res.roleVars()) {
+            for (ScanResult.Def d : res.defs) {
+                session.vars.insert(d.name, new Variable(d.role, d.host, d.group, res.fileId, d.value));
             }
-            File[] files = dir.listFiles();
-            if (null != files) {
-                for (File f : files) {
-                    if (f.getName().equals("hosts")) {
-                        FileId fileId = new FileId(f.getAbsolutePath());
-                        inventoryParser(fileId);
-                    } else if (f.getName().equals("ansible.cfg")) {
-                        FileId fileId = new FileId(f.getAbsolutePath());
-                        try {
-                            Ini ini = new Ini(f);
-                            for (Map.Entry<String, Profile.Section> e1 : ini.entrySet()) {
-                                for (Map.Entry<String, String> e2 : e1.getValue().entrySet()) {
-                                    String key = e2.getKey();
-                                    String val = e2.getValue();
-                                    Variable.putVar(key, null, null, null, fileId, val);
-                                }
-                            }
-                        } catch (IOException ex) {
-                            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
-                        }
-                    } else if (f.getName().endsWith(".yml")) {
-                        FileId fileId = new FileId(f.getAbsolutePath());
-                        try {
-                            playbooks.put(f.getName(), Files.readString(f.toPath()));
-                        } catch (IOException ex) {
-                            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
-                        }
-                    } else if (f.getName().equals("host_vars")) {
-                        File[] sub = f.listFiles();
-                        if (null != sub) {
-                            for (File f2 : sub) {
-                                String host = f2.getName().replace(".yml", "");
-                                importVars(null, host, null, f2);
-                            }
-                        }
-                    } else if (f.getName().equals("group_vars")) {
-                        File[] sub = f.listFiles();
-                        if (null != sub) {
-                            for (File f2 : sub) {
-                                String grp = f2.getName().replace(".yml", "");
-                                importVars(null, null, grp, f2);
-                            }
-                        }
-                    } else if (f.getName().equals("roles")) {
-                        roles.addAll(Arrays.asList(f.listFiles()));
-                    } else if (f.getName().startsWith(".")) {
-                        // ignore
-                    } else {
-                        System.err.println("? " + f);
+        }
+        usages.remove(old.fileId);
+        graph.remove(old.fileId);
+        if (null != res.fileId && !res.failed) {
+            usages.add(res.fileId, res.label(), res.kind == ScanResult.Kind.PLAYBOOK || res.kind == ScanResult.Kind.ROLE_FILE, res.uses,
+                    res.roleVars() ? res.defs : Collections.<ScanResult.Def>emptyList());
+            graph.add(res.fileId, res);
+        }
+        Set<String> groups = new TreeSet<>();
+        for (String[] gh : old.hosts) {
+            groups.add(gh[0]);
+        }
+        for (String group : groups) {
+            session.groups.remove(group);
+        }
+        for (ScanResult r : results) {
+            for (String[] gh : r.hosts) {
+                if (groups.contains(gh[0])) {
+                    session.addHost(gh[0], gh[1]);
+                }
+            }
+        }
+        for (String[] gh : res.hosts) {
+            session.addHost(gh[0], gh[1]);
+        }
+        Set<String> parents = new TreeSet<>();
+        for (String[] pc : old.children) {
+            parents.add(pc[0]);
+        }
+        for (String parent : parents) {
+            session.children.remove(parent);
+        }
+        for (ScanResult r : results) {
+            for (String[] pc : r.children) {
+                if (parents.contains(pc[0])) {
+                    session.addChild(pc[0], pc[1]);
+                }
+            }
+        }
+        for (String[] pc : res.children) {
+            session.addChild(pc[0], pc[1]);
+        }
+        // same name in several trees: the last one scanned wins
+        if (old.kind == ScanResult.Kind.PLAYBOOK || old.kind == ScanResult.Kind.ROLE_FILE) {
+            String name = old.file.getName();
+            FileId fileId = null;
+            for (ScanResult r : results) {
+                if (r.kind == old.kind && !r.failed && r.file.getName().equals(name)
+                        && (r.kind == ScanResult.Kind.PLAYBOOK
+                        || (r.role.equals(old.role) && r.part.equals(old.part)))) {
+                    fileId = r.fileId;
+                }
+            }
+            if (old.kind == ScanResult.Kind.PLAYBOOK) {
+                if (null == fileId) {
+                    playbooks.remove(name);
+                } else {
+                    playbooks.put(name, fileId);
+                }
+            } else if (null == fileId) {
+                TreeMap<String, TreeMap<String, FileId>> roleMap = roleFiles.get(old.role);
+                if (null != roleMap && null != roleMap.get(old.part)) {
+                    roleMap.get(old.part).remove(name);
+                    if (roleMap.get(old.part).isEmpty()) {
+                        roleMap.remove(old.part);
+                    }
+                    if (roleMap.isEmpty()) {
+                        roleFiles.remove(old.role);
                     }
                 }
+            } else {
+                putRoleFile(old.role, old.part, name, fileId);
             }
-            for (File f : roles) {
-                if (f.isDirectory()) {
-                    String role = f.getName();
-                    for (String part : ROLE_PARTS) {
-                        File partDir = new File(f, part);
-                        if (partDir.exists()) {
-                            switch (part) {
-                                case "vars":
-                                case "defaults":
-                                    break;
-                                default: {
-                                    readFiles(role, partDir);
-                                }
-                                break;
-                            }
+        }
+        session.invalidate();
+    }
+
+    /**
+     * Parses one file, or takes its result from the cache if unchanged.
+     *
+     * @param res File and context to parse, receives the outcome.
+     * @return res, for chaining.
+     */
+    public ScanResult scanFile(ScanResult res) {
+        long start = System.nanoTime();
+        Object event = FlightEvents.beginParse();
+        if (null == cache || !(res.kind.parsed || res.kind.hashed || res.kind.tokenized)) {
+            parse(res);
+        } else {
+            cache.parse(this, res);
+        }
+        FlightEvents.endParse(event, res);
+        if (null != stats) {
+            stats.file(res, start);
+        }
+        return res;
+    }
+
+    /**
+     * Parses one file into its result. Does not touch the model, so it is
+     * safe to call from several threads at once.
+     *
+     * @param res File and context to parse, receives the outcome.
+     * @return res, for chaining.
+     */
+    public ScanResult parse(ScanResult res) {
+        if (!res.kind.parsed) {
+            res.parser = !tokenized(res) ? "none" : referencing(res) ? "jinja+yaml" : "jinja";
+            boolean hash = res.kind.hashed && null == res.hash;
+            if (hash || tokenized(res)) {
+                try {
+                    if (null == res.data) {
+                        res.data = Utils.read(res.file);
+                    }
+                    if (hash) {
+                        res.hash = Utils.sha256(res.data);
+                    }
+                    CharBuffer text = tokenized(res) ? Utils.text(res.data) : null;
+                    if (null != text) {
+                        JinjaScanner.scan(text, JinjaScanner.isYaml(res.file.getName()), res.uses);
+                        if (referencing(res)) {
+                            YamlExtractor.references(res, text.toString());
                         }
                     }
+                } catch (IOException ex) {
+                    Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+                } catch (YAMLException ex) {
+                    // still shown, just without references
+                    Logger.getLogger(Main.class.getName()).log(Level.WARNING, "No references from invalid YAML file: " + res.file, ex);
                 }
             }
+            res.data = null;
+            return res;
+        }
+        try {
+            if (null == res.data) {
+                res.data = Utils.read(res.file);
+            }
+            String text = Utils.decode(res.data, true);
+            if (tokenized(res)) {
+                JinjaScanner.scan(text, true, res.uses);
+            }
+            switch (res.kind) {
+                case INVENTORY:
+                    inventoryParser(res, text);
+                    break;
+                case CONFIG:
+                    res.parser = "ini4j";
+                    importConfig(res, text);
+                    break;
+                case VARS:
+                    res.parser = "yaml";
+                    importVars(res, text);
+                    break;
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+            res.failed = true;
         }
+        res.data = null;
+        return res;
     }
 
     /**
-     * Should handle common Ansible inventory files.
-     *
-     * @param fileId File to parse.
+     * Should the file be searched for variable uses? Not the files a role
+     * copies as is, nor its modules.
      */
-    public void inventoryParser(FileId fileId) {
-        source = fileId;
-        char firstCharacter = Utils.firstChar(fileId.getFile());
+    private static boolean tokenized(ScanResult res) {
+        return res.kind.tokenized && !"files".equals(res.part) && !"library".equals(res.part);
+    }
 
-        switch (firstCharacter) {
-            case '[':
-                parseIniHybrid(fileId);
+    /**
+     * Can the file reference playbooks, roles or task files? Playbooks and
+     * the task lists and meta data of roles.
+     */
+    private static boolean referencing(ScanResult res) {
+        return JinjaScanner.isYaml(res.file.getName()) && (res.kind == ScanResult.Kind.PLAYBOOK
+                || "tasks".equals(res.part) || "handlers".equals(res.part) || "meta".equals(res.part));
+    }
+
+    /**
+     * Should handle common Ansible inventory files: INI, YAML, JSON (as
+     * written by ansible-inventory --list) and TOML. Inventory scripts are
+     * recognized but not run.
+     *
+     * @param res File to parse, receives hosts and variables.
+     * @param text Contents of the file.
+     */
+    public void inventoryParser(ScanResult res, String text) {
+        InventoryFormat format = InventoryFormat.sniff(text);
+        res.parser = format.name().toLowerCase(Locale.ROOT);
+        switch (format) {
+            case INI:
+                IniInventoryParser.parse(res, text);
+                break;
+            case JSON:
+                // JSON is YAML, except that YAML does not allow tabs as indentation
+                parseYaml(res, text.replace('\t', ' '));
+                break;
+            case TOML:
+                try {
+                    parseInventoryMap(res, TomlReader.parse(text), null);
+                } catch (IOException ex) {
+                    Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "Failed to load TOML file: " + res.file, ex);
+                    res.failed = true;
+                }
+                break;
+            case SCRIPT:
+                Logger.getLogger(Main.class.getName()).log(Level.WARNING, "Not running inventory script {0}", res.file);
                 break;
             default:
-                parseYaml(fileId);
+                parseYaml(res, text);
                 break;
         }
     }
 
-    public String pre(String text) {
-        StringBuilder sb = new StringBuilder(EOLN).append("<pre>").append(EOLN);
+    public static String pre(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 32);
+        try {
+            pre(text, sb);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // StringBuilder does not throw
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Text as HTML in a pre block, with {{ variables }} in bold. An unclosed
+     * "{{" is copied, but the text before it is lost.
+     *
+     * @param text Text.
+     * @param out Receives the HTML.
+     * @throws IOException From out.
+     */
+    public static void pre(CharSequence text, Appendable out) throws IOException {
+        out.append(EOLN).append("<pre>").append(EOLN);
+        int len = text.length();
         int last = 0;
-        while (last < text.length()) {
-            int open = text.indexOf("{{", last);
+        while (last < len) {
+            int open = indexOfPair(text, '{', last);
             if (open >= 0) {
-                int close = text.indexOf("}}", open);
+                int close = indexOfPair(text, '}', open);
                 if (close > 0) {
-                    String varName = text.substring(open + 2, close).trim();
-                    sb.append(Utils.html(text.substring(last, open)));
-                    sb.append("<b>{{ ").append(varName).append(" }}</b>");
+                    int from = open + 2;
+                    int to = close;
+                    while (from < to && text.charAt(from) <= ' ') {
+                        from++;
+                    }
+                    while (to > from && text.charAt(to - 1) <= ' ') {
+                        to--;
+                    }
+                    Utils.html(text, last, open, out);
+                    out.append("<b>{{ ").append(text, from, to).append(" }}</b>");
                     last = close + 2;
                 } else {
-                    sb.append("{{");
+                    out.append("{{");
                     last = open + 2;
                 }
             } else {
-                sb.append(Utils.html(text.substring(last)));
-                last = text.length();
+                Utils.html(text, last, len, out);
+                last = len;
             }
         }
-        sb.append(EOLN).append("</pre>").append(EOLN);
-        return sb.toString();
+        out.append(EOLN).append("</pre>").append(EOLN);
     }
 
-    private void importVars(String role, String host, String group, File f) {
-        Yaml yaml = new Yaml(new Constructor(Map.class));
-        try (FileInputStream inputStream = new FileInputStream(f)) {
-            Object data = yaml.load(inputStream);
-            FileId fileId = new FileId(f.getAbsolutePath());
-
-            if (data instanceof Map) {
-                @SuppressWarnings("unchecked")
-                Map<String, Object> d2 = (Map<String, Object>) data;
-                for (Map.Entry<String, Object> e : d2.entrySet()) {
-                    Variable.putVar(e.getKey(), role, host, group, fileId, e.getValue().toString());
-                }
+    /**
+     * Where two equal characters (like "{{") start, or -1.
+     */
+    private static int indexOfPair(CharSequence text, char c, int from) {
+        for (int i = from; i < text.length() - 1; i++) {
+            if (text.charAt(i) == c && text.charAt(i + 1) == c) {
+                return i;
             }
-        } catch (IOException ex) {
-            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "Failed to load YAML file: " + f, ex);
         }
+        return -1;
     }
 
-    private void readFiles(String role, File partDir) {
-        File[] sub = partDir.listFiles();
-        if (null == sub) {
-            return;
+    private void importVars(ScanResult res, String text) {
+        try {
+            YamlExtractor.vars(res, text);
+        } catch (YAMLException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "Failed to load YAML file: " + res.file, ex);
+            res.failed = true;
         }
-        for (File f : sub) {
-            try {
-                String text = Files.readString(f.toPath());
-                putRoleFile(role, partDir.getName(), f.getName(), text);
-            } catch (IOException ex) {
-                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+    }
+
+    private void importConfig(ScanResult res, String text) {
+        try {
+            Ini ini = new Ini(new StringReader(text));
+            for (Map.Entry<String, Profile.Section> e1 : ini.entrySet()) {
+                for (Map.Entry<String, String> e2 : e1.getValue().entrySet()) {
+                    String key = e2.getKey();
+                    String val = e2.getValue();
+                    res.putVar(key, null, null, null, val);
+                }
             }
+        } catch (IOException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+            res.failed = true;
         }
     }
 
-    private void putRoleFile(String role, String part, String name, String text) {
-        TreeMap<String, TreeMap<String, String>> roleMap = roleFiles.get(role);
+    void putRoleFile(String role, String part, String name, FileId fileId) {
+        TreeMap<String, TreeMap<String, FileId>> roleMap = roleFiles.get(role);
         if (null == roleMap) {
             roleMap = new TreeMap<>();
             roleFiles.put(role, roleMap);
         }
-        TreeMap<String, String> partMap = roleMap.get(part);
+        TreeMap<String, FileId> partMap = roleMap.get(part);
         if (null == partMap) {
             partMap = new TreeMap<>();
             roleMap.put(part, partMap);
         }
-        partMap.put(name, text);
-    }
-
-    private void parseIniHybrid(FileId fileId) {
-        String currentGroup = null;
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileId.getFile()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                if (line.startsWith("[") && line.endsWith("]")) {
-                    currentGroup = line.substring(1, line.length() - 1);
-                } else if (!line.isEmpty() && currentGroup != null) {
-                    StringTokenizer toker = new StringTokenizer(line);
-                    String host = toker.nextToken();
-                    addHost(currentGroup, host);
-                    while (toker.hasMoreTokens()) {
-                        String var = toker.nextToken();
-                        // abusing Ini to parse one var in a fake section
-                        Ini ini = new Ini(new StringReader("[s]\n" + var));
-                        for (Map.Entry<String, Profile.Section> e1 : ini.entrySet()) {
-                            for (Map.Entry<String, String> e2 : e1.getValue().entrySet()) {
-                                String key = e2.getKey();
-                                String val = e2.getValue();
-                                Variable.putVar(key, null, host, currentGroup, fileId, val);
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (IOException ex) {
-            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
-        }
+        partMap.put(name, fileId);
     }
 
-    private void parseYaml(FileId fileId) {
-        Yaml yaml = new Yaml(new Constructor(Map.class));
-        try (FileInputStream inputStream = new FileInputStream(fileId.getFile())) {
-            Object data = yaml.load(inputStream);
-            if (data instanceof Map) {
-                @SuppressWarnings(value = "unchecked")
-                Map<String, Object> d2 = (Map<String, Object>) data;
-                parseYamlObject(d2, null);
-            }
-        } catch (IOException ex) {
-            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "Failed to load YAML file: " + fileId.path, ex);
+    private void parseYaml(ScanResult res, String text) {
+        try {
+            YamlExtractor.inventory(res, text);
+        } catch (YAMLException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, "Failed to load YAML file: " + res.file, ex);
+            res.failed = true;
         }
     }
 
+    /**
+     * Inventory already loaded as nested maps, the same structure as
+     * YamlExtractor.inventory reads.
+     */
     @SuppressWarnings(value = {"unchecked"})
-    private void parseYamlObject(Map<String, Object> map, String parentGroup) {
+    private void parseInventoryMap(ScanResult res, Map<String, Object> map, String parentGroup) {
         if (map.size() == 1 && null != map.get("all")) {
-            parseYamlObject((Map<String, Object>) map.get("all"), "all");
+            parseInventoryMap(res, (Map<String, Object>) map.get("all"), "all");
         } else {
             for (Map.Entry<String, Object> entry : map.entrySet()) {
                 String key = entry.getKey();
@@ -450,20 +1068,61 @@ public class Main {
                     // This part of the map contains host definitions
                     Map<String, Object> hosts = (Map<String, Object>) value;
                     for (String host : hosts.keySet()) {
-                        @SuppressWarnings(value = "unchecked")
-                        Map<String, Object> hostDetails = (Map<String, Object>) hosts.get(host);
-                        for (Map.Entry<String, Object> hostDetail : hostDetails.entrySet()) {
-                            Variable.putVar(hostDetail.getKey(), null, host, parentGroup, source, hostDetail.getValue().toString());
+                        res.addHost(parentGroup, host);
+                        if (hosts.get(host) instanceof Map) {
+                            Map<String, Object> hostDetails = (Map<String, Object>) hosts.get(host);
+                            for (Map.Entry<String, Object> hostDetail : hostDetails.entrySet()) {
+                                res.putVar(hostDetail.getKey(), null, host, parentGroup, hostDetail.getValue().toString());
+                            }
                         }
                     }
+                } else if (key.equals("hosts") && value instanceof List) {
+                    // JSON style: just the names
+                    for (Object host : (List<Object>) value) {
+                        res.addHost(parentGroup, String.valueOf(host));
+                    }
+                } else if (key.equals("children") && value instanceof List) {
+                    // JSON style: just the names, the groups are defined at the top level
+                    for (Object groupName : (List<Object>) value) {
+                        res.addChild(parentGroup, String.valueOf(groupName));
+                    }
                 } else if (key.equals("children") && value instanceof Map) {
                     // This part of the map defines child groups
                     Map<String, Object> children = (Map<String, Object>) value;
                     for (String groupName : children.keySet()) {
-                        parseYamlObject((Map<String, Object>) children.get(groupName), groupName);
+                        if (null != parentGroup) {
+                            res.addChild(parentGroup, groupName);
+                        }
+                        if (children.get(groupName) instanceof Map) {
+                            parseInventoryMap(res, (Map<String, Object>) children.get(groupName), groupName);
+                        }
                     }
                 } else if (key.equals("vars") && parentGroup != null && value instanceof Map) {
-                    // Handle group variables (not implemented here, depends on needs)
+                    // Group variables
+                    Map<String, Object> vars = (Map<String, Object>) value;
+                    for (Map.Entry<String, Object> var : vars.entrySet()) {
+                        res.putVar(var.getKey(), null, null, parentGroup, String.valueOf(var.getValue()));
+                    }
+                } else if (key.equals("_meta") && null == parentGroup && value instanceof Map) {
+                    // JSON style: all host variables in one place
+                    Object hostVars = ((Map<String, Object>) value).get("hostvars");
+                    if (hostVars instanceof Map) {
+                        for (Map.Entry<String, Object> host : ((Map<String, Object>) hostVars).entrySet()) {
+                            if (host.getValue() instanceof Map) {
+                                for (Map.Entry<String, Object> var : ((Map<String, Object>) host.getValue()).entrySet()) {
+                                    res.putVar(var.getKey(), null, host.getKey(), null, String.valueOf(var.getValue()));
+                                }
+                            }
+                        }
+                    }
+                } else if (null == parentGroup && value instanceof List) {
+                    // old style script output: group with a list of hosts
+                    for (Object host : (List<Object>) value) {
+                        res.addHost(key, String.valueOf(host));
+                    }
+                } else if (null == parentGroup && value instanceof Map) {
+                    // top level group without "all:"
+                    parseInventoryMap(res, (Map<String, Object>) value, key);
                 }
             }
         }
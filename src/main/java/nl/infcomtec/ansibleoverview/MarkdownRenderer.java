@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GitHub flavored Markdown: headings for playbooks and role files with the
+ * contents in fenced code blocks, tables for the variables.
+ *
+ * @author walter
+ */
+public class MarkdownRenderer extends Renderer {
+
+    private static final Template PLAYBOOK = Template.compile("### {0:e}\n\n");
+    private static final Template ROLE = Template.compile("### {0:e}\n\n");
+    private static final Template PART = Template.compile("#### {0:e}\n\n");
+    private static final Template ROLE_FILE = Template.compile("**{0:e}**\n\n");
+    private static final Template VAR_ROW = Template.compile("| {0:e} | {1:e} | {2:e} | {3:e} | {4:e} | {5:e} |\n");
+    private static final Template VAR_ROW_USES = Template.compile("| {0:e} | {1:e} | {2:e} | {3:e} | {4:e} | {5:e} | ");
+    private static final Template EFFECTIVE_ROW = Template.compile("| {0:e} | {1:e} | {2:e} | {3} | {4:e} |\n");
+
+    public MarkdownRenderer(Writer out) {
+        super(out);
+    }
+
+    @Override
+    protected Renderer newInstance(Writer out) {
+        return new MarkdownRenderer(out);
+    }
+
+    /**
+     * Escapes what would break a table cell or be taken as markup.
+     */
+    @Override
+    public void escape(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                case '|':
+                case '*':
+                case '_':
+                case '`':
+                case '[':
+                case ']':
+                    out.write('\\');
+                    out.write(c);
+                    break;
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '\n':
+                    out.write("<br>");
+                    break;
+                case '\r':
+                    break;
+                default:
+                    out.write(c);
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void begin(boolean effective) throws IOException {
+        super.begin(effective);
+        out.write("# Ansible overview\n\n");
+    }
+
+    @Override
+    public void beginPlaybooks() throws IOException {
+        out.write("## Playbooks\n\n");
+    }
+
+    @Override
+    public void playbook(String name, FileId file) throws IOException {
+        PLAYBOOK.write(this, name);
+        contents(file);
+    }
+
+    @Override
+    public void endPlaybooks() throws IOException {
+    }
+
+    @Override
+    public void beginRoles() throws IOException {
+        out.write("## Roles\n\n");
+    }
+
+    @Override
+    public void beginRole(String role) throws IOException {
+        ROLE.write(this, role);
+    }
+
+    @Override
+    public void roleFile(String role, String part, String name, FileId file) throws IOException {
+        if (!part.isEmpty()) {
+            PART.write(this, part);
+        }
+        ROLE_FILE.write(this, name);
+        contents(file);
+    }
+
+    @Override
+    public void endRole() throws IOException {
+    }
+
+    @Override
+    public void duplicates() throws IOException {
+        out.write("### Duplicate files\n\n");
+        out.write("| Files | Size | Copies |\n");
+        out.write("|---|---|---|\n");
+        for (ContentPool.Cluster c : pool.getClusters()) {
+            out.write("| ");
+            boolean first = true;
+            for (FileId f : c.files) {
+                if (!first) {
+                    out.write("<br>");
+                }
+                first = false;
+                escape(pool.label(f));
+            }
+            out.write(" | " + c.getOriginal().length() + " | " + (c.files.size() - 1) + " |\n");
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void endRoles() throws IOException {
+    }
+
+    @Override
+    public void beginVariables() throws IOException {
+        out.write("## Variables\n\n");
+        if (null == usages) {
+            out.write("| Name | Value | Role | Host | Group | File |\n");
+            out.write("|---|---|---|---|---|---|\n");
+        } else {
+            out.write("| Name | Value | Role | Host | Group | File | Used in |\n");
+            out.write("|---|---|---|---|---|---|---|\n");
+        }
+    }
+
+    @Override
+    public void variable(String name, Variable v, Collection<UsageIndex.Usage> uses) throws IOException {
+        if (null == usages) {
+            VAR_ROW.write(this, name, v.value, v.role, v.host, v.group, v.fileId.path);
+            return;
+        }
+        VAR_ROW_USES.write(this, name, v.value, v.role, v.host, v.group, v.fileId.path);
+        if (null != uses) {
+            uses(uses);
+        }
+        out.write(" |\n");
+    }
+
+    private void uses(Collection<UsageIndex.Usage> uses) throws IOException {
+        boolean first = true;
+        for (UsageIndex.Usage u : uses) {
+            if (!first) {
+                out.write("<br>");
+            }
+            first = false;
+            escape(u.label);
+            out.write(":" + u.getLines());
+        }
+    }
+
+    @Override
+    public void endVariables() throws IOException {
+        out.write('\n');
+    }
+
+    @Override
+    public void usage(List<String> unused, Map<String, Collection<UsageIndex.Usage>> undefined) throws IOException {
+        out.write("## Variable usage\n\n");
+        if (!unused.isEmpty()) {
+            out.write("### Defined but not used\n\n");
+            for (int i = 0; i < unused.size(); i++) {
+                if (i > 0) {
+                    out.write(", ");
+                }
+                escape(unused.get(i));
+            }
+            out.write("\n\n");
+        }
+        if (!undefined.isEmpty()) {
+            out.write("### Used but not defined\n\n");
+            out.write("| Name | Used in |\n");
+            out.write("|---|---|\n");
+            for (Map.Entry<String, Collection<UsageIndex.Usage>> e : undefined.entrySet()) {
+                out.write("| ");
+                escape(e.getKey());
+                out.write(" | ");
+                uses(e.getValue());
+                out.write(" |\n");
+            }
+            out.write('\n');
+        }
+    }
+
+    @Override
+    public void beginDependencies() throws IOException {
+        out.write("## Dependencies\n\n");
+        out.write("| Name | Uses | Used by | All dependencies |\n");
+        out.write("|---|---|---|---|\n");
+    }
+
+    @Override
+    public void dependency(DependencyGraph.Node node, boolean present, Collection<DependencyGraph.Node> uses,
+            Collection<DependencyGraph.Node> usedBy, Collection<DependencyGraph.Node> all) throws IOException {
+        out.write("| ");
+        escape(node.toString());
+        if (!present) {
+            out.write(" (missing)");
+        }
+        out.write(" | ");
+        nodes(uses, ", ");
+        out.write(" | ");
+        nodes(usedBy, ", ");
+        out.write(" | ");
+        nodes(all, ", ");
+        out.write(" |\n");
+    }
+
+    @Override
+    public void endDependencies(List<List<DependencyGraph.Node>> cycles) throws IOException {
+        out.write('\n');
+        if (!cycles.isEmpty()) {
+            out.write("### Cycles\n\n");
+            for (List<DependencyGraph.Node> cycle : cycles) {
+                out.write("- ");
+                nodes(cycle, " -> ");
+                out.write('\n');
+            }
+            out.write('\n');
+        }
+    }
+
+    @Override
+    public void beginEffective() throws IOException {
+        out.write("## Effective values\n\n");
+        out.write("| Host | Name | Value | Level | File |\n");
+        out.write("|---|---|---|---|---|\n");
+    }
+
+    @Override
+    public void effective(String host, String name, Variable v) throws IOException {
+        EFFECTIVE_ROW.write(this, host, name, v.value, v.level.toString(), v.fileId.path);
+    }
+
+    @Override
+    public void endEffective() throws IOException {
+        out.write('\n');
+    }
+
+    /**
+     * A fenced code block, the fence longer than any run of backticks in the
+     * text.
+     */
+    @Override
+    protected void text(CharSequence text) throws IOException {
+        int longest = 0;
+        int run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            run = text.charAt(i) == '`' ? run + 1 : 0;
+            longest = Math.max(longest, run);
+        }
+        StringBuilder fence = new StringBuilder("```");
+        while (fence.length() <= longest) {
+            fence.append('`');
+        }
+        out.append(fence).append('\n').append(text);
+        if (text.length() > 0 && text.charAt(text.length() - 1) != '\n') {
+            out.write('\n');
+        }
+        out.append(fence).append("\n\n");
+    }
+
+    @Override
+    protected void binary(long size) throws IOException {
+        out.write("_Binary file, " + size + " bytes_\n\n");
+    }
+
+    @Override
+    protected void unreadable() throws IOException {
+        out.write("_Unreadable file_\n\n");
+    }
+
+    @Override
+    protected void duplicate(FileId original) throws IOException {
+        out.write("_Same as ");
+        escape(pool.label(original));
+        out.write("_\n\n");
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The changes between two scanned models: variable definitions, group
+ * membership, child groups, playbooks, role files and the effective value of
+ * every variable on every host.
+ * <p>
+ * Every section is an ordered merge join over structures the model keeps
+ * sorted anyway (variable names, groups, hosts, roles), so nothing is copied
+ * or indexed for the diff; rows go to the DiffWriter as they are found and
+ * only the definitions of one variable name or the effective values of one
+ * host are held at a time. Files are compared by their path relative to the
+ * scanned directory, so two checkouts in different places compare equal.
+ *
+ * @author walter
+ */
+public class ModelDiff {
+
+    private final Main before;
+    private final Main after;
+    private DiffWriter w;
+    private int added, removed, changed;
+
+    /**
+     * @param before The old model.
+     * @param after The new model.
+     */
+    public ModelDiff(Main before, Main after) {
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Load a model to compare.
+     *
+     * @param main An empty model.
+     * @param path A directory to scan or a Snapshot file.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    public static void load(Main main, String path) throws IOException {
+        if (new File(path).isDirectory()) {
+            main.rescan(Arrays.asList(path));
+        } else {
+            main.loadSnapshot(new File(path));
+        }
+    }
+
+    /**
+     * Write the report.
+     *
+     * @param w Receives the sections in order.
+     * @param beforeName Name of the old model, as given.
+     * @param afterName Name of the new model, as given.
+     * @throws IOException From the writer.
+     */
+    public void write(DiffWriter w, String beforeName, String afterName) throws IOException {
+        this.w = w;
+        w.begin(beforeName, afterName);
+        variables();
+        pairs("groups", "Group membership", "Group", "Host", before.session.groups, after.session.groups);
+        pairs("children", "Child groups", "Parent", "Child", before.session.children, after.session.children);
+        playbooks();
+        roleFiles();
+        effective();
+        w.end();
+    }
+
+    /**
+     * Merge two sorted sequences, calling back for the elements that are only
+     * in one of them and for the pairs that are in both.
+     */
+    private abstract static class Join<T> {
+
+        abstract int compare(T a, T b);
+
+        abstract void both(T a, T b) throws IOException;
+
+        abstract void onlyBefore(T a) throws IOException;
+
+        abstract void onlyAfter(T b) throws IOException;
+
+        void run(Iterator<T> ia, Iterator<T> ib) throws IOException {
+            T a = ia.hasNext() ? ia.next() : null;
+            T b = ib.hasNext() ? ib.next() : null;
+            while (null != a || null != b) {
+                int c = null == a ? 1 : null == b ? -1 : compare(a, b);
+                if (c < 0) {
+                    onlyBefore(a);
+                    a = ia.hasNext() ? ia.next() : null;
+                } else if (c > 0) {
+                    onlyAfter(b);
+                    b = ib.hasNext() ? ib.next() : null;
+                } else {
+                    both(a, b);
+                    a = ia.hasNext() ? ia.next() : null;
+                    b = ib.hasNext() ? ib.next() : null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Join on the keys of sorted maps.
+     */
+    private abstract static class KeyJoin<V> extends Join<Map.Entry<String, V>> {
+
+        @Override
+        int compare(Map.Entry<String, V> a, Map.Entry<String, V> b) {
+            return a.getKey().compareTo(b.getKey());
+        }
+    }
+
+    private void begin(String id, String title, String... columns) throws IOException {
+        added = removed = changed = 0;
+        w.beginSection(id, title, columns);
+    }
+
+    private void end() throws IOException {
+        w.endSection(added, removed, changed);
+    }
+
+    private void added(String... cells) throws IOException {
+        added++;
+        w.row('+', cells);
+    }
+
+    private void removed(String... cells) throws IOException {
+        removed++;
+        w.row('-', cells);
+    }
+
+    private void changed(String... cells) throws IOException {
+        changed++;
+        w.row('~', cells);
+    }
+
+    /**
+     * Definitions by name, then by where they apply and the file they are in.
+     */
+    private void variables() throws IOException {
+        begin("variables", "Variables", "Name", "Scope", "File", "Before", "After");
+        new KeyJoin<List<Variable>>() {
+            @Override
+            void both(Map.Entry<String, List<Variable>> a, Map.Entry<String, List<Variable>> b) throws IOException {
+                final String name = a.getKey();
+                new KeyJoin<String>() {
+                    @Override
+                    void both(Map.Entry<String, String> a, Map.Entry<String, String> b) throws IOException {
+                        if (!Objects.equals(a.getValue(), b.getValue())) {
+                            String[] k = a.getKey().split("\n", 2);
+                            changed(name, k[0], k[1], a.getValue(), b.getValue());
+                        }
+                    }
+
+                    @Override
+                    void onlyBefore(Map.Entry<String, String> a) throws IOException {
+                        String[] k = a.getKey().split("\n", 2);
+                        removed(name, k[0], k[1], a.getValue(), null);
+                    }
+
+                    @Override
+                    void onlyAfter(Map.Entry<String, String> b) throws IOException {
+                        String[] k = b.getKey().split("\n", 2);
+                        added(name, k[0], k[1], null, b.getValue());
+                    }
+                }.run(definitions(before, a.getValue()), definitions(after, b.getValue()));
+            }
+
+            @Override
+            void onlyBefore(Map.Entry<String, List<Variable>> a) throws IOException {
+                for (Variable v : a.getValue()) {
+                    removed(a.getKey(), scope(v), relative(before, v.fileId), v.value, null);
+                }
+            }
+
+            @Override
+            void onlyAfter(Map.Entry<String, List<Variable>> b) throws IOException {
+                for (Variable v : b.getValue()) {
+                    added(b.getKey(), scope(v), relative(after, v.fileId), null, v.value);
+                }
+            }
+        }.run(before.session.vars.entrySet().iterator(), after.session.vars.entrySet().iterator());
+        end();
+    }
+
+    /**
+     * The definitions of one name by scope and file; a later one in the same
+     * place wins, as it does in Ansible.
+     */
+    private static Iterator<Map.Entry<String, String>> definitions(Main main, List<Variable> lv) {
+        TreeMap<String, String> map = new TreeMap<>();
+        for (Variable v : lv) {
+            map.put(scope(v) + "\n" + relative(main, v.fileId), v.value);
+        }
+        return map.entrySet().iterator();
+    }
+
+    private static String scope(Variable v) {
+        switch (v.level) {
+            case Role:
+                return "role " + v.role;
+            case Host:
+                return "host " + v.host;
+            case Group:
+                return "group " + v.group;
+            default:
+                return v.level.toString().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * @return The path relative to the scanned directory it is in, else as
+     * is.
+     */
+    private static String relative(Main main, FileId f) {
+        if (null == f) {
+            return null;
+        }
+        for (String dir : main.getDirectories()) {
+            String root = new File(dir).getAbsolutePath();
+            if (f.path.startsWith(root + File.separator)) {
+                return f.path.substring(root.length() + 1);
+            }
+        }
+        return f.path;
+    }
+
+    /**
+     * Members by owner, for group membership and child groups.
+     */
+    private void pairs(String id, String title, String owner, String member,
+            Map<String, Set<String>> a, Map<String, Set<String>> b) throws IOException {
+        begin(id, title, owner, member);
+        new KeyJoin<Set<String>>() {
+            @Override
+            void both(Map.Entry<String, Set<String>> a, final Map.Entry<String, Set<String>> b) throws IOException {
+                final String key = a.getKey();
+                new Join<String>() {
+                    @Override
+                    int compare(String x, String y) {
+                        return x.compareTo(y);
+                    }
+
+                    @Override
+                    void both(String x, String y) {
+                    }
+
+                    @Override
+                    void onlyBefore(String x) throws IOException {
+                        removed(key, x);
+                    }
+
+                    @Override
+                    void onlyAfter(String y) throws IOException {
+                        added(key, y);
+                    }
+                }.run(a.getValue().iterator(), b.getValue().iterator());
+            }
+
+            @Override
+            void onlyBefore(Map.Entry<String, Set<String>> a) throws IOException {
+                for (String x : a.getValue()) {
+                    removed(a.getKey(), x);
+                }
+            }
+
+            @Override
+            void onlyAfter(Map.Entry<String, Set<String>> b) throws IOException {
+                for (String y : b.getValue()) {
+                    added(b.getKey(), y);
+                }
+            }
+        }.run(a.entrySet().iterator(), b.entrySet().iterator());
+        end();
+    }
+
+    private void playbooks() throws IOException {
+        begin("playbooks", "Playbooks", "Playbook");
+        new KeyJoin<FileId>() {
+            @Override
+            void both(Map.Entry<String, FileId> a, Map.Entry<String, FileId> b) throws IOException {
+                if (!same(a.getValue(), b.getValue())) {
+                    changed(a.getKey());
+                }
+            }
+
+            @Override
+            void onlyBefore(Map.Entry<String, FileId> a) throws IOException {
+                removed(a.getKey());
+            }
+
+            @Override
+            void onlyAfter(Map.Entry<String, FileId> b) throws IOException {
+                added(b.getKey());
+            }
+        }.run(before.playbooks.entrySet().iterator(), after.playbooks.entrySet().iterator());
+        end();
+    }
+
+    /**
+     * Role files by role, part and name, compared by contents.
+     */
+    private void roleFiles() throws IOException {
+        begin("roleFiles", "Role files", "Role", "Part", "File");
+        new KeyJoin<TreeMap<String, TreeMap<String, FileId>>>() {
+            @Override
+            void both(Map.Entry<String, TreeMap<String, TreeMap<String, FileId>>> a,
+                    Map.Entry<String, TreeMap<String, TreeMap<String, FileId>>> b) throws IOException {
+                final String role = a.getKey();
+                new KeyJoin<TreeMap<String, FileId>>() {
+                    @Override
+                    void both(Map.Entry<String, TreeMap<String, FileId>> a, Map.Entry<String, TreeMap<String, FileId>> b) throws IOException {
+                        final String part = a.getKey();
+                        new KeyJoin<FileId>() {
+                            @Override
+                            void both(Map.Entry<String, FileId> a, Map.Entry<String, FileId> b) throws IOException {
+                                if (!same(a.getValue(), b.getValue())) {
+                                    changed(role, part, a.getKey());
+                                }
+                            }
+
+                            @Override
+                            void onlyBefore(Map.Entry<String, FileId> a) throws IOException {
+                                removed(role, part, a.getKey());
+                            }
+
+                            @Override
+                            void onlyAfter(Map.Entry<String, FileId> b) throws IOException {
+                                added(role, part, b.getKey());
+                            }
+                        }.run(a.getValue().entrySet().iterator(), b.getValue().entrySet().iterator());
+                    }
+
+                    @Override
+                    void onlyBefore(Map.Entry<String, TreeMap<String, FileId>> a) throws IOException {
+                        for (String name : a.getValue().keySet()) {
+                            removed(role, a.getKey(), name);
+                        }
+                    }
+
+                    @Override
+                    void onlyAfter(Map.Entry<String, TreeMap<String, FileId>> b) throws IOException {
+                        for (String name : b.getValue().keySet()) {
+                            added(role, b.getKey(), name);
+                        }
+                    }
+                }.run(a.getValue().entrySet().iterator(), b.getValue().entrySet().iterator());
+            }
+
+            @Override
+            void onlyBefore(Map.Entry<String, TreeMap<String, TreeMap<String, FileId>>> a) throws IOException {
+                for (Map.Entry<String, TreeMap<String, FileId>> e : a.getValue().entrySet()) {
+                    for (String name : e.getValue().keySet()) {
+                        removed(a.getKey(), e.getKey(), name);
+                    }
+                }
+            }
+
+            @Override
+            void onlyAfter(Map.Entry<String, TreeMap<String, TreeMap<String, FileId>>> b) throws IOException {
+                for (Map.Entry<String, TreeMap<String, FileId>> e : b.getValue().entrySet()) {
+                    for (String name : e.getValue().keySet()) {
+                        added(b.getKey(), e.getKey(), name);
+                    }
+                }
+            }
+        }.run(before.roleFiles.entrySet().iterator(), after.roleFiles.entrySet().iterator());
+        end();
+    }
+
+    /**
+     * Same contents? By hash when both have one, else by reading them.
+     */
+    private static boolean same(FileId a, FileId b) {
+        if (null != a.hash && null != b.hash) {
+            return Arrays.equals(a.hash, b.hash);
+        }
+        try {
+            ByteBuffer x = a.read();
+            ByteBuffer y = b.read();
+            return x.equals(y);
+        } catch (IOException ex) {
+            Logger.getLogger(ModelDiff.class.getName()).log(Level.WARNING, "Cannot compare " + a.path + " and " + b.path, ex);
+            return false;
+        }
+    }
+
+    /**
+     * The winning value of every variable, host by host.
+     */
+    private void effective() throws IOException {
+        begin("effective", "Effective values", "Host", "Name", "Before", "After", "Level", "File");
+        final VariableIndex ia = before.session.getVariableIndex();
+        final VariableIndex ib = after.session.getVariableIndex();
+        new Join<String>() {
+            @Override
+            int compare(String a, String b) {
+                return VariableIndex.hostKey(a).compareTo(VariableIndex.hostKey(b));
+            }
+
+            @Override
+            void both(String a, final String b) throws IOException {
+                new KeyJoin<Variable>() {
+                    @Override
+                    void both(Map.Entry<String, Variable> x, Map.Entry<String, Variable> y) throws IOException {
+                        Variable v = y.getValue();
+                        if (!Objects.equals(x.getValue().value, v.value)) {
+                            changed(b, x.getKey(), x.getValue().value, v.value, v.level.toString(), relative(after, v.fileId));
+                        }
+                    }
+
+                    @Override
+                    void onlyBefore(Map.Entry<String, Variable> x) throws IOException {
+                        Variable v = x.getValue();
+                        removed(b, x.getKey(), v.value, null, v.level.toString(), relative(before, v.fileId));
+                    }
+
+                    @Override
+                    void onlyAfter(Map.Entry<String, Variable> y) throws IOException {
+                        Variable v = y.getValue();
+                        added(b, y.getKey(), null, v.value, v.level.toString(), relative(after, v.fileId));
+                    }
+                }.run(ia.resolveHost(a).entrySet().iterator(), ib.resolveHost(b).entrySet().iterator());
+            }
+
+            @Override
+            void onlyBefore(String a) throws IOException {
+                for (Map.Entry<String, Variable> e : ia.resolveHost(a).entrySet()) {
+                    Variable v = e.getValue();
+                    removed(a, e.getKey(), v.value, null, v.level.toString(), relative(before, v.fileId));
+                }
+            }
+
+            @Override
+            void onlyAfter(String b) throws IOException {
+                for (Map.Entry<String, Variable> e : ib.resolveHost(b).entrySet()) {
+                    Variable v = e.getValue();
+                    added(b, e.getKey(), null, v.value, v.level.toString(), relative(after, v.fileId));
+                }
+            }
+        }.run(ia.getHosts().iterator(), ib.getHosts().iterator());
+        end();
+    }
+}
@@ -0,0 +1,536 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the overview over HTTP from the model in memory. The pages are those
+ * of PageSet, rendered when asked for:
+ * <ul>
+ * <li>/ and /index.html, /playbooks/*, /roles/*, /vars/*, /effective.html</li>
+ * <li>/file/{id}: a playbook or role file as is</li>
+ * <li>/api/vars, /api/vars/{name}: variable definitions as JSON</li>
+ * <li>/api/hosts, /api/hosts/{host}: hosts with their groups, and the
+ * effective values of one host, as JSON</li>
+ * <li>/api/affected/{name}: what depends on a role, playbook or task file, as
+ * JSON</li>
+ * </ul>
+ * Every response has a strong ETag: the page signature (from the model rows
+ * and the file fingerprints), the hash of the file contents (path, size and
+ * time when the scan did not hash it), or for JSON the hash of the body. A matching If-None-Match gets 304. Bodies are gzipped for clients
+ * that accept it and kept in a bounded cache for as long as their ETag holds.
+ * There is no authentication, so by default only the loopback interface is
+ * served.
+ *
+ * @author walter
+ */
+public class OverviewServer {
+
+    /**
+     * Total size of the cached bodies.
+     */
+    private static final long CACHE_BYTES = 64L << 20;
+    /**
+     * Smaller bodies are not worth compressing.
+     */
+    private static final int GZIP_MIN = 256;
+    private static final String HTML = "text/html; charset=UTF-8";
+    private static final String JSON = "application/json; charset=UTF-8";
+    private static final String TEXT = "text/plain; charset=UTF-8";
+
+    /**
+     * A response body with its validator.
+     */
+    private static class Body {
+
+        final String etag;
+        final String type;
+        final byte[] plain;
+        /**
+         * Model version for JSON bodies, -1 for bodies validated by ETag.
+         */
+        final long version;
+        private byte[] gzip;
+
+        Body(String etag, String type, byte[] plain, long version) {
+            this.etag = etag;
+            this.type = type;
+            this.plain = plain;
+            this.version = version;
+        }
+
+        synchronized byte[] gzip() throws IOException {
+            if (null == gzip) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(plain.length / 4 + 64);
+                try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+                    gz.write(plain);
+                }
+                gzip = bos.toByteArray();
+            }
+            return gzip;
+        }
+    }
+
+    private final Main main;
+    private final int parallelism;
+    private final boolean effective;
+    private HttpServer server;
+    private ExecutorService executor;
+    private PageSet pages;
+    private long pagesVersion = -1;
+    /**
+     * Least recently used first.
+     */
+    private final LinkedHashMap<String, Body> bodies = new LinkedHashMap<>(64, 0.75f, true);
+    private long cached;
+
+    /**
+     * @param main Model, already scanned.
+     * @param parallelism Number of request threads.
+     * @param effective Add the effective values page?
+     */
+    public OverviewServer(Main main, int parallelism, boolean effective) {
+        this.main = main;
+        this.parallelism = Math.max(2, parallelism);
+        this.effective = effective;
+    }
+
+    /**
+     * Start serving on the loopback interface only, returns at once.
+     *
+     * @param port TCP port, 0 for any free port.
+     * @throws IOException If the port cannot be used.
+     */
+    public void start(int port) throws IOException {
+        start(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Start serving, returns at once.
+     *
+     * @param address Interface to listen on, the wildcard address for all.
+     * @param port TCP port, 0 for any free port.
+     * @throws IOException If the port cannot be used.
+     */
+    public void start(InetAddress address, int port) throws IOException {
+        if (null == System.getProperty("sun.net.httpserver.nodelay")) {
+            // headers and body are separate writes, Nagle would hold the body
+            // until the client acknowledges the headers (40 ms on keep-alive)
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        executor = Executors.newFixedThreadPool(parallelism);
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange ex) throws IOException {
+                OverviewServer.this.handle(ex);
+            }
+        });
+        server.start();
+        String host;
+        if (address.isAnyLocalAddress()) {
+            host = "*";
+        } else if (address.isLoopbackAddress()) {
+            host = "localhost";
+        } else if (address instanceof Inet6Address) {
+            host = "[" + address.getHostAddress() + "]";
+        } else {
+            host = address.getHostAddress();
+        }
+        Logger.getLogger(OverviewServer.class.getName()).log(Level.INFO, "Serving on http://{0}:{1,number,#}/", new Object[]{host, getPort()});
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            String method = ex.getRequestMethod();
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                ex.getResponseHeaders().set("Allow", "GET, HEAD");
+                error(ex, 405, "Method not allowed");
+                return;
+            }
+            Body body;
+            main.lock.readLock().lock();
+            try {
+                body = body(ex.getRequestURI().getPath());
+            } finally {
+                main.lock.readLock().unlock();
+            }
+            if (null == body) {
+                error(ex, 404, "Not found");
+            } else {
+                reply(ex, body);
+            }
+        } catch (IOException | RuntimeException e) {
+            Logger.getLogger(OverviewServer.class.getName()).log(Level.SEVERE, ex.getRequestURI().toString(), e);
+            error(ex, 500, "Internal error");
+        } finally {
+            ex.close();
+        }
+    }
+
+    /**
+     * Find or make the body for a path; holds the read lock.
+     */
+    private Body body(String path) throws IOException {
+        if (path.equals("/")) {
+            path = "/" + PageSet.INDEX;
+        }
+        if (path.startsWith("/api/")) {
+            return api(path.substring(5));
+        }
+        if (path.startsWith("/file/")) {
+            return file(path.substring(6));
+        }
+        PageSet.Page page = pages().get(path.substring(1));
+        if (null == page) {
+            return null;
+        }
+        String etag = page.signature().substring(0, 32);
+        Body b = cached(page.name, etag, -1);
+        if (null == b) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(8192);
+            Writer w = new BufferedWriter(new OutputStreamWriter(bos, StandardCharsets.UTF_8), 1 << 16);
+            page.write(w);
+            b = cache(page.name, new Body(etag, HTML, bos.toByteArray(), -1));
+        }
+        return b;
+    }
+
+    /**
+     * The pages of the current model.
+     */
+    private synchronized PageSet pages() {
+        if (null == pages || pagesVersion != main.getVersion()) {
+            pagesVersion = main.getVersion();
+            pages = new PageSet(main, parallelism, effective);
+        }
+        return pages;
+    }
+
+    private Body file(String id) throws IOException {
+        FileId f;
+        try {
+            f = pages().getFile(Integer.parseInt(id));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        if (null == f) {
+            return null;
+        }
+        byte[] hash = f.hash;
+        String etag = null == hash ? fingerprint(f.path, f.length(), f.lastModified()) : hex(hash);
+        Body b = cached("/file/" + f.id, etag, -1);
+        if (null == b) {
+            ByteBuffer data = f.read();
+            if (null != hash) {
+                // the file may have changed since it was scanned
+                etag = hex(Utils.sha256(data));
+            }
+            String type = null == Utils.text(data) ? "application/octet-stream" : TEXT;
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            b = cache("/file/" + f.id, new Body(etag, type, bytes, -1));
+        }
+        return b;
+    }
+
+    private Body api(String path) throws IOException {
+        long version = main.getVersion();
+        Body b = cached("/api/" + path, null, version);
+        if (null != b) {
+            return b;
+        }
+        StringBuilder sb = new StringBuilder();
+        if (path.equals("vars")) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<String, List<Variable>> e : main.session.vars.entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                Utils.json(e.getKey(), sb);
+                sb.append(':');
+                definitions(e.getValue(), sb);
+            }
+            sb.append('}');
+        } else if (path.startsWith("vars/")) {
+            List<Variable> lv = main.session.vars.get(path.substring(5));
+            if (null == lv) {
+                return null;
+            }
+            definitions(lv, sb);
+        } else if (path.equals("hosts")) {
+            VariableIndex index = main.session.getVariableIndex();
+            sb.append('{');
+            boolean first = true;
+            for (String host : index.getHosts()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                Utils.json(host, sb);
+                sb.append(':');
+                strings(index.getGroups(host), sb);
+            }
+            sb.append('}');
+        } else if (path.startsWith("hosts/")) {
+            String host = path.substring(6);
+            VariableIndex index = main.session.getVariableIndex();
+            if (!index.getHosts().contains(host)) {
+                return null;
+            }
+            sb.append("{\"host\":");
+            Utils.json(host, sb);
+            sb.append(",\"groups\":");
+            strings(index.getGroups(host), sb);
+            sb.append(",\"vars\":{");
+            boolean first = true;
+            for (Map.Entry<String, Variable> e : index.resolveHost(host).entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                Variable v = e.getValue();
+                Utils.json(e.getKey(), sb);
+                sb.append(":{\"value\":");
+                Utils.json(v.value, sb);
+                sb.append(",\"level\":");
+                Utils.json(v.level.toString(), sb);
+                sb.append(",\"file\":");
+                Utils.json(path(v), sb);
+                sb.append('}');
+            }
+            sb.append("}}");
+        } else if (path.startsWith("affected/")) {
+            DependencyGraph.Node node = main.graph.find(path.substring(9));
+            if (null == node) {
+                return null;
+            }
+            sb.append("{\"node\":");
+            Utils.json(node.toString(), sb);
+            sb.append(",\"affected\":");
+            List<String> names = new ArrayList<>();
+            for (DependencyGraph.Node n : main.graph.affected(node)) {
+                names.add(n.toString());
+            }
+            strings(names, sb);
+            sb.append('}');
+        } else {
+            return null;
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        String etag = tag(bytes);
+        return cache("/api/" + path, new Body(etag, JSON, bytes, version));
+    }
+
+    private static void definitions(List<Variable> lv, StringBuilder sb) throws IOException {
+        sb.append('[');
+        boolean first = true;
+        for (Variable v : lv) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("{\"value\":");
+            Utils.json(v.value, sb);
+            sb.append(",\"role\":");
+            Utils.json(v.role, sb);
+            sb.append(",\"host\":");
+            Utils.json(v.host, sb);
+            sb.append(",\"group\":");
+            Utils.json(v.group, sb);
+            sb.append(",\"file\":");
+            Utils.json(path(v), sb);
+            sb.append('}');
+        }
+        sb.append(']');
+    }
+
+    private static void strings(List<String> list, StringBuilder sb) throws IOException {
+        sb.append('[');
+        for (int i = 0; i < list.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            Utils.json(list.get(i), sb);
+        }
+        sb.append(']');
+    }
+
+    private static String fingerprint(String path, long size, long mtime) {
+        return tag((path + '\0' + size + '\0' + mtime).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The first 128 bits of the SHA-256, in hex.
+     */
+    private static String tag(byte[] data) {
+        return hex(Utils.sha256(ByteBuffer.wrap(data)));
+    }
+
+    /**
+     * @return The first 128 bits of a SHA-256, in hex.
+     */
+    private static String hex(byte[] hash) {
+        return String.format("%064x", new BigInteger(1, hash)).substring(0, 32);
+    }
+
+    private static String path(Variable v) {
+        return null == v.fileId ? null : v.fileId.path;
+    }
+
+    /**
+     * @param etag Required ETag, or null to check the version.
+     * @param version Required model version.
+     * @return The cached body if still valid.
+     */
+    private Body cached(String key, String etag, long version) {
+        synchronized (bodies) {
+            Body b = bodies.get(key);
+            if (null != b && (null == etag ? b.version == version : b.etag.equals(etag))) {
+                return b;
+            }
+            return null;
+        }
+    }
+
+    private Body cache(String key, Body b) {
+        synchronized (bodies) {
+            Body old = bodies.put(key, b);
+            if (null != old) {
+                cached -= old.plain.length;
+            }
+            cached += b.plain.length;
+            Iterator<Body> it = bodies.values().iterator();
+            while (cached > CACHE_BYTES && it.hasNext()) {
+                Body e = it.next();
+                if (e != b) {
+                    cached -= e.plain.length;
+                    it.remove();
+                }
+            }
+        }
+        return b;
+    }
+
+    private void reply(HttpExchange ex, Body body) throws IOException {
+        boolean gz = body.plain.length >= GZIP_MIN && acceptsGzip(ex.getRequestHeaders());
+        String etag = "\"" + body.etag + (gz ? "-gz" : "") + "\"";
+        Headers h = ex.getResponseHeaders();
+        h.set("ETag", etag);
+        h.set("Cache-Control", "no-cache");
+        h.set("Vary", "Accept-Encoding");
+        if (notModified(ex.getRequestHeaders(), etag)) {
+            ex.sendResponseHeaders(304, -1);
+            return;
+        }
+        h.set("Content-Type", body.type);
+        byte[] data = gz ? body.gzip() : body.plain;
+        if (gz) {
+            h.set("Content-Encoding", "gzip");
+        }
+        if (ex.getRequestMethod().equals("HEAD")) {
+            h.set("Content-Length", Integer.toString(data.length));
+            ex.sendResponseHeaders(200, -1);
+            return;
+        }
+        ex.sendResponseHeaders(200, data.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(data);
+        }
+    }
+
+    private static void error(HttpExchange ex, int code, String msg) throws IOException {
+        byte[] data = (msg + "\n").getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", TEXT);
+        ex.sendResponseHeaders(code, data.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(data);
+        }
+    }
+
+    /**
+     * Does Accept-Encoding allow gzip (and not with q=0)?
+     */
+    static boolean acceptsGzip(Headers req) {
+        List<String> values = req.get("Accept-Encoding");
+        if (null == values) {
+            return false;
+        }
+        for (String value : values) {
+            for (String coding : value.split(",")) {
+                String[] parts = coding.trim().split(";");
+                String name = parts[0].trim();
+                if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+                    boolean zero = false;
+                    for (int i = 1; i < parts.length; i++) {
+                        String p = parts[i].trim().replace(" ", "");
+                        zero |= p.matches("q=0(\\.0*)?");
+                    }
+                    return !zero;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Does If-None-Match match the ETag? Weak comparison, as RFC 7232 asks.
+     */
+    static boolean notModified(Headers req, String etag) {
+        List<String> values = req.get("If-None-Match");
+        if (null == values) {
+            return false;
+        }
+        for (String value : values) {
+            for (String tag : value.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The scan model of one analysis: the files, variables, groups and the
+ * resolution indexes built from them. Every Main has its own, so one JVM can
+ * analyse several trees at the same time.
+ * <p>
+ * Ids are handed out without locking and files can be registered from any
+ * thread. Variables, groups and children change on one thread (in scan order,
+ * or under Main.lock); the indexes are built on first use and dropped when
+ * what they are built from changes.
+ *
+ * @author walter
+ */
+public class OverviewSession {
+
+    /**
+     * The first FileId.id.
+     */
+    private static final int FIRST_ID = 37;
+    private final AtomicInteger nextSeq = new AtomicInteger(FIRST_ID);
+    /**
+     * Every FileId by id.
+     */
+    public final Map<Integer, FileId> files = new ConcurrentHashMap<>();
+    public final VariableStore vars = new VariableStore(files);
+    /**
+     * Hosts by group.
+     */
+    public final TreeMap<String, Set<String>> groups = new TreeMap<>();
+    /**
+     * Child groups by parent.
+     */
+    public final TreeMap<String, Set<String>> children = new TreeMap<>();
+    private GroupTree groupTree;
+    private VariableIndex variableIndex;
+
+    /**
+     * @return A new FileId.id.
+     */
+    public int nextId() {
+        return nextSeq.getAndIncrement();
+    }
+
+    public void addHost(String group, String host) {
+        if (null != group && null != host) {
+            Set<String> get = groups.get(group);
+            if (null == get) {
+                get = new TreeSet<>();
+                groups.put(group, get);
+            }
+            if (get.add(host)) {
+                invalidate();
+            }
+        }
+    }
+
+    public void addChild(String parent, String child) {
+        if (null != parent && null != child) {
+            Set<String> get = children.get(parent);
+            if (null == get) {
+                get = new TreeSet<>();
+                children.put(parent, get);
+            }
+            if (get.add(child)) {
+                invalidate();
+            }
+        }
+    }
+
+    public void putVar(String name, String role, String host, String group, FileId fileId, String value) {
+        addHost(group, host);
+        vars.add(name, new Variable(role, host, group, fileId, value));
+        invalidate();
+    }
+
+    /**
+     * Resolve a variable for the given scope through the VariableIndex.
+     *
+     * @param name Variable.
+     * @param host Host or null.
+     * @param group Group or null.
+     * @param role Role or null.
+     * @return The winning variable or null if none applies.
+     */
+    public Variable getVar(String name, String host, String group, String role) {
+        return getVariableIndex().resolve(name, host, group, role);
+    }
+
+    /**
+     * @return The tree for the current groups and children.
+     */
+    public synchronized GroupTree getGroupTree() {
+        if (null == groupTree) {
+            groupTree = new GroupTree(groups, children);
+        }
+        return groupTree;
+    }
+
+    /**
+     * @return The index for the current variables and groups.
+     */
+    public synchronized VariableIndex getVariableIndex() {
+        if (null == variableIndex) {
+            variableIndex = new VariableIndex(vars, getGroupTree());
+        }
+        return variableIndex;
+    }
+
+    /**
+     * Must be called whenever the variables, groups or children change.
+     */
+    public synchronized void invalidate() {
+        groupTree = null;
+        variableIndex = null;
+    }
+
+    /**
+     * Forget everything; ids keep counting.
+     */
+    public void clear() {
+        files.clear();
+        vars.clear();
+        groups.clear();
+        children.clear();
+        invalidate();
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The overview as a set of pages: index.html with links to a page per
+ * playbook (playbooks/), per role (roles/), per variable name prefix (vars/)
+ * and effective.html; the index also has the dependencies. Playbook and role
+ * file rows have their FileId as anchor, copies of role files and variable
+ * uses link to the page of the file.
+ * <p>
+ * Each page has a signature of what goes into it: the model rows and, for
+ * file contents, the path, size and modification time. A page with the same
+ * signature renders the same. Built from the model as it is; make a new one
+ * when the model changes.
+ *
+ * @author walter
+ */
+public class PageSet {
+
+    /**
+     * Bump when the pages change for the same input.
+     */
+    private static final int VERSION = 4;
+    private static final String EOLN = Main.EOLN;
+    public static final String INDEX = "index.html";
+    private static final Template LINK = Template.compile("<li><a href=\"{0}\">{1:e}</a></li>" + EOLN);
+    private static final Template ROLE_LINK = Template.compile("<li><a href=\"{0}\">{1:e}</a><ul>" + EOLN);
+    private static final String ROLE_LINK_END = "</ul></li>" + EOLN;
+    private static final Template PREFIX_LINK = Template.compile("<li><a href=\"{0}\">{1:e}</a> ({2})</li>" + EOLN);
+    private static final String LIST_START = "<ul>" + EOLN;
+    private static final String LIST_END = "</ul></section>" + EOLN;
+
+    private final Main main;
+    private final int parallelism;
+    private final boolean effective;
+    /**
+     * Does the index have the usage report and the dependencies?
+     */
+    private final boolean usage;
+    private final boolean dependencies;
+    private final ContentPool pool;
+    /**
+     * Page per playbook, role and prefix.
+     */
+    private final TreeMap<String, String> playbookPages = new TreeMap<>();
+    private final TreeMap<String, String> rolePages = new TreeMap<>();
+    private final TreeMap<String, String> prefixPages = new TreeMap<>();
+    private final TreeMap<String, List<String>> prefixes = new TreeMap<>();
+    /**
+     * Pages by name, the index last.
+     */
+    private final Map<String, Page> pages = new LinkedHashMap<>();
+    /**
+     * Playbooks and role files by id, and their pages.
+     */
+    private final Map<Integer, FileId> files = new HashMap<>();
+    private final Map<Integer, String> filePages = new HashMap<>();
+
+    /**
+     * @param main Provides the model.
+     * @param parallelism Threads for the effective values.
+     * @param effective Add the effective values page?
+     */
+    public PageSet(final Main main, final int parallelism, boolean effective) {
+        this.main = main;
+        this.parallelism = Math.max(1, parallelism);
+        this.effective = effective;
+        this.pool = new ContentPool(main.roleFiles);
+        main.graph.resolve(this.parallelism);
+        this.usage = main.usages.reports(main.session.vars);
+        this.dependencies = !main.graph.isEmpty();
+        Set<String> used = new TreeSet<>();
+        for (final Map.Entry<String, FileId> e : main.playbooks.entrySet()) {
+            final String page = page("playbooks/", e.getKey(), used);
+            playbookPages.put(e.getKey(), page);
+            files.put(e.getValue().id, e.getValue());
+            filePages.put(e.getValue().id, page);
+            add(new Page(page, "../" + INDEX) {
+                @Override
+                void sign(MessageDigest md) {
+                    update(md, e.getKey());
+                    update(md, e.getValue());
+                }
+
+                @Override
+                void render(HtmlRenderer r) throws IOException {
+                    r.beginPlaybooks();
+                    r.playbook(e.getKey(), e.getValue());
+                    r.endPlaybooks();
+                }
+            });
+        }
+        for (final Map.Entry<String, TreeMap<String, TreeMap<String, FileId>>> e : main.roleFiles.entrySet()) {
+            final String page = page("roles/", e.getKey(), used);
+            rolePages.put(e.getKey(), page);
+            for (TreeMap<String, FileId> part : e.getValue().values()) {
+                for (FileId f : part.values()) {
+                    files.put(f.id, f);
+                    filePages.put(f.id, page);
+                }
+            }
+            add(new Page(page, "../" + INDEX) {
+                @Override
+                void sign(MessageDigest md) {
+                    update(md, e.getKey());
+                    for (Map.Entry<String, TreeMap<String, FileId>> e2 : e.getValue().entrySet()) {
+                        for (Map.Entry<String, FileId> e3 : e2.getValue().entrySet()) {
+                            update(md, e2.getKey(), e3.getKey());
+                            FileId original = pool.original(e3.getValue());
+                            if (null == original) {
+                                update(md, e3.getValue());
+                            } else {
+                                update(md, original.getId(), pool.label(original), rolePages.get(pool.role(original)));
+                            }
+                        }
+                    }
+                }
+
+                @Override
+                void render(HtmlRenderer r) throws IOException {
+                    r.beginRoles();
+                    RenderEngine.role(r, e.getKey(), e.getValue());
+                    r.endRoles();
+                }
+            });
+        }
+        for (String name : main.session.vars.keySet()) {
+            String p = prefix(name);
+            List<String> names = prefixes.get(p);
+            if (null == names) {
+                names = new ArrayList<>();
+                prefixes.put(p, names);
+            }
+            names.add(name);
+        }
+        for (final Map.Entry<String, List<String>> e : prefixes.entrySet()) {
+            String page = page("vars/", e.getKey(), used);
+            prefixPages.put(e.getKey(), page);
+            add(new Page(page, "../" + INDEX) {
+                @Override
+                void sign(MessageDigest md) {
+                    for (String name : e.getValue()) {
+                        for (Variable v : main.session.vars.get(name)) {
+                            update(md, name, v.value, v.role, v.host, v.group, v.fileId.path);
+                        }
+                        update(md, main.usages.get(name));
+                    }
+                }
+
+                @Override
+                void render(HtmlRenderer r) throws IOException {
+                    r.beginVariables();
+                    for (String name : e.getValue()) {
+                        RenderEngine.variable(r, name, main.session.vars.get(name));
+                    }
+                    r.endVariables();
+                }
+            });
+        }
+        if (effective) {
+            add(new Page("effective.html", INDEX) {
+                private EffectiveMatrix matrix;
+
+                private synchronized EffectiveMatrix matrix() {
+                    if (null == matrix) {
+                        matrix = new EffectiveMatrix(main.session.getVariableIndex(), parallelism);
+                    }
+                    return matrix;
+                }
+
+                @Override
+                void sign(MessageDigest md) {
+                    EffectiveMatrix matrix = matrix();
+                    String[] hosts = matrix.getHosts();
+                    for (int h = 0; h < hosts.length; h++) {
+                        for (Map.Entry<String, Variable> e : matrix.row(h).entrySet()) {
+                            Variable v = e.getValue();
+                            update(md, hosts[h], e.getKey(), v.value, v.level.toString(), v.fileId.path);
+                        }
+                    }
+                }
+
+                @Override
+                void render(HtmlRenderer r) throws IOException {
+                    RenderEngine.effective(r, matrix());
+                }
+            });
+        }
+        // last, it links to all of the above
+        add(new Page(INDEX, "") {
+            @Override
+            void sign(MessageDigest md) {
+                for (Map.Entry<String, String> e : playbookPages.entrySet()) {
+                    update(md, e.getKey(), e.getValue(), main.playbooks.get(e.getKey()).getId());
+                }
+                for (Map.Entry<String, String> e : rolePages.entrySet()) {
+                    update(md, e.getKey(), e.getValue());
+                    for (Map.Entry<String, TreeMap<String, FileId>> e2 : main.roleFiles.get(e.getKey()).entrySet()) {
+                        for (Map.Entry<String, FileId> e3 : e2.getValue().entrySet()) {
+                            update(md, e2.getKey(), e3.getKey(), e3.getValue().getId());
+                        }
+                    }
+                }
+                for (ContentPool.Cluster c : pool.getClusters()) {
+                    for (FileId f : c.files) {
+                        update(md, f.getId(), pool.label(f));
+                    }
+                    update(md, Long.toString(c.getOriginal().length()));
+                }
+                for (Map.Entry<String, String> e : prefixPages.entrySet()) {
+                    update(md, e.getKey(), e.getValue(), Integer.toString(prefixes.get(e.getKey()).size()));
+                }
+                update(md, main.usages.unused(main.session.vars).toArray(new String[0]));
+                for (Map.Entry<String, Collection<UsageIndex.Usage>> e : main.usages.undefined(main.session.vars).entrySet()) {
+                    update(md, e.getKey());
+                    update(md, e.getValue());
+                }
+                for (DependencyGraph.Node n : main.graph.getNodes()) {
+                    update(md, n.toString(), Boolean.toString(main.graph.isPresent(n)));
+                    updateNodes(md, main.graph.uses(n));
+                    updateNodes(md, main.graph.usedBy(n));
+                    updateNodes(md, main.graph.closure(n));
+                }
+                for (List<DependencyGraph.Node> cycle : main.graph.cycles()) {
+                    updateNodes(md, cycle);
+                }
+            }
+
+            @Override
+            void render(HtmlRenderer r) throws IOException {
+                index(r);
+            }
+        });
+    }
+
+    private void add(Page p) {
+        pages.put(p.name, p);
+    }
+
+    /**
+     * @return All pages, the index last.
+     */
+    public Collection<Page> getPages() {
+        return Collections.unmodifiableCollection(pages.values());
+    }
+
+    /**
+     * @param name Page name, like "roles/web.html".
+     * @return The page or null.
+     */
+    public Page get(String name) {
+        return pages.get(name);
+    }
+
+    /**
+     * @param id FileId.id
+     * @return The playbook or role file, or null.
+     */
+    public FileId getFile(int id) {
+        return files.get(id);
+    }
+
+    /**
+     * The part of a variable name up to the first underscore (not counting a
+     * leading one), role variables usually start with the role name.
+     *
+     * @param name Variable name.
+     * @return The prefix.
+     */
+    public static String prefix(String name) {
+        int i = name.indexOf('_', 1);
+        return i > 0 ? name.substring(0, i) : name;
+    }
+
+    private void index(HtmlRenderer r) throws IOException {
+        r.out.write(r.navbar());
+        r.out.write(Main.PLAYBOOKS);
+        r.out.write(LIST_START);
+        for (Map.Entry<String, String> e : playbookPages.entrySet()) {
+            LINK.write(r, e.getValue() + "#" + main.playbooks.get(e.getKey()).getId(), e.getKey());
+        }
+        r.out.write(LIST_END);
+        r.out.write(r.navbar());
+        r.out.write(Main.ROLES);
+        r.out.write(LIST_START);
+        for (Map.Entry<String, String> e : rolePages.entrySet()) {
+            ROLE_LINK.write(r, e.getValue(), e.getKey());
+            for (Map.Entry<String, TreeMap<String, FileId>> e2 : main.roleFiles.get(e.getKey()).entrySet()) {
+                for (Map.Entry<String, FileId> e3 : e2.getValue().entrySet()) {
+                    LINK.write(r, e.getValue() + "#" + e3.getValue().getId(), e2.getKey() + "/" + e3.getKey());
+                }
+            }
+            r.out.write(ROLE_LINK_END);
+        }
+        r.out.write("</ul>");
+        r.out.write(EOLN);
+        RenderEngine.duplicates(r);
+        r.out.write("</section>");
+        r.out.write(EOLN);
+        r.out.write(r.navbar());
+        r.out.write(Main.VARS);
+        r.out.write(LIST_START);
+        for (Map.Entry<String, String> e : prefixPages.entrySet()) {
+            PREFIX_LINK.write(r, e.getValue(), e.getKey(), Integer.toString(prefixes.get(e.getKey()).size()));
+        }
+        r.out.write(LIST_END);
+        RenderEngine.usage(r, main.session.vars);
+        RenderEngine.dependencies(r);
+        if (effective) {
+            r.out.write(r.navbar());
+            r.out.write(Main.EFFECTIVE);
+            r.out.write(LIST_START);
+            LINK.write(r, "effective.html", "Effective values");
+            r.out.write(LIST_END);
+        }
+    }
+
+    /**
+     * A unique page name in a subdirectory, only using characters that are
+     * safe in a file name and a URL.
+     */
+    private static String page(String subdir, String name, Set<String> used) {
+        StringBuilder sb = new StringBuilder(subdir);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_'
+                    || (c == '.' && i > 0)) {
+                sb.append(c);
+            } else {
+                sb.append('_');
+            }
+        }
+        String base = sb.toString();
+        String ret = base + ".html";
+        for (int n = 2; !used.add(ret.toLowerCase()); n++) {
+            ret = base + "-" + n + ".html";
+        }
+        return ret;
+    }
+
+    private static void update(MessageDigest md, String... parts) {
+        for (String s : parts) {
+            if (null == s) {
+                md.update((byte) 1);
+            } else {
+                md.update(s.getBytes(StandardCharsets.UTF_8));
+            }
+            md.update((byte) 0);
+        }
+    }
+
+    /**
+     * Uses of a variable, with the pages they link to.
+     */
+    private void update(MessageDigest md, Collection<UsageIndex.Usage> uses) {
+        for (UsageIndex.Usage u : uses) {
+            update(md, u.file.getId(), u.label, Boolean.toString(u.row), u.getLines(), filePages.get(u.file.id));
+        }
+    }
+
+    /**
+     * A list of dependency graph nodes.
+     */
+    private static void updateNodes(MessageDigest md, Collection<DependencyGraph.Node> nodes) {
+        md.update((byte) 2);
+        for (DependencyGraph.Node n : nodes) {
+            update(md, n.toString());
+        }
+    }
+
+    /**
+     * A file whose contents end up on a page.
+     */
+    private static void update(MessageDigest md, FileId fileId) {
+        update(md, fileId.getId(), fileId.path, Long.toString(fileId.length()), Long.toString(fileId.lastModified()));
+    }
+
+    /**
+     * One page.
+     */
+    public abstract class Page {
+
+        public final String name;
+        /**
+         * Where the navigation bar points, relative to this page.
+         */
+        final String index;
+
+        Page(String name, String index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        /**
+         * Add everything the page depends on.
+         */
+        abstract void sign(MessageDigest md);
+
+        /**
+         * The page between begin() and end().
+         */
+        abstract void render(HtmlRenderer r) throws IOException;
+
+        /**
+         * @return SHA-256 in hex of everything the page depends on.
+         */
+        public String signature() {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                update(md, Integer.toString(VERSION), Boolean.toString(effective), Boolean.toString(usage), Boolean.toString(dependencies));
+                sign(md);
+                return String.format("%064x", new BigInteger(1, md.digest()));
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex); // every JRE has SHA-256
+            }
+        }
+
+        /**
+         * Render the page.
+         *
+         * @param w Output, flushed but not closed.
+         * @throws IOException From the output.
+         */
+        public void write(Writer w) throws IOException {
+            HtmlRenderer r = new HtmlRenderer(w, index, true);
+            r.setPool(pool);
+            r.setFilePages(filePages);
+            r.setUsages(main.usages);
+            r.setGraph(main.graph);
+            r.setSections(usage, dependencies);
+            r.begin(effective);
+            render(r);
+            r.end();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel renderer. The document is cut into segments (the playbooks, every
+ * role, the variables, the effective values) that are rendered as tasks into
+ * their own buffer; the buffers are copied to the output in document order,
+ * so the result is the same as rendering everything on one thread. Only a
+ * window of segments is in flight at a time, so no more than that many
+ * buffers are held however large the document is. Role files
+ * with the same contents are rendered once, see ContentPool.
+ *
+ * @author walter
+ */
+public class RenderEngine {
+
+    /**
+     * Segments in flight per worker thread.
+     */
+    private static final int WINDOW = 2;
+    private final Main main;
+    private final int parallelism;
+
+    /**
+     * @param main Provides the model.
+     * @param parallelism Number of worker threads.
+     */
+    public RenderEngine(Main main, int parallelism) {
+        this.main = main;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Render the document.
+     *
+     * @param r Renderer, receives the segments in order.
+     * @param effective Add the effective values?
+     * @throws IOException From the renderer.
+     */
+    public void render(Renderer r, boolean effective) throws IOException {
+        r.setPool(new ContentPool(main.roleFiles));
+        r.setUsages(main.usages);
+        r.setGraph(main.graph);
+        long start = System.nanoTime();
+        Object event = FlightEvents.beginPhase();
+        main.graph.resolve(parallelism);
+        main.endPhase("render.resolve", start, event);
+        r.setSections(hasUsage(r, main.session.vars), hasDependencies(r));
+        r.begin(effective);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            ArrayDeque<Segment> pending = segments(r, effective);
+            ArrayDeque<ForkJoinTask<CharArrayWriter>> inFlight = new ArrayDeque<>();
+            int window = WINDOW * parallelism;
+            while (!pending.isEmpty() || !inFlight.isEmpty()) {
+                while (inFlight.size() < window && !pending.isEmpty()) {
+                    inFlight.add(pool.submit(pending.poll()));
+                }
+                // the head is written and dropped before the next one is submitted
+                inFlight.poll().join().writeTo(r.out);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        r.end();
+    }
+
+    /**
+     * The segments in document order, not yet submitted.
+     */
+    private ArrayDeque<Segment> segments(Renderer r, final boolean effective) {
+        ArrayDeque<Segment> slots = new ArrayDeque<>();
+        slots.add(new Segment(r, "playbooks", "playbooks") {
+            @Override
+            void render(Renderer r) throws IOException {
+                r.beginPlaybooks();
+                for (Map.Entry<String, FileId> e1 : main.playbooks.entrySet()) {
+                    r.playbook(e1.getKey(), e1.getValue());
+                }
+                r.endPlaybooks();
+                r.beginRoles();
+            }
+        });
+        for (final Map.Entry<String, TreeMap<String, TreeMap<String, FileId>>> e1 : main.roleFiles.entrySet()) {
+            slots.add(new Segment(r, "roles", "role " + e1.getKey()) {
+                @Override
+                void render(Renderer r) throws IOException {
+                    role(r, e1.getKey(), e1.getValue());
+                }
+            });
+        }
+        slots.add(new Segment(r, "variables", "variables") {
+            @Override
+            void render(Renderer r) throws IOException {
+                duplicates(r);
+                r.endRoles();
+                r.beginVariables();
+                for (Map.Entry<String, List<Variable>> e : main.session.vars.entrySet()) {
+                    variable(r, e.getKey(), e.getValue());
+                }
+                r.endVariables();
+                usage(r, main.session.vars);
+                dependencies(r);
+            }
+        });
+        if (effective) {
+            slots.add(new Segment(r, "effective", "effective") {
+                @Override
+                void render(Renderer r) throws IOException {
+                    effective(r, new EffectiveMatrix(main.session.getVariableIndex(), parallelism));
+                }
+            });
+        }
+        return slots;
+    }
+
+    /**
+     * All files of a role.
+     *
+     * @param r Renderer.
+     * @param role Role name.
+     * @param parts Files by part and name.
+     * @throws IOException From the renderer.
+     */
+    public static void role(Renderer r, String role, TreeMap<String, TreeMap<String, FileId>> parts) throws IOException {
+        r.beginRole(role);
+        boolean f1 = true;
+        for (Map.Entry<String, TreeMap<String, FileId>> e2 : parts.entrySet()) {
+            boolean f2 = true;
+            for (Map.Entry<String, FileId> e3 : e2.getValue().entrySet()) {
+                r.roleFile(f1 ? role : "", f2 ? e2.getKey() : "", e3.getKey(), e3.getValue());
+                f1 = f2 = false;
+            }
+        }
+        r.endRole();
+    }
+
+    /**
+     * The duplicate clusters, if there are any.
+     *
+     * @param r Renderer.
+     * @throws IOException From the renderer.
+     */
+    public static void duplicates(Renderer r) throws IOException {
+        if (null != r.pool && !r.pool.getClusters().isEmpty()) {
+            r.duplicates();
+        }
+    }
+
+    /**
+     * All definitions of a variable, the name on the first row only.
+     *
+     * @param r Renderer.
+     * @param name Variable name.
+     * @param lv Definitions.
+     * @throws IOException From the renderer.
+     */
+    public static void variable(Renderer r, String name, List<Variable> lv) throws IOException {
+        boolean f1 = true;
+        for (Variable v : lv) {
+            r.variable(f1 ? name : "", v, f1 && null != r.usages ? r.usages.get(name) : null);
+            f1 = false;
+        }
+    }
+
+    /**
+     * The usage report, if there is anything to report.
+     *
+     * @param r Renderer.
+     * @param vars Variable definitions.
+     * @throws IOException From the renderer.
+     */
+    public static void usage(Renderer r, Map<String, List<Variable>> vars) throws IOException {
+        if (null == r.usages) {
+            return;
+        }
+        List<String> unused = r.usages.unused(vars);
+        TreeMap<String, Collection<UsageIndex.Usage>> undefined = r.usages.undefined(vars);
+        if (!unused.isEmpty() || !undefined.isEmpty()) {
+            r.usage(unused, undefined);
+        }
+    }
+
+    /**
+     * @param r Renderer.
+     * @param vars Variable definitions.
+     * @return Will usage() write a section?
+     */
+    public static boolean hasUsage(Renderer r, Map<String, List<Variable>> vars) {
+        return null != r.usages && r.usages.reports(vars);
+    }
+
+    /**
+     * @param r Renderer.
+     * @return Will dependencies() write a section?
+     */
+    public static boolean hasDependencies(Renderer r) {
+        return null != r.graph && !r.graph.isEmpty();
+    }
+
+    /**
+     * The dependencies section, if anything references anything.
+     *
+     * @param r Renderer.
+     * @throws IOException From the renderer.
+     */
+    public static void dependencies(Renderer r) throws IOException {
+        if (!hasDependencies(r)) {
+            return;
+        }
+        r.beginDependencies();
+        for (DependencyGraph.Node n : r.graph.getNodes()) {
+            r.dependency(n, r.graph.isPresent(n), r.graph.uses(n), r.graph.usedBy(n), r.graph.closure(n));
+        }
+        r.endDependencies(r.graph.cycles());
+    }
+
+    /**
+     * The effective values section.
+     *
+     * @param r Renderer.
+     * @param matrix Effective values.
+     * @throws IOException From the renderer.
+     */
+    public static void effective(Renderer r, EffectiveMatrix matrix) throws IOException {
+        String[] hosts = matrix.getHosts();
+        r.beginEffective();
+        for (int h = 0; h < hosts.length; h++) {
+            boolean f1 = true;
+            for (Map.Entry<String, Variable> e : matrix.row(h).entrySet()) {
+                r.effective(f1 ? hosts[h] : "", e.getKey(), e.getValue());
+                f1 = false;
+            }
+        }
+        r.endEffective();
+    }
+
+    /**
+     * Render a part of the document into a buffer, with a fork of the
+     * renderer. Timed as phase render.&lt;phase&gt;.
+     */
+    private abstract class Segment extends RecursiveTask<CharArrayWriter> {
+
+        private static final long serialVersionUID = 1L;
+        private final Renderer parent;
+        private final String phase;
+        private final String name;
+
+        Segment(Renderer parent, String phase, String name) {
+            this.parent = parent;
+            this.phase = phase;
+            this.name = name;
+        }
+
+        abstract void render(Renderer r) throws IOException;
+
+        @Override
+        protected CharArrayWriter compute() {
+            long start = System.nanoTime();
+            Object event = FlightEvents.beginRender();
+            CharArrayWriter buf = new CharArrayWriter(1 << 12);
+            try {
+                render(parent.fork(buf));
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex); // CharArrayWriter does not throw
+            }
+            FlightEvents.endRender(event, name, buf.size());
+            if (null != main.getStats()) {
+                main.getStats().phase("render." + phase, start);
+            }
+            return buf;
+        }
+    }
+}
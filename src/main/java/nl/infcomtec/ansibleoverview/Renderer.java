@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the overview in one output format. RenderEngine walks the model and
+ * calls the methods below in document order, per segment on a fork; a label
+ * is empty when it repeats the one of the previous row.
+ *
+ * @author walter
+ */
+public abstract class Renderer {
+
+    /**
+     * Output formats by name, for --format.
+     */
+    public static final String[] FORMATS = {"html", "markdown", "text"};
+
+    /**
+     * Where everything goes; should be buffered.
+     */
+    protected final Writer out;
+    /**
+     * Is there an effective values section?
+     */
+    protected boolean effective;
+    /**
+     * Role files by contents, null to render every file in full.
+     */
+    protected ContentPool pool;
+    /**
+     * Where variables are used, null to leave that out.
+     */
+    protected UsageIndex usages;
+    /**
+     * Which playbooks, roles and task files depend on which, null to leave
+     * that out.
+     */
+    protected DependencyGraph graph;
+    /**
+     * Is there a variable usage section?
+     */
+    protected boolean usage;
+    /**
+     * Is there a dependencies section?
+     */
+    protected boolean dependencies;
+
+    protected Renderer(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * @param format One of FORMATS.
+     * @param out Output, should be buffered.
+     * @return The renderer or null for an unknown format.
+     */
+    public static Renderer create(String format, Writer out) {
+        switch (format) {
+            case "html":
+                return new HtmlRenderer(out);
+            case "markdown":
+            case "md":
+                return new MarkdownRenderer(out);
+            case "text":
+            case "txt":
+                return new TextRenderer(out);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * A renderer in the same state writing somewhere else, to render a part of
+     * the document on another thread.
+     *
+     * @param out Output for the part.
+     * @return The new renderer.
+     */
+    public Renderer fork(Writer out) {
+        Renderer r = newInstance(out);
+        r.effective = effective;
+        r.pool = pool;
+        r.usages = usages;
+        r.graph = graph;
+        r.usage = usage;
+        r.dependencies = dependencies;
+        return r;
+    }
+
+    /**
+     * Render copies of a file as a reference to the original.
+     *
+     * @param pool Role files by contents, null to render every file in full.
+     */
+    public void setPool(ContentPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * List where each variable is used, and report the variables that are
+     * not used or not defined.
+     *
+     * @param usages Where variables are used, null to leave that out.
+     */
+    public void setUsages(UsageIndex usages) {
+        this.usages = usages;
+    }
+
+    /**
+     * Add a section with the dependencies between playbooks, roles and task
+     * files.
+     *
+     * @param graph The dependencies, null to leave that out.
+     */
+    public void setGraph(DependencyGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Which of the sections after the variables the document will have, for
+     * the navigation.
+     *
+     * @param usage Is there a variable usage section?
+     * @param dependencies Is there a dependencies section?
+     */
+    public void setSections(boolean usage, boolean dependencies) {
+        this.usage = usage;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * @param out Output.
+     * @return A fresh renderer of this format.
+     */
+    protected abstract Renderer newInstance(Writer out);
+
+    /**
+     * Write text, escaped for this format.
+     *
+     * @param text Text.
+     * @throws IOException From the output.
+     */
+    public abstract void escape(CharSequence text) throws IOException;
+
+    /**
+     * Start of the document.
+     *
+     * @param effective Will there be an effective values section?
+     * @throws IOException From the output.
+     */
+    public void begin(boolean effective) throws IOException {
+        this.effective = effective;
+    }
+
+    public abstract void beginPlaybooks() throws IOException;
+
+    public abstract void playbook(String name, FileId file) throws IOException;
+
+    public abstract void endPlaybooks() throws IOException;
+
+    public abstract void beginRoles() throws IOException;
+
+    public abstract void beginRole(String role) throws IOException;
+
+    /**
+     * @param role Role label.
+     * @param part Part label ("tasks", "files", ...).
+     * @param name File name.
+     * @param file The file.
+     * @throws IOException From the output.
+     */
+    public abstract void roleFile(String role, String part, String name, FileId file) throws IOException;
+
+    public abstract void endRole() throws IOException;
+
+    /**
+     * The clusters of role files with the same contents, at the end of the
+     * roles. Only called when the pool has clusters.
+     *
+     * @throws IOException From the output.
+     */
+    public abstract void duplicates() throws IOException;
+
+    public abstract void endRoles() throws IOException;
+
+    public abstract void beginVariables() throws IOException;
+
+    /**
+     * @param name Name label.
+     * @param v Variable.
+     * @param uses Where the name is used, null on the later rows of a name.
+     * @throws IOException From the output.
+     */
+    public abstract void variable(String name, Variable v, Collection<UsageIndex.Usage> uses) throws IOException;
+
+    public abstract void endVariables() throws IOException;
+
+    /**
+     * The usage report, after the variables. Only called when there is
+     * something to report.
+     *
+     * @param unused Names defined but not used.
+     * @param undefined Names used but not defined, with their uses.
+     * @throws IOException From the output.
+     */
+    public abstract void usage(List<String> unused, Map<String, Collection<UsageIndex.Usage>> undefined) throws IOException;
+
+    /**
+     * Start of the dependencies section. Only called when something
+     * references something.
+     *
+     * @throws IOException From the output.
+     */
+    public abstract void beginDependencies() throws IOException;
+
+    /**
+     * @param node A playbook, role or task file.
+     * @param present false if it is referenced but does not exist.
+     * @param uses What it references.
+     * @param usedBy What references it.
+     * @param all Everything it depends on, directly or not.
+     * @throws IOException From the output.
+     */
+    public abstract void dependency(DependencyGraph.Node node, boolean present, Collection<DependencyGraph.Node> uses,
+            Collection<DependencyGraph.Node> usedBy, Collection<DependencyGraph.Node> all) throws IOException;
+
+    /**
+     * @param cycles Dependency cycles, each from a node back to itself.
+     * @throws IOException From the output.
+     */
+    public abstract void endDependencies(List<List<DependencyGraph.Node>> cycles) throws IOException;
+
+    public abstract void beginEffective() throws IOException;
+
+    /**
+     * @param host Host label.
+     * @param name Variable name.
+     * @param v Winning variable.
+     * @throws IOException From the output.
+     */
+    public abstract void effective(String host, String name, Variable v) throws IOException;
+
+    public abstract void endEffective() throws IOException;
+
+    /**
+     * End of the document, flushes the output.
+     *
+     * @throws IOException From the output.
+     */
+    public void end() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Write nodes as a list.
+     *
+     * @param nodes Nodes.
+     * @param sep Separator.
+     * @throws IOException From the output.
+     */
+    protected void nodes(Collection<DependencyGraph.Node> nodes, String sep) throws IOException {
+        boolean first = true;
+        for (DependencyGraph.Node n : nodes) {
+            if (!first) {
+                out.write(sep);
+            }
+            escape(n.toString());
+            first = false;
+        }
+    }
+
+    /**
+     * Write the contents of a playbook or role file through text(),
+     * binary() or unreadable(); or through duplicate() for a copy.
+     *
+     * @param file File.
+     * @throws IOException From the output.
+     */
+    protected void contents(FileId file) throws IOException {
+        FileId original = null == pool ? null : pool.original(file);
+        if (null != original) {
+            duplicate(original);
+            return;
+        }
+        ByteBuffer data;
+        try {
+            data = file.read();
+        } catch (IOException ex) {
+            Logger.getLogger(Renderer.class.getName()).log(Level.SEVERE, "Cannot read " + file.path, ex);
+            unreadable();
+            return;
+        }
+        CharBuffer text = Utils.text(data);
+        if (null == text) {
+            binary(data.remaining());
+        } else {
+            text(text);
+        }
+    }
+
+    /**
+     * @param text Contents of a text file, only valid during the call.
+     * @throws IOException From the output.
+     */
+    protected abstract void text(CharSequence text) throws IOException;
+
+    /**
+     * @param size Size of a file that is not text.
+     * @throws IOException From the output.
+     */
+    protected abstract void binary(long size) throws IOException;
+
+    protected abstract void unreadable() throws IOException;
+
+    /**
+     * @param original The file this is a copy of, in the pool.
+     * @throws IOException From the output.
+     */
+    protected abstract void duplicate(FileId original) throws IOException;
+}
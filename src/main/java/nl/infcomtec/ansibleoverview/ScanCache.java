@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of parse results, so unchanged files are not parsed again.
+ * <p>
+ * Files that are not parsed (playbooks, role files) are only hashed and
+ * searched for variable uses and references; the hash, the uses and the
+ * references are part of the entry so unchanged files need not be read again.
+ * <p>
+ * An entry is keyed by absolute path and validated against the file's size,
+ * modification time and SHA-256 of its contents. Size and time alone are only
+ * trusted when the file was already older than the moment it was last
+ * checked; anything more recent could have been changed within the timestamp
+ * resolution, so then the contents are hashed and compared.
+ *
+ * @author walter
+ */
+public class ScanCache {
+
+    /**
+     * Bump when a parser changes what it produces.
+     */
+    private static final int VERSION = 8;
+    private static final int MAGIC = 0x414f5343;
+    /**
+     * Files modified this close to the check are considered racy.
+     */
+    private static final long RACY_MS = 2000;
+
+    private static class Entry {
+
+        final ScanResult.Kind kind;
+        final String role, host, group, part;
+        final long mtime, size, checked;
+        final byte[] hash;
+        final List<String[]> hosts;
+        final List<ScanResult.Def> defs;
+        final List<String[]> children;
+        final List<ScanResult.Use> uses;
+        final List<String[]> refs;
+
+        Entry(ScanResult.Kind kind, String role, String host, String group, String part,
+                long mtime, long size, long checked, byte[] hash,
+                List<String[]> hosts, List<ScanResult.Def> defs, List<String[]> children, List<ScanResult.Use> uses,
+                List<String[]> refs) {
+            this.kind = kind;
+            this.role = role;
+            this.host = host;
+            this.group = group;
+            this.part = part;
+            this.mtime = mtime;
+            this.size = size;
+            this.checked = checked;
+            this.hash = hash;
+            this.hosts = hosts;
+            this.defs = defs;
+            this.children = children;
+            this.uses = uses;
+            this.refs = refs;
+        }
+
+        Entry(ScanResult res, long mtime, long size, long checked, byte[] hash) {
+            this(res.kind, res.role, res.host, res.group, res.part, mtime, size, checked, hash,
+                    new ArrayList<>(res.hosts), new ArrayList<>(res.defs), new ArrayList<>(res.children),
+                    new ArrayList<>(res.uses), new ArrayList<>(res.refs));
+        }
+
+        Entry restat(long mtime, long size, long checked) {
+            return new Entry(kind, role, host, group, part, mtime, size, checked, hash, hosts, defs, children, uses, refs);
+        }
+
+        /**
+         * Was this entry made for a file parsed in the same way?
+         */
+        boolean sameJob(ScanResult res) {
+            return kind == res.kind
+                    && Objects.equals(role, res.role)
+                    && Objects.equals(host, res.host)
+                    && Objects.equals(group, res.group)
+                    && Objects.equals(part, res.part);
+        }
+
+        void copyTo(ScanResult res) {
+            res.hash = hash;
+            res.hosts.addAll(hosts);
+            res.defs.addAll(defs);
+            res.children.addAll(children);
+            res.uses.addAll(uses);
+            res.refs.addAll(refs);
+        }
+    }
+
+    private final File file;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Open the cache, an unreadable or outdated cache file is ignored.
+     *
+     * @param file Cache file, need not exist.
+     */
+    public ScanCache(File file) {
+        this.file = file;
+        if (file.exists()) {
+            try {
+                load();
+            } catch (IOException | RuntimeException ex) {
+                entries.clear();
+                Logger.getLogger(ScanCache.class.getName()).log(Level.WARNING, "Ignoring scan cache " + file, ex);
+            }
+        }
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Hits as a percentage of all lookups.
+     */
+    public double getHitRate() {
+        int total = hits.get() + misses.get();
+        return 0 == total ? 0 : 100.0 * hits.get() / total;
+    }
+
+    /**
+     * Fill the result from the cache if the file did not change, else parse it
+     * and remember the outcome. Safe to call from several threads.
+     *
+     * @param main Provides the parsers.
+     * @param res File and context to parse, receives the outcome.
+     * @return res, for chaining.
+     */
+    public ScanResult parse(Main main, ScanResult res) {
+        if (!res.file.isFile()) {
+            misses.incrementAndGet();
+            return main.parse(res);
+        }
+        String key = res.file.getAbsolutePath();
+        seen.add(key);
+        long checked = System.currentTimeMillis();
+        long mtime = res.file.lastModified();
+        long size = res.file.length();
+        byte[] hash = null;
+        Entry e = entries.get(key);
+        if (null != e && e.sameJob(res)) {
+            if (e.size == size && e.mtime == mtime && mtime < e.checked - RACY_MS) {
+                hits.incrementAndGet();
+                e.copyTo(res);
+                return res;
+            }
+            hash = hash(res);
+            if (null != hash && Arrays.equals(hash, e.hash)) {
+                res.data = null;
+                hits.incrementAndGet();
+                entries.put(key, e.restat(mtime, size, checked));
+                e.copyTo(res);
+                return res;
+            }
+        }
+        misses.incrementAndGet();
+        if (null == hash) {
+            hash = hash(res);
+        }
+        res.hash = hash;
+        main.parse(res);
+        res.data = null;
+        if (!res.failed && null != hash) {
+            entries.put(key, new Entry(res, mtime, size, checked, hash));
+        } else {
+            entries.remove(key);
+        }
+        return res;
+    }
+
+    /**
+     * Write the cache. Entries for files not seen in this run are kept as
+     * long as the file still exists, so scans of different trees can share
+     * the cache. Several sessions may save at once, each through its own
+     * temporary file; the last one replaces the cache.
+     */
+    public void save() {
+        File tmp;
+        try {
+            tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        } catch (IOException ex) {
+            Logger.getLogger(ScanCache.class.getName()).log(Level.SEVERE, "Failed to write scan cache " + file, ex);
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            List<Map.Entry<String, Entry>> keep = new ArrayList<>();
+            for (Map.Entry<String, Entry> me : entries.entrySet()) {
+                if (seen.contains(me.getKey()) || new File(me.getKey()).isFile()) {
+                    keep.add(me);
+                }
+            }
+            out.writeInt(keep.size());
+            for (Map.Entry<String, Entry> me : keep) {
+                Entry e = me.getValue();
+                writeString(out, me.getKey());
+                out.writeByte(e.kind.ordinal());
+                writeString(out, e.role);
+                writeString(out, e.host);
+                writeString(out, e.group);
+                writeString(out, e.part);
+                out.writeLong(e.mtime);
+                out.writeLong(e.size);
+                out.writeLong(e.checked);
+                out.write(e.hash);
+                out.writeInt(e.hosts.size());
+                for (String[] gh : e.hosts) {
+                    writeString(out, gh[0]);
+                    writeString(out, gh[1]);
+                }
+                out.writeInt(e.defs.size());
+                for (ScanResult.Def d : e.defs) {
+                    writeString(out, d.name);
+                    writeString(out, d.role);
+                    writeString(out, d.host);
+                    writeString(out, d.group);
+                    writeString(out, d.value);
+                }
+                out.writeInt(e.children.size());
+                for (String[] pc : e.children) {
+                    writeString(out, pc[0]);
+                    writeString(out, pc[1]);
+                }
+                out.writeInt(e.uses.size());
+                for (ScanResult.Use u : e.uses) {
+                    writeString(out, u.name);
+                    out.writeInt(u.local ? -u.line : u.line); // lines start at 1
+                }
+                out.writeInt(e.refs.size());
+                for (String[] r : e.refs) {
+                    writeString(out, r[0]);
+                    writeString(out, r[1]);
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(ScanCache.class.getName()).log(Level.SEVERE, "Failed to write scan cache " + tmp, ex);
+            tmp.delete();
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            Logger.getLogger(ScanCache.class.getName()).log(Level.SEVERE, "Failed to replace scan cache " + file, ex);
+            tmp.delete();
+        }
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            ScanResult.Kind[] kinds = ScanResult.Kind.values();
+            for (int n = in.readInt(); n > 0; n--) {
+                String key = readString(in);
+                ScanResult.Kind kind = kinds[in.readByte()];
+                String role = readString(in);
+                String host = readString(in);
+                String group = readString(in);
+                String part = readString(in);
+                long mtime = in.readLong();
+                long size = in.readLong();
+                long checked = in.readLong();
+                byte[] hash = new byte[32];
+                in.readFully(hash);
+                int nh = in.readInt();
+                List<String[]> hosts = new ArrayList<>(nh);
+                for (int i = 0; i < nh; i++) {
+                    hosts.add(new String[]{readString(in), readString(in)});
+                }
+                int nd = in.readInt();
+                List<ScanResult.Def> defs = new ArrayList<>(nd);
+                for (int i = 0; i < nd; i++) {
+                    defs.add(new ScanResult.Def(readString(in), readString(in), readString(in), readString(in), readString(in)));
+                }
+                int nc = in.readInt();
+                List<String[]> children = new ArrayList<>(nc);
+                for (int i = 0; i < nc; i++) {
+                    children.add(new String[]{readString(in), readString(in)});
+                }
+                int nu = in.readInt();
+                List<ScanResult.Use> uses = new ArrayList<>(nu);
+                for (int i = 0; i < nu; i++) {
+                    String name = readString(in);
+                    int line = in.readInt();
+                    uses.add(new ScanResult.Use(name, Math.abs(line), line < 0));
+                }
+                int nr = in.readInt();
+                List<String[]> refs = new ArrayList<>(nr);
+                for (int i = 0; i < nr; i++) {
+                    refs.add(new String[]{readString(in), readString(in)});
+                }
+                entries.put(key, new Entry(kind, role, host, group, part, mtime, size, checked, hash, hosts, defs, children, uses, refs));
+            }
+        }
+    }
+
+    /**
+     * Hash the contents, reading them into res.data so a parser can use them
+     * without reading the file a second time.
+     */
+    private static byte[] hash(ScanResult res) {
+        try {
+            if (null == res.data) {
+                res.data = Utils.read(res.file);
+            }
+            return Utils.sha256(res.data);
+        } catch (IOException ex) {
+            Logger.getLogger(ScanCache.class.getName()).log(Level.WARNING, "Cannot hash " + res.file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Like writeUTF, but without the 64K limit and with null support.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (null == s) {
+            out.writeInt(-1);
+        } else {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(b.length);
+            out.write(b);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) {
+            return null;
+        }
+        byte[] b = new byte[n];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
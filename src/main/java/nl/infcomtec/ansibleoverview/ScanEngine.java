@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Parallel directory scanner. Directory listing and parsing run as
+ * work-stealing tasks; the results are returned in the same order the serial
+ * scan used, so applying them gives output that does not depend on thread
+ * timing.
+ *
+ * @author walter
+ */
+public class ScanEngine {
+
+    /**
+     * What a listed directory contains.
+     */
+    private enum Listing {
+        HOST_VARS, GROUP_VARS, ROLE, ROLE_PART
+    }
+
+    private final Main main;
+    private final int parallelism;
+
+    /**
+     * @param main Provides the parsers.
+     * @param parallelism Number of worker threads.
+     */
+    public ScanEngine(Main main, int parallelism) {
+        this.main = main;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Scan the directories. The results are not yet applied to the model.
+     *
+     * @param directories Ansible directories, in command line order.
+     * @return Parse results in the order they must be applied.
+     */
+    public List<ScanResult> scan(List<String> directories) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return scan(pool, directories);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<ScanResult> scan(ForkJoinPool pool, List<String> directories) {
+        // each slot yields its results in order; slots are joined in order
+        List<ForkJoinTask<List<ScanResult>>> slots = new ArrayList<>();
+        List<File> roles = new ArrayList<>();
+        for (String path : directories) {
+            File dir = new File(path);
+            if (!dir.exists() || !dir.isDirectory()) {
+                Logger.getLogger(ScanEngine.class.getName()).log(Level.SEVERE, "{0} is not valid.", path);
+                break;
+            }
+            File[] files = dir.listFiles();
+            if (null == files) {
+                continue;
+            }
+            for (File f : files) {
+                String name = f.getName();
+                if (name.equals("hosts")) {
+                    slots.add(pool.submit(new ParseTask(new ScanResult(ScanResult.Kind.INVENTORY, f))));
+                } else if (name.equals("ansible.cfg")) {
+                    slots.add(pool.submit(new ParseTask(new ScanResult(ScanResult.Kind.CONFIG, f))));
+                } else if (name.endsWith(".yml")) {
+                    slots.add(pool.submit(new ParseTask(new ScanResult(ScanResult.Kind.PLAYBOOK, f))));
+                } else if (name.equals("host_vars")) {
+                    slots.add(pool.submit(new ListTask(f, Listing.HOST_VARS, null)));
+                } else if (name.equals("group_vars")) {
+                    slots.add(pool.submit(new ListTask(f, Listing.GROUP_VARS, null)));
+                } else if (name.equals("roles")) {
+                    File[] sub = f.listFiles();
+                    if (null != sub) {
+                        roles.addAll(Arrays.asList(sub));
+                    }
+                } else if (name.startsWith(".")) {
+                    // ignore
+                } else {
+                    Logger.getLogger(ScanEngine.class.getName()).log(Level.FINE, "Not an Ansible file: {0}", f);
+                    if (null != main.getStats()) {
+                        main.getStats().unrecognized(f);
+                    }
+                }
+            }
+        }
+        // later roles with the same name overwrite earlier ones, as before
+        for (File f : roles) {
+            slots.add(pool.submit(new ListTask(f, Listing.ROLE, f.getName())));
+        }
+        List<ScanResult> ret = new ArrayList<>();
+        for (ForkJoinTask<List<ScanResult>> slot : slots) {
+            ret.addAll(slot.join());
+        }
+        return ret;
+    }
+
+    /**
+     * Parse a single file.
+     */
+    private class ParseTask extends RecursiveTask<List<ScanResult>> {
+
+        private static final long serialVersionUID = 1L;
+        private final ScanResult res;
+
+        ParseTask(ScanResult res) {
+            this.res = res;
+        }
+
+        @Override
+        protected List<ScanResult> compute() {
+            main.scanFile(res);
+            return Collections.singletonList(res);
+        }
+    }
+
+    /**
+     * List a directory and parse its contents, forking per entry.
+     */
+    private class ListTask extends RecursiveTask<List<ScanResult>> {
+
+        private static final long serialVersionUID = 1L;
+        private final File dir;
+        private final Listing listing;
+        private final String role;
+
+        ListTask(File dir, Listing listing, String role) {
+            this.dir = dir;
+            this.listing = listing;
+            this.role = role;
+        }
+
+        @Override
+        protected List<ScanResult> compute() {
+            List<RecursiveTask<List<ScanResult>>> tasks = new ArrayList<>();
+            if (listing == Listing.ROLE) {
+                if (!dir.isDirectory()) {
+                    return Collections.emptyList();
+                }
+                for (String part : Main.ROLE_PARTS) {
+                    File partDir = new File(dir, part);
+                    if (partDir.exists()) {
+                        tasks.add(new ListTask(partDir, Listing.ROLE_PART, role));
+                    }
+                }
+            } else {
+                File[] sub = dir.listFiles();
+                if (null == sub) {
+                    return Collections.emptyList();
+                }
+                for (File f : sub) {
+                    tasks.add(new ParseTask(job(f)));
+                }
+            }
+            invokeAll(tasks);
+            List<ScanResult> ret = new ArrayList<>();
+            for (RecursiveTask<List<ScanResult>> t : tasks) {
+                ret.addAll(t.join());
+            }
+            return ret;
+        }
+
+        private ScanResult job(File f) {
+            switch (listing) {
+                case HOST_VARS:
+                    return new ScanResult(ScanResult.Kind.VARS, f, null, f.getName().replace(".yml", ""), null, null);
+                case GROUP_VARS:
+                    return new ScanResult(ScanResult.Kind.VARS, f, null, null, f.getName().replace(".yml", ""), null);
+                default:
+                    switch (dir.getName()) {
+                        case "vars":
+                        case "defaults":
+                            // role variables, defined for the role only
+                            return new ScanResult(ScanResult.Kind.VARS, f, role, null, null, dir.getName());
+                        default:
+                            return new ScanResult(ScanResult.Kind.ROLE_FILE, f, role, null, null, dir.getName());
+                    }
+            }
+        }
+    }
+}
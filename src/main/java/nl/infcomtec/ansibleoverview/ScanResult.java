@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What parsing one file produced. Filled by a parser (possibly on a worker
+ * thread) and later applied to the model in scan order, so the model never
+ * sees concurrent updates.
+ *
+ * @author walter
+ */
+public class ScanResult {
+
+    /**
+     * The kinds of files the scanner recognizes.
+     */
+    public enum Kind {
+        INVENTORY(true, false, true), CONFIG(true, false, false), VARS(true, false, true),
+        PLAYBOOK(false, false, true), ROLE_FILE(false, true, true);
+        /**
+         * false for files that are only read when rendering.
+         */
+        public final boolean parsed;
+        /**
+         * true for files whose contents go into the content pool.
+         */
+        public final boolean hashed;
+        /**
+         * true for files searched for variable uses.
+         */
+        public final boolean tokenized;
+
+        private Kind(boolean parsed, boolean hashed, boolean tokenized) {
+            this.parsed = parsed;
+            this.hashed = hashed;
+            this.tokenized = tokenized;
+        }
+    }
+
+    /**
+     * One variable definition, the arguments to OverviewSession.putVar minus the
+     * FileId.
+     */
+    public static class Def {
+
+        public final String name;
+        public final String role;
+        public final String host;
+        public final String group;
+        public final String value;
+
+        public Def(String name, String role, String host, String group, String value) {
+            this.name = name;
+            this.role = role;
+            this.host = host;
+            this.group = group;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A variable name in the text of a file.
+     */
+    public static class Use {
+
+        public final String name;
+        /**
+         * Line number, from 1.
+         */
+        public final int line;
+        /**
+         * Set when the file defines the name for itself (register, set_fact,
+         * vars, loop_var) rather than using it.
+         */
+        public final boolean local;
+
+        public Use(String name, int line, boolean local) {
+            this.name = name;
+            this.line = line;
+            this.local = local;
+        }
+    }
+
+    public final Kind kind;
+    public final File file;
+    /**
+     * Context: role for role files and role variables.
+     */
+    public final String role;
+    /**
+     * Context: host for host_vars.
+     */
+    public final String host;
+    /**
+     * Context: group for group_vars.
+     */
+    public final String group;
+    /**
+     * Context: role part ("tasks", "templates", ...) for role files.
+     */
+    public final String part;
+    /**
+     * Contents when already read, so the parser need not read the file again.
+     * Dropped after parsing.
+     */
+    public ByteBuffer data;
+    /**
+     * SHA-256 of the contents, for hashed kinds.
+     */
+    public byte[] hash;
+    /**
+     * Set when the file could not be read or parsed, the result is then
+     * incomplete and must not be cached.
+     */
+    public boolean failed;
+    /**
+     * What parsed the file ("yaml", "ini4j", "jinja", ...), for statistics;
+     * stays null when the result came from the scan cache.
+     */
+    public String parser;
+    /**
+     * Set when applied to the model.
+     */
+    public FileId fileId;
+    public final List<String[]> hosts = new ArrayList<>();
+    public final List<Def> defs = new ArrayList<>();
+    /**
+     * Parent and child group pairs.
+     */
+    public final List<String[]> children = new ArrayList<>();
+    /**
+     * Variable names in the text, in text order.
+     */
+    public final List<Use> uses = new ArrayList<>();
+    /**
+     * References to playbooks, roles and task files: {"playbook", "role" or
+     * "tasks", target as written}.
+     */
+    public final List<String[]> refs = new ArrayList<>();
+
+    public ScanResult(Kind kind, File file, String role, String host, String group, String part) {
+        this.kind = kind;
+        this.file = file;
+        this.role = role;
+        this.host = host;
+        this.group = group;
+        this.part = part;
+    }
+
+    public ScanResult(Kind kind, File file) {
+        this(kind, file, null, null, null, null);
+    }
+
+    public void addHost(String group, String host) {
+        if (null != group && null != host) {
+            hosts.add(new String[]{group, host});
+        }
+    }
+
+    public void addChild(String parent, String child) {
+        if (null != parent && null != child) {
+            children.add(new String[]{parent, child});
+        }
+    }
+
+    public void putVar(String name, String role, String host, String group, String value) {
+        addHost(group, host);
+        defs.add(new Def(name, role, host, group, value));
+    }
+
+    /**
+     * @return Short name of the file: role/part/name for role files, else the
+     * name with its directory for variables, or just the name.
+     */
+    public String label() {
+        if (null != role && null != part) {
+            return role + "/" + part + "/" + file.getName();
+        }
+        if (kind == Kind.VARS) {
+            return file.getParentFile().getName() + "/" + file.getName();
+        }
+        return file.getName();
+    }
+
+    /**
+     * Role defaults and vars are not listed as variables (their precedence
+     * depends on the play); they only count as definitions of their names
+     * for the usage report.
+     *
+     * @return true for a variables file of a role.
+     */
+    public boolean roleVars() {
+        return kind == Kind.VARS && null != role;
+    }
+
+    /**
+     * Moves the result into the model. Must be called from one thread, in
+     * scan order.
+     *
+     * @param main Model to update.
+     */
+    public void apply(Main main) {
+        fileId = new FileId(main.session, file.getAbsolutePath(), hash);
+        for (String[] gh : hosts) {
+            main.session.addHost(gh[0], gh[1]);
+        }
+        for (String[] pc : children) {
+            main.session.addChild(pc[0], pc[1]);
+        }
+        if (!roleVars()) {
+            for (Def d : defs) {
+                main.session.putVar(d.name, d.role, d.host, d.group, fileId, d.value);
+            }
+        }
+        if (!failed) {
+            main.usages.add(fileId, label(), kind == Kind.PLAYBOOK || kind == Kind.ROLE_FILE, uses,
+                    roleVars() ? defs : Collections.<Def>emptyList());
+            main.graph.add(fileId, this);
+            switch (kind) {
+                case PLAYBOOK:
+                    main.playbooks.put(file.getName(), fileId);
+                    break;
+                case ROLE_FILE:
+                    main.putRoleFile(role, part, file.getName(), fileId);
+                    break;
+            }
+        }
+    }
+}
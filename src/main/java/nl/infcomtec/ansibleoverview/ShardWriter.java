@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes the pages of a PageSet into a directory, in parallel. The manifest
+ * remembers the signature of every page written; a page whose signature did
+ * not change is not written again.
+ *
+ * @author walter
+ */
+public class ShardWriter {
+
+    public static final String MANIFEST = ".manifest";
+
+    private final Main main;
+    private final File dir;
+    private final int parallelism;
+    private final boolean effective;
+    private final Properties manifest = new Properties();
+    private final Map<String, String> signatures = new ConcurrentHashMap<>();
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+
+    /**
+     * @param main Provides the model.
+     * @param dir Output directory, created if needed.
+     * @param parallelism Number of writer threads.
+     * @param effective Add the effective values page?
+     */
+    public ShardWriter(Main main, File dir, int parallelism, boolean effective) {
+        this.main = main;
+        this.dir = dir.getAbsoluteFile();
+        this.parallelism = Math.max(1, parallelism);
+        this.effective = effective;
+    }
+
+    public int getWritten() {
+        return written.get();
+    }
+
+    public int getUnchanged() {
+        return unchanged.get();
+    }
+
+    /**
+     * Is this output path a directory, so the output should be sharded?
+     *
+     * @param path -o argument.
+     * @return true for an existing directory or a path ending in a separator.
+     */
+    public static boolean isShardDir(String path) {
+        return path.endsWith("/") || path.endsWith(File.separator) || new File(path).isDirectory();
+    }
+
+    /**
+     * Write the pages and remove pages of a previous run that no longer
+     * exist.
+     */
+    public void write() {
+        dir.mkdirs();
+        loadManifest();
+        PageSet pages = new PageSet(main, parallelism, effective);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+            for (PageSet.Page p : pages.getPages()) {
+                tasks.add(pool.submit(new WriteTask(p)));
+            }
+            for (ForkJoinTask<Boolean> t : tasks) {
+                t.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        Set<String> names = new TreeSet<>();
+        for (PageSet.Page p : pages.getPages()) {
+            names.add(p.name);
+        }
+        for (String old : manifest.stringPropertyNames()) {
+            if (!names.contains(old)) {
+                removeStale(old);
+            }
+        }
+        saveManifest();
+    }
+
+    private void loadManifest() {
+        File f = new File(dir, MANIFEST);
+        if (f.exists()) {
+            try (InputStream in = new FileInputStream(f)) {
+                manifest.load(in);
+            } catch (IOException ex) {
+                Logger.getLogger(ShardWriter.class.getName()).log(Level.WARNING, "Ignoring manifest " + f, ex);
+                manifest.clear();
+            }
+        }
+    }
+
+    private void saveManifest() {
+        Properties p = new Properties();
+        p.putAll(signatures);
+        File f = new File(dir, MANIFEST);
+        try (OutputStream out = new FileOutputStream(f)) {
+            p.store(out, "Page signatures");
+        } catch (IOException ex) {
+            Logger.getLogger(ShardWriter.class.getName()).log(Level.SEVERE, "Failed to write manifest " + f, ex);
+        }
+    }
+
+    private void removeStale(String name) {
+        try {
+            File f = new File(dir, name).getCanonicalFile();
+            if (f.getPath().startsWith(dir.getCanonicalPath() + File.separator)) {
+                Files.deleteIfExists(f.toPath());
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(ShardWriter.class.getName()).log(Level.WARNING, "Cannot remove " + name, ex);
+        }
+    }
+
+    /**
+     * Write one page, unless it did not change.
+     */
+    private class WriteTask extends RecursiveTask<Boolean> {
+
+        private static final long serialVersionUID = 1L;
+        private final PageSet.Page page;
+
+        WriteTask(PageSet.Page page) {
+            this.page = page;
+        }
+
+        /**
+         * @return true if the page was written.
+         */
+        @Override
+        protected Boolean compute() {
+            String name = page.name;
+            String sig = page.signature();
+            File target = new File(dir, name);
+            if (sig.equals(manifest.getProperty(name)) && target.isFile()) {
+                signatures.put(name, sig);
+                unchanged.incrementAndGet();
+                return false;
+            }
+            target.getParentFile().mkdirs();
+            File tmp = new File(target.getPath() + ".tmp");
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), Charset.defaultCharset()), 1 << 16)) {
+                page.write(w);
+            } catch (IOException ex) {
+                Logger.getLogger(ShardWriter.class.getName()).log(Level.SEVERE, "-o: " + tmp, ex);
+                tmp.delete();
+                return false;
+            }
+            try {
+                Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                Logger.getLogger(ShardWriter.class.getName()).log(Level.SEVERE, "-o: " + target, ex);
+                return false;
+            }
+            signatures.put(name, sig);
+            written.incrementAndGet();
+            return true;
+        }
+    }
+}
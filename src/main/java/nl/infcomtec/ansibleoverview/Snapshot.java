@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Binary snapshot of a scanned model, to render or query it again without
+ * the source tree and without parsing anything.
+ * <p>
+ * The file holds what the scan produced, not the derived indexes: applying
+ * the results in scan order rebuilds exactly the model of the scan, with the
+ * same file ids, so the output is the same. Layout, big endian:
+ * <ul>
+ * <li>magic, version;</li>
+ * <li>the scanned directories: count, then each as writeUTF;</li>
+ * <li>string pool: count, the end offset of every string, the UTF-8 bytes;
+ * every string below is an index in the pool, -1 for null;</li>
+ * <li>files in scan order: kind, flags (failed, hash), path, role, host,
+ * group, part, SHA-256 if flagged, modification time, offset and length of
+ * the contents (-1 if not kept);</li>
+ * <li>columns, each table as a row count followed by one int array per
+ * column, rows ordered by file: variable definitions (file, name, role, host,
+ * group, value), group membership (file, group, host), child groups (file,
+ * parent, child), variable uses (file, name, line; negative if local) and
+ * references (file, type, target);</li>
+ * <li>the contents of the playbooks and role files, each distinct contents
+ * once.</li>
+ * </ul>
+ * The file is memory mapped when loaded; contents stay in the mapping and are
+ * only paged in when rendered.
+ *
+ * @author walter
+ */
+public class Snapshot {
+
+    /**
+     * Bump when the layout changes.
+     */
+    public static final int VERSION = 2;
+    private static final int MAGIC = 0x414f534e;
+    private static final int NONE = -1;
+    private static final int FAILED = 1;
+    private static final int HASH = 2;
+
+    /**
+     * Write the results of a scan.
+     *
+     * @param file Snapshot to write, replaced atomically.
+     * @param directories The directories scanned.
+     * @param results Scan results in scan order, applied to a model.
+     * @throws IOException From writing, or reading contents to keep.
+     */
+    public static void write(File file, List<String> directories, List<ScanResult> results) throws IOException {
+        Map<String, Integer> pool = new LinkedHashMap<>();
+        for (ScanResult res : results) {
+            intern(pool, res.fileId.path, res.role, res.host, res.group, res.part);
+            for (ScanResult.Def d : res.defs) {
+                intern(pool, d.name, d.role, d.host, d.group, d.value);
+            }
+            for (String[] gh : res.hosts) {
+                intern(pool, gh);
+            }
+            for (String[] pc : res.children) {
+                intern(pool, pc);
+            }
+            for (ScanResult.Use u : res.uses) {
+                intern(pool, u.name);
+            }
+            for (String[] r : res.refs) {
+                intern(pool, r);
+            }
+        }
+        // first pass over the contents: sizes, offsets and copies
+        long[] offsets = new long[results.size()];
+        int[] lengths = new int[results.size()];
+        Map<ByteBuffer, Long> distinct = new HashMap<>();
+        List<FileId> kept = new ArrayList<>();
+        List<Integer> keptLengths = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < results.size(); i++) {
+            ScanResult res = results.get(i);
+            offsets[i] = NONE;
+            lengths[i] = NONE;
+            if (res.failed || (res.kind != ScanResult.Kind.PLAYBOOK && res.kind != ScanResult.Kind.ROLE_FILE)) {
+                continue;
+            }
+            ByteBuffer data;
+            try {
+                data = res.fileId.read();
+            } catch (IOException ex) {
+                Logger.getLogger(Snapshot.class.getName()).log(Level.WARNING, "Not in snapshot: " + res.fileId.path, ex);
+                continue;
+            }
+            ByteBuffer key = ByteBuffer.wrap(Utils.sha256(data));
+            Long offset = distinct.get(key);
+            if (null == offset) {
+                offset = total;
+                distinct.put(key, offset);
+                kept.add(res.fileId);
+                keptLengths.add(data.remaining());
+                total += data.remaining();
+            }
+            offsets[i] = offset;
+            lengths[i] = data.remaining();
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(directories.size());
+                for (String dir : directories) {
+                    out.writeUTF(dir);
+                }
+                writePool(out, pool);
+                out.writeInt(results.size());
+                for (int i = 0; i < results.size(); i++) {
+                    ScanResult res = results.get(i);
+                    byte[] hash = res.fileId.hash;
+                    out.writeByte(res.kind.ordinal());
+                    out.writeByte((res.failed ? FAILED : 0) | (null != hash ? HASH : 0));
+                    out.writeInt(id(pool, res.fileId.path));
+                    out.writeInt(id(pool, res.role));
+                    out.writeInt(id(pool, res.host));
+                    out.writeInt(id(pool, res.group));
+                    out.writeInt(id(pool, res.part));
+                    if (null != hash) {
+                        out.write(hash);
+                    }
+                    out.writeLong(NONE == lengths[i] ? 0 : res.fileId.lastModified());
+                    out.writeLong(offsets[i]);
+                    out.writeInt(lengths[i]);
+                }
+                writeDefs(out, pool, results);
+                writePairs(out, pool, results, 0);
+                writePairs(out, pool, results, 1);
+                writeUses(out, pool, results);
+                writePairs(out, pool, results, 2);
+                out.writeLong(total);
+                // second pass: the contents themselves, each copy once
+                byte[] buf = new byte[1 << 16];
+                for (int i = 0; i < kept.size(); i++) {
+                    ByteBuffer data = kept.get(i).read();
+                    if (data.remaining() != keptLengths.get(i)) {
+                        throw new IOException("Changed while writing the snapshot: " + kept.get(i).path);
+                    }
+                    while (data.hasRemaining()) {
+                        int n = Math.min(buf.length, data.remaining());
+                        data.get(buf, 0, n);
+                        out.write(buf, 0, n);
+                    }
+                }
+            }
+            if (tmp.length() > Integer.MAX_VALUE) {
+                throw new IOException("A snapshot cannot be mapped beyond 2 GiB: " + file);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Replace the model by a snapshot.
+     *
+     * @param main Model to load into, cleared first.
+     * @param file Snapshot.
+     * @throws IOException If the file cannot be read or is not a snapshot of
+     * this version.
+     */
+    public static void load(Main main, File file) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (buf.remaining() < 8 || buf.getInt() != MAGIC) {
+            throw new IOException("Not a snapshot: " + file);
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+            throw new IOException("Snapshot version " + version + ", expected " + VERSION + ": " + file);
+        }
+        List<String> directories = new ArrayList<>();
+        for (int i = buf.getInt(); i > 0; i--) {
+            byte[] b = new byte[buf.getShort() & 0xffff];
+            buf.get(b);
+            directories.add(new String(b, StandardCharsets.UTF_8));
+        }
+        String[] strings = readPool(buf);
+        ScanResult.Kind[] kinds = ScanResult.Kind.values();
+        int n = buf.getInt();
+        List<ScanResult> results = new ArrayList<>(n);
+        long[] modified = new long[n];
+        long[] offsets = new long[n];
+        int[] lengths = new int[n];
+        for (int i = 0; i < n; i++) {
+            ScanResult.Kind kind = kinds[buf.get()];
+            int flags = buf.get();
+            String path = str(strings, buf.getInt());
+            ScanResult res = new ScanResult(kind, new File(path), str(strings, buf.getInt()),
+                    str(strings, buf.getInt()), str(strings, buf.getInt()), str(strings, buf.getInt()));
+            res.failed = 0 != (flags & FAILED);
+            if (0 != (flags & HASH)) {
+                res.hash = new byte[32];
+                buf.get(res.hash);
+            }
+            modified[i] = buf.getLong();
+            offsets[i] = buf.getLong();
+            lengths[i] = buf.getInt();
+            results.add(res);
+        }
+        int[][] c = columns(buf, 6);
+        for (int r = 0; r < c[0].length; r++) {
+            results.get(c[0][r]).defs.add(new ScanResult.Def(str(strings, c[1][r]), str(strings, c[2][r]),
+                    str(strings, c[3][r]), str(strings, c[4][r]), str(strings, c[5][r])));
+        }
+        c = columns(buf, 3);
+        for (int r = 0; r < c[0].length; r++) {
+            results.get(c[0][r]).hosts.add(new String[]{str(strings, c[1][r]), str(strings, c[2][r])});
+        }
+        c = columns(buf, 3);
+        for (int r = 0; r < c[0].length; r++) {
+            results.get(c[0][r]).children.add(new String[]{str(strings, c[1][r]), str(strings, c[2][r])});
+        }
+        c = columns(buf, 3);
+        for (int r = 0; r < c[0].length; r++) {
+            int line = c[2][r];
+            results.get(c[0][r]).uses.add(new ScanResult.Use(str(strings, c[1][r]), Math.abs(line), line < 0));
+        }
+        c = columns(buf, 3);
+        for (int r = 0; r < c[0].length; r++) {
+            results.get(c[0][r]).refs.add(new String[]{str(strings, c[1][r]), str(strings, c[2][r])});
+        }
+        long total = buf.getLong();
+        int base = buf.position();
+        if (buf.remaining() != total) {
+            throw new IOException("Truncated snapshot: " + file);
+        }
+        main.reset();
+        main.setDirectories(directories);
+        for (int i = 0; i < n; i++) {
+            ScanResult res = results.get(i);
+            main.remember(res);
+            if (NONE != lengths[i]) {
+                ByteBuffer b = buf.duplicate();
+                b.position(base + (int) offsets[i]);
+                b.limit(base + (int) offsets[i] + lengths[i]);
+                res.fileId.modified = modified[i];
+                res.fileId.contents = b.slice();
+            }
+        }
+    }
+
+    private static void intern(Map<String, Integer> pool, String... strings) {
+        for (String s : strings) {
+            if (null != s && !pool.containsKey(s)) {
+                pool.put(s, pool.size());
+            }
+        }
+    }
+
+    private static int id(Map<String, Integer> pool, String s) {
+        return null == s ? NONE : pool.get(s);
+    }
+
+    private static String str(String[] strings, int id) {
+        return NONE == id ? null : strings[id];
+    }
+
+    private static void writePool(DataOutputStream out, Map<String, Integer> pool) throws IOException {
+        List<byte[]> encoded = new ArrayList<>(pool.size());
+        out.writeInt(pool.size());
+        int end = 0;
+        for (String s : pool.keySet()) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(b);
+            end += b.length;
+            out.writeInt(end);
+        }
+        for (byte[] b : encoded) {
+            out.write(b);
+        }
+    }
+
+    private static String[] readPool(ByteBuffer buf) {
+        String[] strings = new String[buf.getInt()];
+        int[] ends = new int[strings.length];
+        buf.asIntBuffer().get(ends);
+        buf.position(buf.position() + 4 * ends.length);
+        byte[] bytes = new byte[0 == ends.length ? 0 : ends[ends.length - 1]];
+        buf.get(bytes);
+        int start = 0;
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = new String(bytes, start, ends[i] - start, StandardCharsets.UTF_8);
+            start = ends[i];
+        }
+        return strings;
+    }
+
+    private static int[][] columns(ByteBuffer buf, int width) {
+        int rows = buf.getInt();
+        int[][] c = new int[width][rows];
+        for (int[] column : c) {
+            buf.asIntBuffer().get(column);
+            buf.position(buf.position() + 4 * rows);
+        }
+        return c;
+    }
+
+    private static void writeDefs(DataOutputStream out, Map<String, Integer> pool, List<ScanResult> results) throws IOException {
+        int rows = 0;
+        for (ScanResult res : results) {
+            rows += res.defs.size();
+        }
+        out.writeInt(rows);
+        for (int col = 0; col < 6; col++) {
+            for (int i = 0; i < results.size(); i++) {
+                for (ScanResult.Def d : results.get(i).defs) {
+                    switch (col) {
+                        case 0:
+                            out.writeInt(i);
+                            break;
+                        case 1:
+                            out.writeInt(id(pool, d.name));
+                            break;
+                        case 2:
+                            out.writeInt(id(pool, d.role));
+                            break;
+                        case 3:
+                            out.writeInt(id(pool, d.host));
+                            break;
+                        case 4:
+                            out.writeInt(id(pool, d.group));
+                            break;
+                        default:
+                            out.writeInt(id(pool, d.value));
+                            break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeUses(DataOutputStream out, Map<String, Integer> pool, List<ScanResult> results) throws IOException {
+        int rows = 0;
+        for (ScanResult res : results) {
+            rows += res.uses.size();
+        }
+        out.writeInt(rows);
+        for (int col = 0; col < 3; col++) {
+            for (int i = 0; i < results.size(); i++) {
+                for (ScanResult.Use u : results.get(i).uses) {
+                    out.writeInt(0 == col ? i : 1 == col ? id(pool, u.name) : u.local ? -u.line : u.line);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param table 0 for the group membership, 1 for the child groups, 2 for
+     * the references.
+     */
+    private static void writePairs(DataOutputStream out, Map<String, Integer> pool, List<ScanResult> results, int table) throws IOException {
+        int rows = 0;
+        for (ScanResult res : results) {
+            rows += pairs(res, table).size();
+        }
+        out.writeInt(rows);
+        for (int col = 0; col < 3; col++) {
+            for (int i = 0; i < results.size(); i++) {
+                for (String[] p : pairs(results.get(i), table)) {
+                    out.writeInt(0 == col ? i : id(pool, p[col - 1]));
+                }
+            }
+        }
+    }
+
+    private static List<String[]> pairs(ScanResult res, int table) {
+        return 0 == table ? res.hosts : 1 == table ? res.children : res.refs;
+    }
+}
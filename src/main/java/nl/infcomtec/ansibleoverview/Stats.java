@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Instrumentation of one run for --stats: time per phase, counters per kind
+ * of file and per parser, the slowest files and any number of named totals.
+ * Written as one JSON object, so nightly runs can be compared and graphed.
+ * <p>
+ * Phases are wall time on the thread that ran them; the render.* phases are
+ * the sum over the render threads, so they can add up to more than render.
+ *
+ * @author walter
+ */
+public class Stats {
+
+    /**
+     * Version of the JSON layout.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Number of slowest files kept by default.
+     */
+    public static final int SLOWEST = 20;
+
+    /**
+     * Totals over a set of files.
+     */
+    private static class Counter {
+
+        long files, failed, bytes, nanos, variables, hosts, groups;
+    }
+
+    /**
+     * Time spent on one file.
+     */
+    private static class Timed implements Comparable<Timed> {
+
+        final String path;
+        final String kind;
+        final String parser;
+        final long bytes;
+        final long nanos;
+
+        Timed(String path, String kind, String parser, long bytes, long nanos) {
+            this.path = path;
+            this.kind = kind;
+            this.parser = parser;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public int compareTo(Timed o) {
+            return Long.compare(nanos, o.nanos);
+        }
+    }
+
+    private final long started = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final int keep;
+    /**
+     * Nanoseconds and count by phase, in order of first completion.
+     */
+    private final Map<String, long[]> phases = new LinkedHashMap<>();
+    private final TreeMap<String, Counter> kinds = new TreeMap<>();
+    private final TreeMap<String, Counter> parsers = new TreeMap<>();
+    private final TreeMap<String, Long> counters = new TreeMap<>();
+    /**
+     * The slowest files so far, fastest first.
+     */
+    private final PriorityQueue<Timed> slowest = new PriorityQueue<>();
+    private final Set<String> unrecognized = new TreeSet<>();
+
+    /**
+     * @param keep Number of slowest files to keep.
+     */
+    public Stats(int keep) {
+        this.keep = keep;
+    }
+
+    public Stats() {
+        this(SLOWEST);
+    }
+
+    /**
+     * Add the time since start to a phase.
+     *
+     * @param name Phase.
+     * @param start System.nanoTime() at the start of the phase.
+     */
+    public void phase(String name, long start) {
+        long nanos = System.nanoTime() - start;
+        synchronized (this) {
+            long[] p = phases.get(name);
+            if (null == p) {
+                p = new long[2];
+                phases.put(name, p);
+            }
+            p[0] += nanos;
+            p[1]++;
+        }
+    }
+
+    /**
+     * Count one scanned file. Safe to call from the scanner threads.
+     *
+     * @param res Outcome of the scan; a null parser means a cache hit.
+     * @param start System.nanoTime() before the file was scanned.
+     */
+    public void file(ScanResult res, long start) {
+        long nanos = System.nanoTime() - start;
+        long bytes = res.file.length();
+        Set<String> groups = new TreeSet<>();
+        Set<String> hosts = new TreeSet<>();
+        for (String[] gh : res.hosts) {
+            groups.add(gh[0]);
+            hosts.add(gh[1]);
+        }
+        for (String[] pc : res.children) {
+            groups.add(pc[0]);
+            groups.add(pc[1]);
+        }
+        String kind = res.kind.name().toLowerCase(Locale.ROOT);
+        String parser = null == res.parser ? "cache" : res.parser;
+        synchronized (this) {
+            for (Counter c : new Counter[]{counter(kinds, kind), counter(parsers, parser)}) {
+                c.files++;
+                c.failed += res.failed ? 1 : 0;
+                c.bytes += bytes;
+                c.nanos += nanos;
+                c.variables += res.defs.size();
+                c.hosts += hosts.size();
+                c.groups += groups.size();
+            }
+            if (slowest.size() < keep || (!slowest.isEmpty() && slowest.peek().nanos < nanos)) {
+                slowest.add(new Timed(res.file.getPath(), kind, parser, bytes, nanos));
+                if (slowest.size() > keep) {
+                    slowest.poll();
+                }
+            }
+        }
+    }
+
+    private static Counter counter(Map<String, Counter> map, String key) {
+        Counter c = map.get(key);
+        if (null == c) {
+            c = new Counter();
+            map.put(key, c);
+        }
+        return c;
+    }
+
+    /**
+     * A file or directory the scanner does not know what to do with.
+     *
+     * @param f The file.
+     */
+    public synchronized void unrecognized(File f) {
+        unrecognized.add(f.getPath());
+    }
+
+    /**
+     * Set a named total, like the number of hosts or cache hits.
+     *
+     * @param name Name.
+     * @param value Value.
+     */
+    public synchronized void count(String name, long value) {
+        counters.put(name, value);
+    }
+
+    /**
+     * Set the totals of the model.
+     *
+     * @param main Scanned model.
+     */
+    public void model(Main main) {
+        Set<String> hosts = new TreeSet<>();
+        for (Set<String> h : main.session.groups.values()) {
+            hosts.addAll(h);
+        }
+        Set<String> groups = new TreeSet<>(main.session.groups.keySet());
+        for (Map.Entry<String, Set<String>> e : main.session.children.entrySet()) {
+            groups.add(e.getKey());
+            groups.addAll(e.getValue());
+        }
+        long definitions = 0;
+        for (List<Variable> lv : main.session.vars.values()) {
+            definitions += lv.size();
+        }
+        count("model.files", main.session.files.size());
+        count("model.variables", main.session.vars.size());
+        count("model.definitions", definitions);
+        count("model.hosts", hosts.size());
+        count("model.groups", groups.size());
+        count("model.playbooks", main.playbooks.size());
+        count("model.roles", main.roleFiles.size());
+        count("model.graph.nodes", main.graph.getNodes().size());
+    }
+
+    /**
+     * Write the report.
+     *
+     * @param out Receives one JSON object.
+     * @throws IOException From out.
+     */
+    public synchronized void write(Appendable out) throws IOException {
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ROOT);
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        out.append("{\"version\":").append(Integer.toString(VERSION));
+        out.append(",\"started\":");
+        Utils.json(iso.format(new Date(started)), out);
+        out.append(",\"wallMs\":").append(ms(System.nanoTime() - startNanos));
+        out.append(",\"phases\":{");
+        String sep = "";
+        for (Map.Entry<String, long[]> e : phases.entrySet()) {
+            out.append(sep);
+            sep = ",";
+            Utils.json(e.getKey(), out);
+            out.append(":{\"ms\":").append(ms(e.getValue()[0]));
+            out.append(",\"count\":").append(Long.toString(e.getValue()[1])).append('}');
+        }
+        out.append("},\"counters\":{");
+        sep = "";
+        for (Map.Entry<String, Long> e : counters.entrySet()) {
+            out.append(sep);
+            sep = ",";
+            Utils.json(e.getKey(), out);
+            out.append(':').append(Long.toString(e.getValue()));
+        }
+        out.append("},\"kinds\":");
+        counters(kinds, out);
+        out.append(",\"parsers\":");
+        counters(parsers, out);
+        out.append(",\"slowest\":[");
+        List<Timed> list = new ArrayList<>(slowest);
+        Collections.sort(list, Collections.reverseOrder());
+        sep = "";
+        for (Timed t : list) {
+            out.append(sep);
+            sep = ",";
+            out.append("{\"file\":");
+            Utils.json(t.path, out);
+            out.append(",\"kind\":");
+            Utils.json(t.kind, out);
+            out.append(",\"parser\":");
+            Utils.json(t.parser, out);
+            out.append(",\"bytes\":").append(Long.toString(t.bytes));
+            out.append(",\"ms\":").append(ms(t.nanos)).append('}');
+        }
+        out.append("],\"unrecognized\":[");
+        sep = "";
+        for (String path : unrecognized) {
+            out.append(sep);
+            sep = ",";
+            Utils.json(path, out);
+        }
+        out.append("]}\n");
+    }
+
+    private static void counters(Map<String, Counter> map, Appendable out) throws IOException {
+        out.append('{');
+        String sep = "";
+        for (Map.Entry<String, Counter> e : map.entrySet()) {
+            Counter c = e.getValue();
+            out.append(sep);
+            sep = ",";
+            Utils.json(e.getKey(), out);
+            out.append(":{\"files\":").append(Long.toString(c.files));
+            out.append(",\"failed\":").append(Long.toString(c.failed));
+            out.append(",\"bytes\":").append(Long.toString(c.bytes));
+            out.append(",\"ms\":").append(ms(c.nanos));
+            out.append(",\"variables\":").append(Long.toString(c.variables));
+            out.append(",\"hosts\":").append(Long.toString(c.hosts));
+            out.append(",\"groups\":").append(Long.toString(c.groups)).append('}');
+        }
+        out.append('}');
+    }
+
+    private static String ms(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Symbol table: every distinct string gets a small int id, so each string is
+ * stored once however often it is used. Not thread safe for writing.
+ *
+ * @author walter
+ */
+public class Symbols {
+
+    /**
+     * Id used for null.
+     */
+    public static final int NONE = -1;
+
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * @param s String or null.
+     * @return The id of the string, a new one if not seen before.
+     */
+    public int intern(String s) {
+        if (null == s) {
+            return NONE;
+        }
+        Integer id = ids.get(s);
+        if (null == id) {
+            id = strings.size();
+            strings.add(s);
+            ids.put(s, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param s String or null.
+     * @return The id of the string or NONE if not known.
+     */
+    public int find(String s) {
+        if (null == s) {
+            return NONE;
+        }
+        Integer id = ids.get(s);
+        return null == id ? NONE : id;
+    }
+
+    /**
+     * @param id Id or NONE.
+     * @return The string, null for NONE.
+     */
+    public String get(int id) {
+        return NONE == id ? null : strings.get(id);
+    }
+
+    /**
+     * @return Number of symbols.
+     */
+    public int size() {
+        return strings.size();
+    }
+
+    public void clear() {
+        ids.clear();
+        strings.clear();
+    }
+}
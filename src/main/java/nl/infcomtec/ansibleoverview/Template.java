@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A text with numbered slots, split once into literals and slots so that
+ * filling it in is just a series of writes. "{0}" is replaced by argument 0
+ * as is, "{0:e}" by argument 0 passed through the escaper of the renderer. A
+ * '{' that does not start a slot is literal text.
+ *
+ * @author walter
+ */
+public class Template {
+
+    /**
+     * literals[i] comes before slot i, the last one after the last slot.
+     */
+    private final String[] literals;
+    private final int[] slots;
+    private final boolean[] escaped;
+
+    private Template(String[] literals, int[] slots, boolean[] escaped) {
+        this.literals = literals;
+        this.slots = slots;
+        this.escaped = escaped;
+    }
+
+    /**
+     * @param pattern Text with slots.
+     * @return The compiled template.
+     */
+    public static Template compile(String pattern) {
+        List<String> lits = new ArrayList<>();
+        List<Integer> slotList = new ArrayList<>();
+        List<Boolean> escList = new ArrayList<>();
+        StringBuilder lit = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            int j = i + 1;
+            while (c == '{' && j < pattern.length() && Character.isDigit(pattern.charAt(j))) {
+                j++;
+            }
+            boolean esc = pattern.startsWith(":e", j);
+            int close = esc ? j + 2 : j;
+            if (c == '{' && j > i + 1 && close < pattern.length() && pattern.charAt(close) == '}') {
+                lits.add(lit.toString());
+                lit.setLength(0);
+                slotList.add(Integer.parseInt(pattern.substring(i + 1, j)));
+                escList.add(esc);
+                i = close + 1;
+            } else {
+                lit.append(c);
+                i++;
+            }
+        }
+        lits.add(lit.toString());
+        int[] slots = new int[slotList.size()];
+        boolean[] escaped = new boolean[slots.length];
+        for (int s = 0; s < slots.length; s++) {
+            slots[s] = slotList.get(s);
+            escaped[s] = escList.get(s);
+        }
+        return new Template(lits.toArray(new String[0]), slots, escaped);
+    }
+
+    /**
+     * Fill in the template.
+     *
+     * @param r Renderer to write to.
+     * @param args Slot values, null is written as nothing.
+     * @throws IOException From the output.
+     */
+    public void write(Renderer r, CharSequence... args) throws IOException {
+        for (int s = 0; s < slots.length; s++) {
+            r.out.write(literals[s]);
+            CharSequence arg = args[slots[s]];
+            if (null != arg) {
+                if (escaped[s]) {
+                    r.escape(arg);
+                } else {
+                    r.out.append(arg);
+                }
+            }
+        }
+        r.out.write(literals[slots.length]);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plain text: file contents as is under a header line, variables as tab
+ * separated lines with "-" for an empty field.
+ *
+ * @author walter
+ */
+public class TextRenderer extends Renderer {
+
+    private static final Template PLAYBOOK = Template.compile("--- {0}\n");
+    private static final Template ROLE_FILE = Template.compile("--- {0}/{1}/{2}\n");
+    private static final Template VAR_ROW = Template.compile("{0}\t{1:e}\t{2}\t{3}\t{4}\t{5}\n");
+    private static final Template VAR_ROW_USES = Template.compile("{0}\t{1:e}\t{2}\t{3}\t{4}\t{5}\t");
+    private static final Template EFFECTIVE_ROW = Template.compile("{0}\t{1}\t{2:e}\t{3}\t{4}\n");
+
+    private String role;
+    private String part;
+
+    public TextRenderer(Writer out) {
+        super(out);
+    }
+
+    @Override
+    protected Renderer newInstance(Writer out) {
+        return new TextRenderer(out);
+    }
+
+    /**
+     * Keeps a value on one line: backslash, tab and line ends are written as
+     * \\, \t, \r and \n.
+     */
+    @Override
+    public void escape(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                default:
+                    out.write(c);
+                    break;
+            }
+        }
+    }
+
+    private static String dash(String s) {
+        return null == s ? "-" : s;
+    }
+
+    @Override
+    public void beginPlaybooks() throws IOException {
+        out.write("PLAYBOOKS\n\n");
+    }
+
+    @Override
+    public void playbook(String name, FileId file) throws IOException {
+        PLAYBOOK.write(this, name);
+        contents(file);
+    }
+
+    @Override
+    public void endPlaybooks() throws IOException {
+    }
+
+    @Override
+    public void beginRoles() throws IOException {
+        out.write("ROLES\n\n");
+    }
+
+    @Override
+    public void beginRole(String role) throws IOException {
+        this.role = role;
+    }
+
+    @Override
+    public void roleFile(String role, String part, String name, FileId file) throws IOException {
+        if (!part.isEmpty()) {
+            this.part = part;
+        }
+        ROLE_FILE.write(this, this.role, this.part, name);
+        contents(file);
+    }
+
+    @Override
+    public void endRole() throws IOException {
+    }
+
+    @Override
+    public void duplicates() throws IOException {
+        out.write("DUPLICATE FILES\n\n");
+        out.write("Size\tCopies\tFiles\n");
+        for (ContentPool.Cluster c : pool.getClusters()) {
+            out.write(c.getOriginal().length() + "\t" + (c.files.size() - 1));
+            for (FileId f : c.files) {
+                out.write('\t');
+                out.write(pool.label(f));
+            }
+            out.write('\n');
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void endRoles() throws IOException {
+    }
+
+    @Override
+    public void beginVariables() throws IOException {
+        out.write("VARIABLES\n\n");
+        out.write(null == usages ? "Name\tValue\tRole\tHost\tGroup\tFile\n" : "Name\tValue\tRole\tHost\tGroup\tFile\tUsed in\n");
+    }
+
+    @Override
+    public void variable(String name, Variable v, Collection<UsageIndex.Usage> uses) throws IOException {
+        if (null == usages) {
+            VAR_ROW.write(this, name, v.value, dash(v.role), dash(v.host), dash(v.group), v.fileId.path);
+            return;
+        }
+        VAR_ROW_USES.write(this, name, v.value, dash(v.role), dash(v.host), dash(v.group), v.fileId.path);
+        if (null == uses || uses.isEmpty()) {
+            out.write('-');
+        } else {
+            uses(uses);
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Uses separated by spaces, as label:lines.
+     */
+    private void uses(Collection<UsageIndex.Usage> uses) throws IOException {
+        boolean first = true;
+        for (UsageIndex.Usage u : uses) {
+            if (!first) {
+                out.write(' ');
+            }
+            first = false;
+            out.write(u.label + ":" + u.getLines());
+        }
+    }
+
+    @Override
+    public void endVariables() throws IOException {
+        out.write('\n');
+    }
+
+    @Override
+    public void usage(List<String> unused, Map<String, Collection<UsageIndex.Usage>> undefined) throws IOException {
+        out.write("VARIABLE USAGE\n\n");
+        for (String name : unused) {
+            out.write("unused\t" + name + "\n");
+        }
+        for (Map.Entry<String, Collection<UsageIndex.Usage>> e : undefined.entrySet()) {
+            out.write("undefined\t" + e.getKey() + "\t");
+            uses(e.getValue());
+            out.write('\n');
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void beginDependencies() throws IOException {
+        out.write("DEPENDENCIES\n\n");
+        out.write("Name\tUses\tUsed by\tAll dependencies\n");
+    }
+
+    @Override
+    public void dependency(DependencyGraph.Node node, boolean present, Collection<DependencyGraph.Node> uses,
+            Collection<DependencyGraph.Node> usedBy, Collection<DependencyGraph.Node> all) throws IOException {
+        out.write(node.toString());
+        if (!present) {
+            out.write(" (missing)");
+        }
+        out.write('\t');
+        nodes(uses, ", ");
+        out.write('\t');
+        nodes(usedBy, ", ");
+        out.write('\t');
+        nodes(all, ", ");
+        out.write('\n');
+    }
+
+    @Override
+    public void endDependencies(List<List<DependencyGraph.Node>> cycles) throws IOException {
+        for (List<DependencyGraph.Node> cycle : cycles) {
+            out.write("cycle\t");
+            nodes(cycle, " -> ");
+            out.write('\n');
+        }
+        out.write('\n');
+    }
+
+    @Override
+    public void beginEffective() throws IOException {
+        out.write("EFFECTIVE VALUES\n\n");
+        out.write("Host\tName\tValue\tLevel\tFile\n");
+    }
+
+    @Override
+    public void effective(String host, String name, Variable v) throws IOException {
+        EFFECTIVE_ROW.write(this, host, name, v.value, v.level.toString(), v.fileId.path);
+    }
+
+    @Override
+    public void endEffective() throws IOException {
+        out.write('\n');
+    }
+
+    @Override
+    protected void text(CharSequence text) throws IOException {
+        out.append(text);
+        if (text.length() > 0 && text.charAt(text.length() - 1) != '\n') {
+            out.write('\n');
+        }
+        out.write('\n');
+    }
+
+    @Override
+    protected void binary(long size) throws IOException {
+        out.write("(binary file, " + size + " bytes)\n\n");
+    }
+
+    @Override
+    protected void unreadable() throws IOException {
+        out.write("(unreadable file)\n\n");
+    }
+
+    @Override
+    protected void duplicate(FileId original) throws IOException {
+        out.write("(same as " + pool.label(original) + ")\n\n");
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough TOML for Ansible inventories: tables, dotted keys, strings,
+ * arrays and inline tables. Other values (numbers, booleans, dates) are kept
+ * as their text. The result has the same shape SnakeYAML would produce for
+ * the equivalent YAML inventory.
+ *
+ * @author walter
+ */
+public class TomlReader {
+
+    private final String text;
+    private int pos;
+    private int line = 1;
+
+    private TomlReader(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Parse a TOML document.
+     *
+     * @param text The document.
+     * @return Nested maps, in document order.
+     * @throws IOException On anything not understood, with the line number.
+     */
+    public static Map<String, Object> parse(String text) throws IOException {
+        return new TomlReader(text).document();
+    }
+
+    private Map<String, Object> document() throws IOException {
+        Map<String, Object> root = new LinkedHashMap<>();
+        Map<String, Object> table = root;
+        while (skipSpace(true)) {
+            char c = text.charAt(pos);
+            if (c == '[') {
+                pos++;
+                if (peek() == '[') {
+                    throw error("arrays of tables are not supported");
+                }
+                List<String> path = key();
+                expect(']');
+                table = root;
+                for (String k : path) {
+                    table = subTable(table, k);
+                }
+            } else {
+                List<String> path = key();
+                expect('=');
+                Map<String, Object> target = table;
+                for (int i = 0; i < path.size() - 1; i++) {
+                    target = subTable(target, path.get(i));
+                }
+                target.put(path.get(path.size() - 1), value());
+            }
+            endOfLine();
+        }
+        return root;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> subTable(Map<String, Object> table, String key) throws IOException {
+        Object o = table.get(key);
+        if (null == o) {
+            Map<String, Object> sub = new LinkedHashMap<>();
+            table.put(key, sub);
+            return sub;
+        }
+        if (o instanceof Map) {
+            return (Map<String, Object>) o;
+        }
+        throw error(key + " is not a table");
+    }
+
+    private List<String> key() throws IOException {
+        List<String> ret = new ArrayList<>();
+        do {
+            skipSpace(false);
+            char c = peek();
+            if (c == '"' || c == '\'') {
+                ret.add(string());
+            } else {
+                int start = pos;
+                while (pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos))
+                        || text.charAt(pos) == '_' || text.charAt(pos) == '-')) {
+                    pos++;
+                }
+                if (start == pos) {
+                    throw error("key expected");
+                }
+                ret.add(text.substring(start, pos));
+            }
+            skipSpace(false);
+        } while (accept('.'));
+        return ret;
+    }
+
+    private Object value() throws IOException {
+        skipSpace(false);
+        char c = peek();
+        if (c == '"' || c == '\'') {
+            return string();
+        }
+        if (c == '[') {
+            pos++;
+            List<Object> ret = new ArrayList<>();
+            while (skipSpace(true) && peek() != ']') {
+                ret.add(value());
+                skipSpace(true);
+                if (!accept(',')) {
+                    break;
+                }
+            }
+            skipSpace(true);
+            expect(']');
+            return ret;
+        }
+        if (c == '{') {
+            pos++;
+            Map<String, Object> ret = new LinkedHashMap<>();
+            skipSpace(false);
+            if (accept('}')) {
+                return ret;
+            }
+            do {
+                List<String> path = key();
+                expect('=');
+                Map<String, Object> target = ret;
+                for (int i = 0; i < path.size() - 1; i++) {
+                    target = subTable(target, path.get(i));
+                }
+                target.put(path.get(path.size() - 1), value());
+                skipSpace(false);
+            } while (accept(','));
+            expect('}');
+            return ret;
+        }
+        int start = pos;
+        while (pos < text.length() && ",]}#\r\n".indexOf(text.charAt(pos)) < 0) {
+            pos++;
+        }
+        String ret = text.substring(start, pos).trim();
+        if (ret.isEmpty()) {
+            throw error("value expected");
+        }
+        return ret;
+    }
+
+    private String string() throws IOException {
+        char quote = text.charAt(pos);
+        boolean multi = text.startsWith(String.valueOf(new char[]{quote, quote, quote}), pos);
+        pos += multi ? 3 : 1;
+        if (multi && peek() == '\n') {
+            pos++;
+            line++;
+        } else if (multi && text.startsWith("\r\n", pos)) {
+            pos += 2;
+            line++;
+        }
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (pos >= text.length()) {
+                throw error("unterminated string");
+            }
+            char c = text.charAt(pos++);
+            if (c == quote && (!multi || text.startsWith(String.valueOf(new char[]{quote, quote}), pos))) {
+                pos += multi ? 2 : 0;
+                return sb.toString();
+            }
+            if (c == '\n') {
+                if (!multi) {
+                    throw error("unterminated string");
+                }
+                line++;
+            }
+            if (c == '\\' && quote == '"') {
+                c = pos < text.length() ? text.charAt(pos++) : ' ';
+                switch (c) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                    case 'U':
+                        int n = c == 'u' ? 4 : 8;
+                        if (pos + n > text.length()) {
+                            throw error("bad escape");
+                        }
+                        try {
+                            sb.appendCodePoint(Integer.parseInt(text.substring(pos, pos + n), 16));
+                        } catch (IllegalArgumentException ex) {
+                            throw error("bad escape");
+                        }
+                        pos += n;
+                        break;
+                    default:
+                        sb.append(c);
+                        break;
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Skip blanks and comments, and line ends if asked to.
+     *
+     * @return false at the end of the text.
+     */
+    private boolean skipSpace(boolean lines) {
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '#') {
+                while (pos < text.length() && text.charAt(pos) != '\n') {
+                    pos++;
+                }
+            } else if (c == '\n' && lines) {
+                line++;
+                pos++;
+            } else if (c == ' ' || c == '\t' || c == '\uFEFF' || (c == '\r' && lines)) {
+                pos++;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void endOfLine() throws IOException {
+        skipSpace(false);
+        if (pos < text.length() && text.charAt(pos) != '\n' && text.charAt(pos) != '\r') {
+            throw error("end of line expected");
+        }
+    }
+
+    private char peek() {
+        return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private boolean accept(char c) {
+        if (peek() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) throws IOException {
+        skipSpace(false);
+        if (!accept(c)) {
+            throw error("'" + c + "' expected");
+        }
+    }
+
+    private IOException error(String msg) {
+        return new IOException("TOML line " + line + ": " + msg);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Where variables are used: variable name to the files and lines that use it,
+ * from the uses JinjaScanner found during the scan. Kept up to date with the
+ * files, so joined with the variable definitions it tells which variables are
+ * defined but never used and which are used but never defined.
+ * <p>
+ * Names that start with "ansible_" (facts and connection settings) and the
+ * special variables Ansible provides are left out of both reports.
+ *
+ * @author walter
+ */
+public class UsageIndex {
+
+    /**
+     * Special variables, always defined.
+     */
+    private static final Set<String> MAGIC = new HashSet<>(Arrays.asList(
+            "item", "loop", "hostvars", "groups", "group_names", "inventory_hostname",
+            "inventory_hostname_short", "inventory_dir", "inventory_file", "play_hosts",
+            "playbook_dir", "role_name", "role_path", "role_names", "omit", "environment",
+            "vars", "varnames", "lookup", "query", "q", "range", "dict", "lipsum", "cycler",
+            "joiner", "namespace", "self", "super", "caller", "varargs", "kwargs"));
+
+    /**
+     * The lines of one file that use a name.
+     */
+    public static class Usage {
+
+        public final FileId file;
+        /**
+         * Short name of the file, like "role/part/name".
+         */
+        public final String label;
+        /**
+         * Is the file shown in the document (a playbook or role file)?
+         */
+        public final boolean row;
+        /**
+         * Line numbers, ascending.
+         */
+        public final int[] lines;
+
+        Usage(FileId file, String label, boolean row, int[] lines) {
+            this.file = file;
+            this.label = label;
+            this.row = row;
+            this.lines = lines;
+        }
+
+        /**
+         * @return The line numbers, comma separated.
+         */
+        public String getLines() {
+            StringBuilder sb = new StringBuilder();
+            for (int l : lines) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(l);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Uses by name, per name in FileId order.
+     */
+    private final TreeMap<String, TreeMap<Integer, Usage>> uses = new TreeMap<>();
+    /**
+     * Names a file uses, to remove them again.
+     */
+    private final Map<Integer, Set<String>> byFile = new HashMap<>();
+    /**
+     * Names defined in the files themselves, with the number of files.
+     */
+    private final Map<String, Integer> locals = new HashMap<>();
+    private final Map<Integer, Set<String>> localsByFile = new HashMap<>();
+
+    /**
+     * Add what a file uses.
+     *
+     * @param f The file.
+     * @param label Short name of the file.
+     * @param row Is the file shown in the document?
+     * @param list Its uses, in text order.
+     * @param defs Definitions that count as defined without being variables
+     * (role defaults and vars).
+     */
+    public void add(FileId f, String label, boolean row, List<ScanResult.Use> list, List<ScanResult.Def> defs) {
+        TreeMap<String, TreeSet<Integer>> lines = new TreeMap<>();
+        Set<String> defined = new TreeSet<>();
+        for (ScanResult.Def d : defs) {
+            defined.add(d.name);
+        }
+        for (ScanResult.Use u : list) {
+            if (u.local) {
+                defined.add(u.name);
+            } else {
+                TreeSet<Integer> ls = lines.get(u.name);
+                if (null == ls) {
+                    ls = new TreeSet<>();
+                    lines.put(u.name, ls);
+                }
+                ls.add(u.line);
+            }
+        }
+        for (Map.Entry<String, TreeSet<Integer>> e : lines.entrySet()) {
+            TreeMap<Integer, Usage> byId = uses.get(e.getKey());
+            if (null == byId) {
+                byId = new TreeMap<>();
+                uses.put(e.getKey(), byId);
+            }
+            int[] ls = new int[e.getValue().size()];
+            int i = 0;
+            for (int l : e.getValue()) {
+                ls[i++] = l;
+            }
+            byId.put(f.id, new Usage(f, label, row, ls));
+        }
+        if (!lines.isEmpty()) {
+            byFile.put(f.id, lines.keySet());
+        }
+        if (!defined.isEmpty()) {
+            localsByFile.put(f.id, defined);
+            for (String name : defined) {
+                Integer n = locals.get(name);
+                locals.put(name, null == n ? 1 : n + 1);
+            }
+        }
+    }
+
+    /**
+     * Forget what a file uses.
+     *
+     * @param f The file.
+     */
+    public void remove(FileId f) {
+        Set<String> names = byFile.remove(f.id);
+        if (null != names) {
+            for (String name : names) {
+                TreeMap<Integer, Usage> byId = uses.get(name);
+                byId.remove(f.id);
+                if (byId.isEmpty()) {
+                    uses.remove(name);
+                }
+            }
+        }
+        Set<String> defined = localsByFile.remove(f.id);
+        if (null != defined) {
+            for (String name : defined) {
+                int n = locals.get(name) - 1;
+                if (n == 0) {
+                    locals.remove(name);
+                } else {
+                    locals.put(name, n);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        uses.clear();
+        byFile.clear();
+        locals.clear();
+        localsByFile.clear();
+    }
+
+    /**
+     * @param name Variable name.
+     * @return The files that use it, in FileId order; empty if none.
+     */
+    public Collection<Usage> get(String name) {
+        TreeMap<Integer, Usage> byId = uses.get(name);
+        return null == byId ? Collections.<Usage>emptyList() : byId.values();
+    }
+
+    /**
+     * @param f A file.
+     * @return true if it uses any variable.
+     */
+    public boolean uses(FileId f) {
+        return byFile.containsKey(f.id);
+    }
+
+    /**
+     * @return All names used, sorted.
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(uses.keySet());
+    }
+
+    /**
+     * Variables that are defined but not used anywhere. Settings from
+     * ansible.cfg are not variables a file would use and are left out.
+     *
+     * @param vars Variable definitions.
+     * @return Names, sorted.
+     */
+    public List<String> unused(Map<String, List<Variable>> vars) {
+        List<String> ret = new ArrayList<>();
+        for (Map.Entry<String, List<Variable>> e : vars.entrySet()) {
+            String name = e.getKey();
+            if (uses.containsKey(name) || ignored(name)) {
+                continue;
+            }
+            for (Variable v : e.getValue()) {
+                if (v.level != Precedence.Global) {
+                    ret.add(name);
+                    break;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Variables that are used but not defined, not even by the files
+     * themselves.
+     *
+     * @param vars Variable definitions.
+     * @return Names with their uses, sorted.
+     */
+    public TreeMap<String, Collection<Usage>> undefined(Map<String, List<Variable>> vars) {
+        TreeMap<String, Collection<Usage>> ret = new TreeMap<>();
+        for (Map.Entry<String, TreeMap<Integer, Usage>> e : uses.entrySet()) {
+            String name = e.getKey();
+            if (!vars.containsKey(name) && !locals.containsKey(name) && !ignored(name)) {
+                ret.put(name, e.getValue().values());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param vars Variable definitions.
+     * @return Is there anything unused or undefined to report?
+     */
+    public boolean reports(Map<String, List<Variable>> vars) {
+        return !unused(vars).isEmpty() || !undefined(vars).isEmpty();
+    }
+
+    private static boolean ignored(String name) {
+        return name.startsWith("ansible_") || MAGIC.contains(name);
+    }
+}
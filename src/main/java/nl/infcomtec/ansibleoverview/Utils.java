@@ -3,13 +3,19 @@
  */
 package nl.infcomtec.ansibleoverview;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * HTML and other utilities.
@@ -18,27 +24,98 @@ import java.util.logging.Logger;
  */
 public class Utils {
 
+    /**
+     * Files at least this large are memory mapped instead of read.
+     */
+    public static final long MAP_THRESHOLD = 1 << 20;
 
     /**
-     * Method meant to figure out what "type" of Ansible file we have by
-     * checking the first non-whitespace character.
+     * Read a whole file in one go.
      *
-     * @param path File to scan.
-     * @return The first non-whitespace character if found, otherwise '?'.
+     * @param path File to read.
+     * @return The contents, memory mapped for large files.
+     * @throws IOException If the file cannot be read.
      */
-    public static char firstChar(File path) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-            int intChar;
-            while ((intChar = reader.read()) != -1) { // Read character by character
-                char ch = (char) intChar;
-                if (!Character.isWhitespace(ch)) {
-                    return ch; // Return the first non-whitespace character
-                }
+    public static ByteBuffer read(File path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size >= MAP_THRESHOLD) {
+                return ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
             }
-        } catch (IOException ex) {
-            Logger.getLogger(Utils.class.getName()).log(Level.SEVERE, "Failed to read file: " + path, ex);
         }
-        return '?'; // Return '?' if no non-whitespace character is found or in case of an error
+        return ByteBuffer.wrap(Files.readAllBytes(path.toPath()));
+    }
+
+    /**
+     * Decode UTF-8 contents, dropping a byte order mark.
+     *
+     * @param data Contents, not consumed.
+     * @param lenient Replace malformed input, like FileReader does, instead
+     * of failing on it.
+     * @return The text.
+     * @throws IOException On malformed input when not lenient.
+     */
+    public static String decode(ByteBuffer data, boolean lenient) throws IOException {
+        CodingErrorAction action = lenient ? CodingErrorAction.REPLACE : CodingErrorAction.REPORT;
+        CharsetDecoder dec = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(action).onUnmappableCharacter(action);
+        CharBuffer cb = dec.decode(data.duplicate());
+        if (cb.length() > 0 && cb.charAt(0) == '\uFEFF') {
+            cb.position(1);
+        }
+        return cb.toString();
+    }
+
+    private static final ThreadLocal<CharsetDecoder> TEXT_DECODER = new ThreadLocal<CharsetDecoder>() {
+        @Override
+        protected CharsetDecoder initialValue() {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+    };
+    private static final ThreadLocal<CharBuffer> TEXT_BUFFER = new ThreadLocal<>();
+
+    /**
+     * @param data Contents, not consumed.
+     * @return SHA-256 of the contents.
+     */
+    public static byte[] sha256(ByteBuffer data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(data.duplicate());
+            return md.digest();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // every JRE has SHA-256
+        }
+    }
+
+    /**
+     * Decode file contents for display, reusing one buffer per thread, so
+     * rendering needs no more memory than the largest file.
+     *
+     * @param data Contents, not consumed.
+     * @return The text, valid until the next call on this thread; null if
+     * the contents contain NUL bytes or are not valid UTF-8.
+     */
+    public static CharBuffer text(ByteBuffer data) {
+        for (int i = data.position(); i < data.limit(); i++) {
+            if (0 == data.get(i)) {
+                return null;
+            }
+        }
+        CharBuffer cb = TEXT_BUFFER.get();
+        if (null == cb || cb.capacity() < data.remaining()) {
+            cb = CharBuffer.allocate(Math.max(data.remaining(), 8192));
+            TEXT_BUFFER.set(cb);
+        }
+        cb.clear();
+        CharsetDecoder dec = TEXT_DECODER.get().reset();
+        if (dec.decode(data.duplicate(), cb, true).isError() || dec.flush(cb).isError()) {
+            return null;
+        }
+        cb.flip();
+        return cb;
     }
 
     public static String section(String section, List<String> items) {
@@ -65,35 +142,103 @@ public class Utils {
         if (text == null) {
             return "";
         }
-        int amp = text.indexOf('&');
-        if (amp >= 0) {
-            int semi = text.indexOf(';', amp);
-            if (semi > amp && semi - amp < 7) { // seems a valid html entity
-                StringBuilder sb = new StringBuilder();
-                if (amp > 0) {
-                    sb.append(html(text.substring(0, amp)));
-                }
-                sb.append(text.substring(amp, semi));
-                if (semi < text.length() - 1) {
-                    sb.append(html(text.substring(semi + 1)));
+        if (plain(text, 0, text.length())) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length() + 16);
+        try {
+            html(text, sb);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // StringBuilder does not throw
+        }
+        return sb.toString();
+    }
+
+    /**
+     * As html(String), written to out in a single pass. An entity is kept if
+     * its ';' follows the '&amp;' within 7 characters; the ';' itself is
+     * dropped. Once an '&amp;' is found that does not start an entity, all of
+     * the rest is encoded, entities included.
+     *
+     * @param text Text to encode, null is taken as empty.
+     * @param out Receives the encoded text.
+     * @throws IOException From out.
+     */
+    public static void html(CharSequence text, Appendable out) throws IOException {
+        if (text != null) {
+            html(text, 0, text.length(), out);
+        }
+    }
+
+    /**
+     * As html(CharSequence, Appendable) for text[start, end), without
+     * creating a substring.
+     *
+     * @param text Text to encode.
+     * @param start First character.
+     * @param end End (exclusive).
+     * @param out Receives the encoded text.
+     * @throws IOException From out.
+     */
+    public static void html(CharSequence text, int start, int end, Appendable out) throws IOException {
+        int pos = start;
+        while (pos < end) {
+            int amp = indexOf(text, '&', pos, end);
+            if (amp >= 0) {
+                int semi = indexOf(text, ';', amp, end);
+                if (semi > amp && semi - amp < 7) { // seems a valid html entity
+                    htmlChars(text, pos, amp, out);
+                    out.append(text, amp, semi);
+                    pos = semi + 1;
+                    continue;
                 }
-                return sb.toString();
             }
+            htmlChars(text, pos, end, out);
+            return;
         }
-        StringBuilder ret = new StringBuilder();
-        for (char c : text.toCharArray()) {
-            ret.append(htmlChar(c));
+    }
+
+    /**
+     * Encode text[from, to) character by character.
+     */
+    private static void htmlChars(CharSequence text, int from, int to, Appendable out) throws IOException {
+        int run = from;
+        for (int i = from; i < to; i++) {
+            String entity = entity(text.charAt(i));
+            if (null != entity) {
+                out.append(text, run, i).append(entity);
+                run = i + 1;
+            }
         }
-        return ret.toString();
+        out.append(text, run, to);
     }
 
     /**
-     * Translates needed characters to entities.
-     *
-     * @param c Possibly dangerous character.
-     * @return The character as a safe string.
+     * Does text[from, to) come out of html() unchanged?
      */
-    public static String htmlChar(char c) {
+    static boolean plain(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (null != entity(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int indexOf(CharSequence text, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param c Character.
+     * @return Its entity or null if it needs none.
+     */
+    private static String entity(char c) {
         switch (c) {
             case '"':
                 return ("&quot;");
@@ -106,8 +251,75 @@ public class Utils {
             case '€':
                 return ("&euro;");
             default:
-                return (Character.toString(c));
+                return null;
+        }
+    }
+
+    /**
+     * Translates needed characters to entities.
+     *
+     * @param c Possibly dangerous character.
+     * @return The character as a safe string.
+     */
+    public static String htmlChar(char c) {
+        String entity = entity(c);
+        return null == entity ? Character.toString(c) : entity;
+    }
+
+    /**
+     * Write a JSON string literal.
+     *
+     * @param text Text, null is written as null.
+     * @param out Receives the literal.
+     * @throws IOException From out.
+     */
+    public static void json(CharSequence text, Appendable out) throws IOException {
+        if (null == text) {
+            out.append("null");
+            return;
         }
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < ' ' || c == '\u2028' || c == '\u2029') {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+                    break;
+            }
+        }
+        out.append('"');
     }
 
+    /**
+     * @param text Text, null gives null.
+     * @return The JSON string literal.
+     */
+    public static String json(CharSequence text) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            json(text, sb);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // StringBuilder does not throw
+        }
+        return sb.toString();
+    }
 }
@@ -3,9 +3,6 @@
  */
 package nl.infcomtec.ansibleoverview;
 
-import java.util.LinkedList;
-import java.util.List;
-
 /**
  * Ansible variable (strictly speaking a constant).
  */
@@ -37,7 +34,6 @@ public class Variable {
     public final String value;
 
     public Variable(String role, String host, String group, FileId fileId, String value) {
-        Main.addHost(group, host);
         this.host = host;
         this.group = group;
         this.role = role;
@@ -56,43 +52,16 @@ public class Variable {
         }
     }
 
-    public static void putVar(String name, String role, String host, String group, FileId fileId, String value) {
-        Variable var = new Variable(role, host, group, fileId, value);
-        List<Variable> get = Main.ansVars.get(name);
-        if (null == get) {
-            get = new LinkedList<>();
-            Main.ansVars.put(name, get);
-        }
-        get.add(var);
-    }
-
-    public static Variable getVar(String name, String host, String group, String role) {
-        List<Variable> get = Main.ansVars.get(name);
-        if (null == get) {
-            return null;
-        }
-        Variable ret = null;
-        for (Variable v : get) {
-            if (null != role && null != v.role && role.equals(v.role)) {
-                if (null == ret || ret.level.ordinal() < v.level.ordinal()) {
-                    ret = v;
-                }
-            }
-            if (null != host && null != v.host && host.equalsIgnoreCase(v.host)) {
-                if (null == ret || ret.level.ordinal() < v.level.ordinal()) {
-                    ret = v;
-                }
-            }
-            if (null != group && null != v.group && group.equals(v.group)) {
-                if (null == ret || ret.level.ordinal() < v.level.ordinal()) {
-                    ret = v;
-                }
-            }
-            if (null == ret || ret.level.ordinal() < v.level.ordinal()) {
-                ret = v;
-            }
-        }
-        return ret;
+    /**
+     * Variable as read back from the VariableStore, no side effects.
+     */
+    Variable(Precedence level, String role, String host, String group, FileId fileId, String value) {
+        this.level = level;
+        this.host = host;
+        this.group = group;
+        this.role = role;
+        this.fileId = fileId;
+        this.value = value;
     }
 
     @Override
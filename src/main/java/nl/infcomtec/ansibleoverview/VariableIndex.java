@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Resolution index over the variables of a session, built once and then
+ * shared by all lookups.
+ * <p>
+ * A variable applies at its own level only: a role variable to its role, a
+ * host variable to its host (case insensitive), a group variable to the hosts
+ * in its group (see GroupTree) and global and default variables everywhere.
+ * Of the applicable variables the highest Precedence wins; between groups the
+ * GroupTree order decides and otherwise the first one scanned wins.
+ *
+ * @author walter
+ */
+public class VariableIndex {
+
+    private final GroupTree tree;
+    /**
+     * name -> best global or default variable.
+     */
+    private final HashMap<String, Variable> global = new HashMap<>();
+    /**
+     * group -> name -> first variable.
+     */
+    private final HashMap<String, HashMap<String, Variable>> byGroup = new HashMap<>();
+    /**
+     * lower case host -> name -> first variable.
+     */
+    private final HashMap<String, HashMap<String, Variable>> byHost = new HashMap<>();
+    /**
+     * role -> name -> first variable.
+     */
+    private final HashMap<String, HashMap<String, Variable>> byRole = new HashMap<>();
+    /**
+     * lower case host -> host as first seen.
+     */
+    private final TreeMap<String, String> hosts = new TreeMap<>();
+    /**
+     * All variable names, sorted.
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Build the index.
+     *
+     * @param vars Variables by name, each list in scan order.
+     * @param tree Group membership.
+     */
+    public VariableIndex(Map<String, List<Variable>> vars, GroupTree tree) {
+        this.tree = tree;
+        for (String host : tree.getHosts()) {
+            hosts.put(hostKey(host), host);
+        }
+        for (Map.Entry<String, List<Variable>> e : vars.entrySet()) {
+            String name = e.getKey().intern();
+            names.add(name);
+            for (Variable v : e.getValue()) {
+                switch (v.level) {
+                    case Role:
+                        first(byRole, v.role, name, v);
+                        break;
+                    case Host:
+                        if (!hosts.containsKey(hostKey(v.host))) {
+                            hosts.put(hostKey(v.host), v.host);
+                        }
+                        first(byHost, hostKey(v.host), name, v);
+                        break;
+                    case Group:
+                        first(byGroup, v.group, name, v);
+                        break;
+                    default:
+                        Variable cur = global.get(name);
+                        if (null == cur || cur.level.ordinal() < v.level.ordinal()) {
+                            global.put(name, v);
+                        }
+                        break;
+                }
+            }
+        }
+    }
+
+    private static void first(HashMap<String, HashMap<String, Variable>> scope, String key, String name, Variable v) {
+        HashMap<String, Variable> map = scope.get(key);
+        if (null == map) {
+            map = new HashMap<>();
+            scope.put(key.intern(), map);
+        }
+        if (!map.containsKey(name)) {
+            map.put(name, v);
+        }
+    }
+
+    static String hostKey(String host) {
+        return host.toLowerCase(Locale.ROOT);
+    }
+
+    private static Variable lookup(HashMap<String, HashMap<String, Variable>> scope, String key, String name) {
+        if (null == key) {
+            return null;
+        }
+        HashMap<String, Variable> map = scope.get(key);
+        return null == map ? null : map.get(name);
+    }
+
+    /**
+     * @return Every host, ordered case insensitively.
+     */
+    public Collection<String> getHosts() {
+        return Collections.unmodifiableCollection(hosts.values());
+    }
+
+    /**
+     * @return Every variable name, sorted.
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Groups a host is a member of, directly or indirectly.
+     *
+     * @param host Host name, case insensitive.
+     * @return The groups, lowest precedence first, "all" included.
+     */
+    public List<String> getGroups(String host) {
+        return tree.groupsOf(host);
+    }
+
+    /**
+     * Resolve one variable. Group variables are taken from the given group and
+     * the groups containing it or, without a group, from the groups of the
+     * host.
+     *
+     * @param name Variable.
+     * @param host Host or null.
+     * @param group Group or null.
+     * @param role Role or null.
+     * @return The winning variable or null if none applies.
+     */
+    public Variable resolve(String name, String host, String group, String role) {
+        Variable v = lookup(byRole, role, name);
+        if (null == v && null != host) {
+            v = lookup(byHost, hostKey(host), name);
+        }
+        if (null == v && (null != group || null != host)) {
+            List<String> groups = null != group ? tree.selfAndAncestors(group) : tree.groupsOf(host);
+            for (int i = groups.size() - 1; null == v && i >= 0; i--) {
+                v = lookup(byGroup, groups.get(i), name);
+            }
+        }
+        if (null == v) {
+            v = global.get(name);
+        }
+        return v;
+    }
+
+    /**
+     * Resolve every variable that applies, in one pass over the scopes.
+     *
+     * @param host Host or null.
+     * @param groups Groups, lowest precedence first.
+     * @param role Role or null.
+     * @return Winning variable by name.
+     */
+    public TreeMap<String, Variable> resolveAll(String host, Collection<String> groups, String role) {
+        TreeMap<String, Variable> ret = new TreeMap<>(global);
+        for (String group : groups) {
+            HashMap<String, Variable> map = byGroup.get(group);
+            if (null != map) {
+                ret.putAll(map);
+            }
+        }
+        if (null != host) {
+            HashMap<String, Variable> map = byHost.get(hostKey(host));
+            if (null != map) {
+                ret.putAll(map);
+            }
+        }
+        if (null != role) {
+            HashMap<String, Variable> map = byRole.get(role);
+            if (null != map) {
+                ret.putAll(map);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Everything that applies to a host through itself and its groups.
+     *
+     * @param host Host name.
+     * @return Winning variable by name.
+     */
+    public TreeMap<String, Variable> resolveHost(String host) {
+        return resolveAll(host, tree.groupsOf(host), null);
+    }
+
+    /**
+     * Everything that applies to members of a group.
+     *
+     * @param group Group name.
+     * @return Winning variable by name.
+     */
+    public TreeMap<String, Variable> resolveGroup(String group) {
+        return resolveAll(null, tree.selfAndAncestors(group), null);
+    }
+
+    /**
+     * Everything that applies within a role.
+     *
+     * @param role Role name.
+     * @return Winning variable by name.
+     */
+    public TreeMap<String, Variable> resolveRole(String role) {
+        return resolveAll(null, Collections.<String>emptyList(), role);
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Columnar variable storage.
+ * <p>
+ * Every variable is a row in a set of parallel int columns holding symbol ids
+ * (name, role, host, group), the FileId number and the Precedence. Values
+ * are appended to a single byte pool, one byte per character when they are
+ * all Latin-1 (as nearly every value is), else two. The rows of a name form a linked list
+ * through the next column, in scan order. Read access is the same as the
+ * TreeMap of lists it replaces; the Variable objects are created on demand.
+ * Removed rows stay in the columns until they are a quarter of all rows,
+ * then the store is compacted. Not thread safe for writing.
+ *
+ * @author walter
+ */
+public class VariableStore extends AbstractMap<String, List<Variable>> {
+
+    private static final int NONE = Symbols.NONE;
+    private static final Precedence[] LEVELS = Precedence.values();
+    /**
+     * Compact when more than 1/COMPACT of the rows are removed ones.
+     */
+    private static final int COMPACT = 4;
+    private static final int CAPACITY = 1024;
+    private static final int POOL = 16384;
+    /**
+     * Set in the level of a row whose value takes two bytes per character.
+     */
+    private static final int WIDE = 0x80;
+
+    /**
+     * FileIds by id, the store only keeps the id.
+     */
+    private final Map<Integer, FileId> files;
+    private Symbols symbols = new Symbols();
+    private int rows;
+    /**
+     * Rows no longer in any list.
+     */
+    private int dead;
+    private int[] name = new int[CAPACITY];
+    private int[] role = new int[CAPACITY];
+    private int[] host = new int[CAPACITY];
+    private int[] group = new int[CAPACITY];
+    private int[] file = new int[CAPACITY];
+    private int[] next = new int[CAPACITY];
+    private byte[] level = new byte[CAPACITY];
+    /**
+     * Value of row r is pool[valStart[r], valStart[r + 1]).
+     */
+    private int[] valStart = new int[CAPACITY + 1];
+    private byte[] pool = new byte[POOL];
+    /**
+     * First and last row and row count per name symbol.
+     */
+    private int[] head = new int[256];
+    private int[] tail = new int[256];
+    private int[] count = new int[256];
+    private int names;
+    private String[] sorted;
+
+    /**
+     * @param files FileIds by id, to turn the stored ids back into FileIds.
+     */
+    public VariableStore(Map<Integer, FileId> files) {
+        this.files = files;
+    }
+
+    /**
+     * Append a variable.
+     *
+     * @param varName Name.
+     * @param v Role, host, group, file and value of the variable.
+     */
+    public void add(String varName, Variable v) {
+        int r = addRow(varName, v);
+        int n = name[r];
+        if (0 == count[n]++) {
+            head[n] = r;
+            names++;
+            sorted = null;
+        } else {
+            next[tail[n]] = r;
+        }
+        tail[n] = r;
+    }
+
+    /**
+     * Add a variable among the others of its name, keeping them in FileId
+     * order.
+     *
+     * @param varName Name.
+     * @param v Role, host, group, file and value of the variable.
+     */
+    public void insert(String varName, Variable v) {
+        int r = addRow(varName, v);
+        int n = name[r];
+        int prev = NONE;
+        int cur = 0 == count[n] ? NONE : head[n];
+        while (NONE != cur && file[cur] <= file[r]) {
+            prev = cur;
+            cur = next[cur];
+        }
+        next[r] = cur;
+        if (NONE == prev) {
+            head[n] = r;
+        } else {
+            next[prev] = r;
+        }
+        if (NONE == cur) {
+            tail[n] = r;
+        }
+        if (0 == count[n]++) {
+            names++;
+            sorted = null;
+        }
+    }
+
+    /**
+     * Drop the variables of a name that came from a file. The rows stay in
+     * the columns until enough have been dropped to compact.
+     *
+     * @param varName Name.
+     * @param fileId File.
+     */
+    public void removeFile(String varName, FileId fileId) {
+        int n = symbols.find(varName);
+        if (NONE == n || n >= count.length || 0 == count[n]) {
+            return;
+        }
+        int prev = NONE;
+        for (int cur = head[n]; NONE != cur; cur = next[cur]) {
+            if (file[cur] == fileId.id) {
+                if (NONE == prev) {
+                    head[n] = next[cur];
+                } else {
+                    next[prev] = next[cur];
+                }
+                if (tail[n] == cur) {
+                    tail[n] = prev;
+                }
+                if (0 == --count[n]) {
+                    names--;
+                    sorted = null;
+                }
+                dead++;
+            } else {
+                prev = cur;
+            }
+        }
+        if (dead > rows / COMPACT) {
+            compact();
+        }
+    }
+
+    /**
+     * Copy the live rows, name by name in list order, into fresh columns, a
+     * fresh pool and a fresh symbol table, so the strings only removed rows
+     * used are dropped as well.
+     */
+    private void compact() {
+        int live = rows - dead;
+        int len = Math.max(CAPACITY, live + live / 2);
+        int bytes = 0;
+        for (int n = 0; n < count.length; n++) {
+            if (count[n] > 0) {
+                for (int r = head[n]; NONE != r; r = next[r]) {
+                    bytes += valStart[r + 1] - valStart[r];
+                }
+            }
+        }
+        int[] name2 = new int[len];
+        int[] role2 = new int[len];
+        int[] host2 = new int[len];
+        int[] group2 = new int[len];
+        int[] file2 = new int[len];
+        int[] next2 = new int[len];
+        byte[] level2 = new byte[len];
+        int[] valStart2 = new int[len + 1];
+        byte[] pool2 = new byte[Math.max(POOL, bytes + bytes / 2)];
+        Symbols symbols2 = new Symbols();
+        int[] head2 = new int[head.length];
+        int[] tail2 = new int[head.length];
+        int[] count2 = new int[head.length];
+        int w = 0;
+        for (int n = 0; n < count.length; n++) {
+            if (count[n] > 0) {
+                int n2 = symbols2.intern(symbols.get(n));
+                head2[n2] = w;
+                count2[n2] = count[n];
+                for (int r = head[n]; NONE != r; r = next[r]) {
+                    name2[w] = n2;
+                    role2[w] = symbols2.intern(symbols.get(role[r]));
+                    host2[w] = symbols2.intern(symbols.get(host[r]));
+                    group2[w] = symbols2.intern(symbols.get(group[r]));
+                    file2[w] = file[r];
+                    level2[w] = level[r];
+                    int from = valStart[r];
+                    int vlen = valStart[r + 1] - from;
+                    System.arraycopy(pool, from, pool2, valStart2[w], vlen);
+                    valStart2[w + 1] = valStart2[w] + vlen;
+                    next2[w] = w + 1;
+                    w++;
+                }
+                next2[w - 1] = NONE;
+                tail2[n2] = w - 1;
+            }
+        }
+        int symbolsLen = Math.max(256, symbols2.size());
+        head = Arrays.copyOf(head2, symbolsLen);
+        tail = Arrays.copyOf(tail2, symbolsLen);
+        count = Arrays.copyOf(count2, symbolsLen);
+        symbols = symbols2;
+        name = name2;
+        role = role2;
+        host = host2;
+        group = group2;
+        file = file2;
+        next = next2;
+        level = level2;
+        valStart = valStart2;
+        pool = pool2;
+        rows = w;
+        dead = 0;
+    }
+
+    private int addRow(String varName, Variable v) {
+        if (rows == name.length) {
+            int len = rows * 2;
+            name = Arrays.copyOf(name, len);
+            role = Arrays.copyOf(role, len);
+            host = Arrays.copyOf(host, len);
+            group = Arrays.copyOf(group, len);
+            file = Arrays.copyOf(file, len);
+            next = Arrays.copyOf(next, len);
+            level = Arrays.copyOf(level, len);
+            valStart = Arrays.copyOf(valStart, len + 1);
+        }
+        int r = rows++;
+        name[r] = symbols.intern(varName);
+        role[r] = symbols.intern(v.role);
+        host[r] = symbols.intern(v.host);
+        group[r] = symbols.intern(v.group);
+        file[r] = null == v.fileId ? NONE : v.fileId.id;
+        next[r] = NONE;
+        String value = null == v.value ? "" : v.value;
+        boolean wide = false;
+        for (int i = 0; i < value.length() && !wide; i++) {
+            wide = value.charAt(i) > 0xff;
+        }
+        level[r] = (byte) (v.level.ordinal() | (wide ? WIDE : 0));
+        int at = valStart[r];
+        int end = at + (wide ? 2 : 1) * value.length();
+        if (end > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(end, pool.length * 2));
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (wide) {
+                pool[at++] = (byte) (c >> 8);
+            }
+            pool[at++] = (byte) c;
+        }
+        valStart[r + 1] = end;
+        if (symbols.size() > head.length) {
+            int len = Math.max(symbols.size(), head.length * 2);
+            head = Arrays.copyOf(head, len);
+            tail = Arrays.copyOf(tail, len);
+            count = Arrays.copyOf(count, len);
+        }
+        return r;
+    }
+
+    private Variable row(int r) {
+        return new Variable(LEVELS[level[r] & (WIDE - 1)],
+                symbols.get(role[r]), symbols.get(host[r]), symbols.get(group[r]),
+                NONE == file[r] ? null : files.get(file[r]),
+                value(r));
+    }
+
+    private String value(int r) {
+        int from = valStart[r];
+        int len = valStart[r + 1] - from;
+        if (0 == (level[r] & WIDE)) {
+            return new String(pool, from, len, StandardCharsets.ISO_8859_1);
+        }
+        char[] cs = new char[len / 2];
+        for (int i = 0; i < cs.length; i++) {
+            cs[i] = (char) ((pool[from + 2 * i] & 0xff) << 8 | (pool[from + 2 * i + 1] & 0xff));
+        }
+        return new String(cs);
+    }
+
+    /**
+     * @return Number of rows, including removed ones not yet compacted.
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @return Bytes held by the columns and the pools, an estimate.
+     */
+    public long footprint() {
+        long ret = (long) name.length * (6 * 4 + 1) + (long) valStart.length * 4 + pool.length;
+        ret += (long) head.length * 3 * 4;
+        for (int i = 0; i < symbols.size(); i++) {
+            ret += 40 + 2L * symbols.get(i).length(); // String, its array and the map entry
+        }
+        return ret;
+    }
+
+    @Override
+    public List<Variable> get(Object key) {
+        int n = key instanceof String ? symbols.find((String) key) : NONE;
+        if (NONE == n || n >= count.length || 0 == count[n]) {
+            return null;
+        }
+        List<Variable> ret = new ArrayList<>(count[n]);
+        for (int r = head[n]; NONE != r; r = next[r]) {
+            ret.add(row(r));
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int n = key instanceof String ? symbols.find((String) key) : NONE;
+        return NONE != n && n < count.length && count[n] > 0;
+    }
+
+    @Override
+    public int size() {
+        return names;
+    }
+
+    @Override
+    public void clear() {
+        symbols.clear();
+        rows = 0;
+        dead = 0;
+        Arrays.fill(count, 0);
+        names = 0;
+        sorted = null;
+    }
+
+    private String[] sortedNames() {
+        if (null == sorted) {
+            String[] s = new String[names];
+            int i = 0;
+            for (int n = 0; n < symbols.size(); n++) {
+                if (n < count.length && count[n] > 0) {
+                    s[i++] = symbols.get(n);
+                }
+            }
+            Arrays.sort(s);
+            sorted = s;
+        }
+        return sorted;
+    }
+
+    /**
+     * Names in sorted order, without creating any Variable.
+     */
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return Collections.unmodifiableList(Arrays.asList(sortedNames())).iterator();
+            }
+
+            @Override
+            public int size() {
+                return names;
+            }
+        };
+    }
+
+    /**
+     * Names in sorted order, each with its variables in scan order.
+     */
+    @Override
+    public Set<Map.Entry<String, List<Variable>>> entrySet() {
+        return new AbstractSet<Map.Entry<String, List<Variable>>>() {
+            @Override
+            public Iterator<Map.Entry<String, List<Variable>>> iterator() {
+                final String[] s = sortedNames();
+                return new Iterator<Map.Entry<String, List<Variable>>>() {
+                    private int i;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < s.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, List<Variable>> next() {
+                        if (i >= s.length) {
+                            throw new NoSuchElementException();
+                        }
+                        String key = s[i++];
+                        return new AbstractMap.SimpleImmutableEntry<>(key, get(key));
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return names;
+            }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the model in memory and rewrites the output when files change.
+ * Modified and deleted files are re-parsed on their own; anything that changes
+ * the shape of the tree (new files or directories, lost events) triggers a
+ * rescan, which still takes unchanged files from the cache.
+ *
+ * @author walter
+ */
+public class Watcher {
+
+    /**
+     * Quiet time before a burst of events is considered complete.
+     */
+    private static final long DEBOUNCE_MS = 200;
+    /**
+     * Levels to walk: dir/roles/role/part are directories, their entries
+     * files. At the last level walkFileTree reports directories as files.
+     */
+    private static final int DEPTH = 4;
+
+    private final Main main;
+    private final List<String> directories;
+    private final String output;
+    private final Path outputPath;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private WatchService ws;
+
+    /**
+     * @param main Model, already scanned.
+     * @param directories Ansible directories, in command line order.
+     * @param output File to rewrite, null to only keep the model up to date.
+     */
+    public Watcher(Main main, List<String> directories, String output) {
+        this.main = main;
+        this.directories = directories;
+        this.output = output;
+        this.outputPath = null == output ? null : Paths.get(output).toAbsolutePath();
+    }
+
+    /**
+     * Watch until interrupted.
+     *
+     * @throws IOException If watching is not possible.
+     * @throws InterruptedException When stopped.
+     */
+    public void run() throws IOException, InterruptedException {
+        ws = FileSystems.getDefault().newWatchService();
+        try {
+            register();
+            while (true) {
+                Set<String> changed = new TreeSet<>();
+                boolean rescan = collect(ws.take(), changed);
+                WatchKey key;
+                while (null != (key = ws.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS))) {
+                    rescan |= collect(key, changed);
+                }
+                long t0 = System.nanoTime();
+                main.lock.writeLock().lock();
+                try {
+                    if (!rescan && !main.update(changed)) {
+                        rescan = true;
+                    }
+                    if (rescan) {
+                        main.rescan(directories);
+                        register();
+                    }
+                } finally {
+                    main.lock.writeLock().unlock();
+                }
+                if (null != output) {
+                    main.lock.readLock().lock();
+                    try {
+                        main.writeOutput(output);
+                    } finally {
+                        main.lock.readLock().unlock();
+                    }
+                }
+                Logger.getLogger(Watcher.class.getName()).log(Level.INFO, "{0} in {1} ms: {2}",
+                        new Object[]{rescan ? "Rescanned" : "Updated", (System.nanoTime() - t0) / 1000000, changed});
+            }
+        } finally {
+            ws.close();
+        }
+    }
+
+    /**
+     * Drain one key.
+     *
+     * @return true if the events call for a rescan.
+     */
+    private boolean collect(WatchKey key, Set<String> changed) {
+        boolean rescan = false;
+        Path dir = keys.get(key);
+        for (WatchEvent<?> ev : key.pollEvents()) {
+            if (ev.kind() == StandardWatchEventKinds.OVERFLOW || null == dir) {
+                rescan = true;
+                continue;
+            }
+            Path p = dir.resolve((Path) ev.context()).toAbsolutePath();
+            if (null != outputPath && (p.startsWith(outputPath) || p.getParent().equals(outputPath.getParent())
+                    && p.getFileName().toString().startsWith(outputPath.getFileName().toString()))) {
+                continue; // our own output (its temporary file, or its pages)
+            }
+            if (ev.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(p)) {
+                rescan = true;
+            } else if (!Files.isDirectory(p)) {
+                // editors often replace a file, that shows up as a create
+                changed.add(p.toString());
+            }
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+        return rescan;
+    }
+
+    private void register() throws IOException {
+        for (WatchKey key : keys.keySet()) {
+            key.cancel();
+        }
+        keys.clear();
+        for (String d : directories) {
+            final Path root = Paths.get(d);
+            Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), DEPTH, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (dir.getNameCount() > 0 && dir.getFileName().toString().startsWith(".") && !dir.equals(root)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    keys.put(dir.register(ws,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.Mark;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+
+/**
+ * Pulls variables, hosts, child groups and references out of YAML files on the
+ * SnakeYAML event stream, without building the object graph.
+ * <p>
+ * A value is kept as written: a scalar as its (unquoted) text, a list or map
+ * as its source text, dedented and without trailing comments. Duplicate keys
+ * keep the last value and merge keys (&lt;&lt;: *anchor) are resolved for
+ * variable maps, like the SnakeYAML constructor did. Only the first document
+ * of a file is read.
+ *
+ * @author walter
+ */
+public class YamlExtractor {
+
+    /**
+     * Yaml instances are not thread safe but can be reused, one per scanner
+     * thread.
+     */
+    private static final ThreadLocal<Yaml> LOADER = new ThreadLocal<Yaml>() {
+        @Override
+        protected Yaml initialValue() {
+            return new Yaml();
+        }
+    };
+
+    private final ScanResult res;
+    private final String text;
+    /**
+     * SnakeYAML marks count code points; true if those equal char indexes.
+     */
+    private final boolean bmp;
+    private final int codePoints;
+    /**
+     * The last mark translated, as code point and char index. Marks come
+     * mostly in increasing order, so translating from here walks each part
+     * of the text about once instead of from the start every time.
+     */
+    private int cursorPoints, cursorChars;
+    private final Iterator<Event> events;
+    private final HashMap<String, String> anchors = new HashMap<>();
+    private final HashMap<String, Map<String, String>> anchoredMaps = new HashMap<>();
+
+    private YamlExtractor(ScanResult res, String text) {
+        this.res = res;
+        this.text = text;
+        this.codePoints = text.codePointCount(0, text.length());
+        this.bmp = text.length() == codePoints;
+        this.events = LOADER.get().parse(new StringReader(text)).iterator();
+    }
+
+    /**
+     * Every top level key of a vars file (group_vars, host_vars, role
+     * defaults and vars) becomes a variable in the context of the file.
+     *
+     * @param res File and context, receives the variables.
+     * @param text Contents.
+     * @throws YAMLException On invalid YAML.
+     */
+    public static void vars(ScanResult res, String text) {
+        YamlExtractor x = new YamlExtractor(res, text);
+        Event root = x.root();
+        if (root instanceof MappingStartEvent) {
+            for (Map.Entry<String, String> e : x.entries(root).entrySet()) {
+                res.putVar(e.getKey(), res.role, res.host, res.group, e.getValue());
+            }
+        }
+    }
+
+    /**
+     * YAML (or JSON) inventory: groups with hosts, children and vars, either
+     * under "all" or at the top level, plus the _meta.hostvars and plain host
+     * lists of ansible-inventory --list output.
+     *
+     * @param res File, receives hosts, children and variables.
+     * @param text Contents.
+     * @throws YAMLException On invalid YAML.
+     */
+    public static void inventory(ScanResult res, String text) {
+        YamlExtractor x = new YamlExtractor(res, text);
+        Event root = x.root();
+        if (root instanceof MappingStartEvent) {
+            x.group(null);
+        }
+    }
+
+    /**
+     * References to other playbooks, roles and task files: import_playbook,
+     * include_role, import_role, include_tasks, import_tasks, include, the
+     * roles of a play and the dependencies in role meta data. Targets that
+     * are templated are left out, they are only known at run time.
+     *
+     * @param res File, receives {"playbook"|"role"|"tasks", target} pairs.
+     * @param text Contents.
+     * @throws YAMLException On invalid YAML.
+     */
+    public static void references(ScanResult res, String text) {
+        // most task files reference nothing, the parse is the expensive part
+        if (!text.contains("include") && !text.contains("import_") && !text.contains("roles")
+                && !text.contains("dependencies")) {
+            return;
+        }
+        YamlExtractor x = new YamlExtractor(res, text);
+        Event root = x.root();
+        if (null != root) {
+            x.references(root);
+        }
+    }
+
+    private void references(Event e) {
+        if (e instanceof SequenceStartEvent) {
+            for (Event i = next(); !(i instanceof SequenceEndEvent); i = next()) {
+                references(i);
+            }
+        } else if (e instanceof MappingStartEvent) {
+            for (Event k = next(); !(k instanceof MappingEndEvent); k = next()) {
+                String key = node(k);
+                if (key.startsWith("ansible.builtin.") || key.startsWith("ansible.legacy.")) {
+                    key = key.substring(key.indexOf('.', 8) + 1);
+                }
+                Event v = next();
+                switch (key) {
+                    case "import_playbook":
+                    case "include_playbook":
+                        reference("playbook", scalar(v));
+                        break;
+                    case "include_tasks":
+                    case "import_tasks":
+                    case "include":
+                        reference("tasks", v instanceof MappingStartEvent ? entries(v).get("file") : scalar(v));
+                        break;
+                    case "include_role":
+                    case "import_role":
+                        reference("role", v instanceof MappingStartEvent ? entries(v).get("name") : scalar(v));
+                        break;
+                    case "roles":
+                    case "dependencies":
+                        if (v instanceof SequenceStartEvent) {
+                            for (Event i = next(); !(i instanceof SequenceEndEvent); i = next()) {
+                                if (i instanceof MappingStartEvent) {
+                                    Map<String, String> m = entries(i);
+                                    reference("role", m.containsKey("role") ? m.get("role") : m.get("name"));
+                                } else {
+                                    reference("role", scalar(i));
+                                }
+                            }
+                        } else {
+                            node(v);
+                        }
+                        break;
+                    default:
+                        references(v);
+                        break;
+                }
+            }
+        } else {
+            node(e);
+        }
+    }
+
+    /**
+     * Consume a node.
+     *
+     * @return Its value if it is a scalar, else null.
+     */
+    private String scalar(Event e) {
+        String ret = node(e);
+        return e instanceof ScalarEvent ? ret : null;
+    }
+
+    private void reference(String kind, String target) {
+        if (null != target && !target.isEmpty() && !target.contains("{{")) {
+            res.refs.add(new String[]{kind, target});
+        }
+    }
+
+    private Event next() {
+        if (!events.hasNext()) {
+            throw new YAMLException("Unexpected end of " + res.file);
+        }
+        return events.next();
+    }
+
+    /**
+     * @return The first node of the first document, null if there is none.
+     */
+    private Event root() {
+        while (events.hasNext()) {
+            Event e = events.next();
+            if (!(e instanceof StreamStartEvent) && !(e instanceof DocumentStartEvent)) {
+                return e instanceof NodeEvent ? e : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Group level of an inventory, the mapping start is already consumed.
+     *
+     * @param group The group, null for the top level.
+     */
+    private void group(String group) {
+        for (Event k = next(); !(k instanceof MappingEndEvent); k = next()) {
+            String key = node(k);
+            Event v = next();
+            if (key.equals("hosts") && v instanceof MappingStartEvent) {
+                for (Event h = next(); !(h instanceof MappingEndEvent); h = next()) {
+                    String host = node(h);
+                    res.addHost(group, host);
+                    Event hv = next();
+                    if (hv instanceof MappingStartEvent) {
+                        for (Map.Entry<String, String> e : entries(hv).entrySet()) {
+                            res.putVar(e.getKey(), null, host, group, e.getValue());
+                        }
+                    } else {
+                        node(hv);
+                    }
+                }
+            } else if (key.equals("hosts") && v instanceof SequenceStartEvent) {
+                // JSON style: just the names
+                for (Event h = next(); !(h instanceof SequenceEndEvent); h = next()) {
+                    res.addHost(group, node(h));
+                }
+            } else if (key.equals("children") && v instanceof MappingStartEvent) {
+                for (Event c = next(); !(c instanceof MappingEndEvent); c = next()) {
+                    String child = node(c);
+                    res.addChild(group, child);
+                    Event cv = next();
+                    if (cv instanceof MappingStartEvent) {
+                        group(child);
+                    } else {
+                        node(cv);
+                    }
+                }
+            } else if (key.equals("children") && v instanceof SequenceStartEvent) {
+                // JSON style: just the names, the groups are defined at the top level
+                for (Event c = next(); !(c instanceof SequenceEndEvent); c = next()) {
+                    res.addChild(group, node(c));
+                }
+            } else if (key.equals("vars") && null != group && v instanceof MappingStartEvent) {
+                for (Map.Entry<String, String> e : entries(v).entrySet()) {
+                    res.putVar(e.getKey(), null, null, group, e.getValue());
+                }
+            } else if (key.equals("_meta") && null == group && v instanceof MappingStartEvent) {
+                meta();
+            } else if (null == group && v instanceof SequenceStartEvent) {
+                // old style script output: group with a list of hosts
+                for (Event h = next(); !(h instanceof SequenceEndEvent); h = next()) {
+                    res.addHost(key, node(h));
+                }
+            } else if (null == group && v instanceof MappingStartEvent) {
+                // top level group, "all" or without "all:"
+                group(key);
+            } else {
+                node(v);
+            }
+        }
+    }
+
+    /**
+     * JSON style: all host variables in one place.
+     */
+    private void meta() {
+        for (Event k = next(); !(k instanceof MappingEndEvent); k = next()) {
+            String key = node(k);
+            Event v = next();
+            if (key.equals("hostvars") && v instanceof MappingStartEvent) {
+                for (Event h = next(); !(h instanceof MappingEndEvent); h = next()) {
+                    String host = node(h);
+                    Event hv = next();
+                    if (hv instanceof MappingStartEvent) {
+                        for (Map.Entry<String, String> e : entries(hv).entrySet()) {
+                            res.putVar(e.getKey(), null, host, null, e.getValue());
+                        }
+                    } else {
+                        node(hv);
+                    }
+                }
+            } else {
+                node(v);
+            }
+        }
+    }
+
+    /**
+     * The keys and value texts of a mapping.
+     *
+     * @param start Its start event, already consumed.
+     * @return Entries in order of first appearance, the last value for
+     * duplicate keys, merged entries where no key is given.
+     */
+    private Map<String, String> entries(Event start) {
+        LinkedHashMap<String, String> ret = new LinkedHashMap<>();
+        List<Map<String, String>> merges = new ArrayList<>();
+        Event k;
+        for (k = next(); !(k instanceof MappingEndEvent); k = next()) {
+            String key = node(k);
+            Event v = next();
+            if (key.equals("<<") && v instanceof AliasEvent) {
+                merges.add(anchoredMap((AliasEvent) v));
+            } else if (key.equals("<<") && v instanceof SequenceStartEvent) {
+                for (Event m = next(); !(m instanceof SequenceEndEvent); m = next()) {
+                    if (m instanceof AliasEvent) {
+                        merges.add(anchoredMap((AliasEvent) m));
+                    } else {
+                        node(m);
+                    }
+                }
+            } else {
+                ret.put(key, node(v));
+            }
+        }
+        for (Map<String, String> m : merges) {
+            for (Map.Entry<String, String> e : m.entrySet()) {
+                if (!ret.containsKey(e.getKey())) {
+                    ret.put(e.getKey(), e.getValue());
+                }
+            }
+        }
+        remember(start, slice(start.getStartMark(), k.getEndMark()), ret);
+        return ret;
+    }
+
+    private Map<String, String> anchoredMap(AliasEvent alias) {
+        Map<String, String> ret = anchoredMaps.get(alias.getAnchor());
+        if (null == ret) {
+            throw new YAMLException("Cannot merge *" + alias.getAnchor() + " in " + res.file);
+        }
+        return ret;
+    }
+
+    /**
+     * Consume a node.
+     *
+     * @param e Its first event, already consumed.
+     * @return Its text.
+     */
+    private String node(Event e) {
+        if (e instanceof ScalarEvent) {
+            String ret = ((ScalarEvent) e).getValue();
+            remember(e, ret, null);
+            return ret;
+        }
+        if (e instanceof AliasEvent) {
+            String ret = anchors.get(((AliasEvent) e).getAnchor());
+            return null == ret ? "*" + ((AliasEvent) e).getAnchor() : ret;
+        }
+        if (e instanceof MappingStartEvent) {
+            if (null != ((NodeEvent) e).getAnchor()) {
+                entries(e); // for merge keys
+                return anchors.get(((NodeEvent) e).getAnchor());
+            }
+            Event end = next();
+            while (!(end instanceof MappingEndEvent)) {
+                node(end);
+                node(next());
+                end = next();
+            }
+            return slice(e.getStartMark(), end.getEndMark());
+        }
+        if (e instanceof SequenceStartEvent) {
+            Event end = next();
+            while (!(end instanceof SequenceEndEvent)) {
+                node(end);
+                end = next();
+            }
+            String ret = slice(e.getStartMark(), end.getEndMark());
+            remember(e, ret, null);
+            return ret;
+        }
+        throw new YAMLException("Unexpected " + e + " in " + res.file);
+    }
+
+    private void remember(Event e, String value, Map<String, String> map) {
+        String anchor = ((NodeEvent) e).getAnchor();
+        if (null != anchor) {
+            anchors.put(anchor, value);
+            if (null != map) {
+                anchoredMaps.put(anchor, map);
+            }
+        }
+    }
+
+    /**
+     * Source text between two marks, without anchor and tag, trailing blank
+     * and comment lines, and with following lines dedented to the column of
+     * the first.
+     */
+    private String slice(Mark start, Mark end) {
+        int from = offset(start.getIndex());
+        int to = offset(end.getIndex());
+        while (from < to && (text.charAt(from) == '&' || text.charAt(from) == '!')) {
+            // anchor or tag
+            while (from < to && !Character.isWhitespace(text.charAt(from))) {
+                from++;
+            }
+            while (from < to && Character.isWhitespace(text.charAt(from))) {
+                from++;
+            }
+        }
+        while (true) {
+            while (to > from && Character.isWhitespace(text.charAt(to - 1))) {
+                to--;
+            }
+            int bol = text.lastIndexOf('\n', to - 1) + 1;
+            if (bol <= from || text.substring(bol, to).trim().charAt(0) != '#') {
+                break;
+            }
+            to = bol;
+        }
+        String ret = text.substring(from, to);
+        int column = from - text.lastIndexOf('\n', from - 1) - 1;
+        if (column > 0 && ret.indexOf('\n') >= 0) {
+            StringBuilder sb = new StringBuilder(ret.length());
+            int pos = 0;
+            for (int nl = ret.indexOf('\n'); nl >= 0; nl = ret.indexOf('\n', pos)) {
+                sb.append(ret, pos, nl + 1);
+                pos = nl + 1;
+                for (int i = 0; i < column && pos < ret.length() && ret.charAt(pos) == ' '; i++) {
+                    pos++;
+                }
+            }
+            sb.append(ret, pos, ret.length());
+            ret = sb.toString();
+        }
+        return ret;
+    }
+
+    private int offset(int index) {
+        if (bmp) {
+            return Math.min(index, text.length());
+        }
+        int cp = Math.min(index, codePoints);
+        cursorChars = text.offsetByCodePoints(cursorChars, cp - cursorPoints);
+        cursorPoints = cp;
+        return cursorChars;
+    }
+}
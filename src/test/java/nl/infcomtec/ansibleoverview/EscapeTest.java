@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * Utils.html and Main.pre against the implementations they replaced, on
+ * random text made mostly of the characters they treat specially. The old
+ * quirks are part of the output and must be kept.
+ *
+ * @author walter
+ */
+public class EscapeTest {
+
+    private static final String ALPHABET = "&&;;<>\"€{{}}  ab\n\t#";
+    private static final int ROUNDS = 200000;
+
+    /**
+     * Utils.html as it was before the single pass version.
+     */
+    static String oldHtml(String text) {
+        if (text == null) {
+            return "";
+        }
+        int amp = text.indexOf('&');
+        if (amp >= 0) {
+            int semi = text.indexOf(';', amp);
+            if (semi > amp && semi - amp < 7) { // seems a valid html entity
+                StringBuilder sb = new StringBuilder();
+                if (amp > 0) {
+                    sb.append(oldHtml(text.substring(0, amp)));
+                }
+                sb.append(text.substring(amp, semi));
+                if (semi < text.length() - 1) {
+                    sb.append(oldHtml(text.substring(semi + 1)));
+                }
+                return sb.toString();
+            }
+        }
+        StringBuilder ret = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            ret.append(Utils.htmlChar(c));
+        }
+        return ret.toString();
+    }
+
+    /**
+     * Main.pre as it was before the single pass version.
+     */
+    static String oldPre(String text) {
+        StringBuilder sb = new StringBuilder(Main.EOLN).append("<pre>").append(Main.EOLN);
+        int last = 0;
+        while (last < text.length()) {
+            int open = text.indexOf("{{", last);
+            if (open >= 0) {
+                int close = text.indexOf("}}", open);
+                if (close > 0) {
+                    String varName = text.substring(open + 2, close).trim();
+                    sb.append(oldHtml(text.substring(last, open)));
+                    sb.append("<b>{{ ").append(varName).append(" }}</b>");
+                    last = close + 2;
+                } else {
+                    sb.append("{{");
+                    last = open + 2;
+                }
+            } else {
+                sb.append(oldHtml(text.substring(last)));
+                last = text.length();
+            }
+        }
+        sb.append(Main.EOLN).append("</pre>").append(Main.EOLN);
+        return sb.toString();
+    }
+
+    private static String random(Random rnd) {
+        char[] cs = new char[rnd.nextInt(40)];
+        for (int i = 0; i < cs.length; i++) {
+            cs[i] = ALPHABET.charAt(rnd.nextInt(ALPHABET.length()));
+        }
+        return new String(cs);
+    }
+
+    @Test
+    public void testHtml() throws IOException {
+        Random rnd = new Random(11);
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < ROUNDS; n++) {
+            String text = random(rnd);
+            String expected = oldHtml(text);
+            assertEquals(text, expected, Utils.html(text));
+            sb.setLength(0);
+            Utils.html(text, sb);
+            assertEquals(text, expected, sb.toString());
+            int start = text.isEmpty() ? 0 : rnd.nextInt(text.length());
+            int end = start + rnd.nextInt(text.length() - start + 1);
+            sb.setLength(0);
+            sb.append('|');
+            Utils.html(text, start, end, sb);
+            assertEquals(text, "|" + oldHtml(text.substring(start, end)), sb.toString());
+        }
+    }
+
+    @Test
+    public void testPre() throws IOException {
+        Random rnd = new Random(17);
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; n < ROUNDS; n++) {
+            String text = random(rnd);
+            String expected = oldPre(text);
+            assertEquals(text, expected, Main.pre(text));
+            sb.setLength(0);
+            Main.pre(text, sb);
+            assertEquals(text, expected, sb.toString());
+        }
+    }
+
+    /**
+     * The quirks that are kept on purpose.
+     */
+    @Test
+    public void testQuirks() {
+        assertEquals("&amp&lt;", Utils.html("&amp;<"));
+        assertEquals("&amp;a &amp;amp; &lt;", Utils.html("&a &amp; <"));
+        assertEquals("&euro;&quot;", Utils.html("€\""));
+        String plain = "nothing to do";
+        assertSame(plain, Utils.html(plain));
+        assertEquals("", Utils.html(null));
+        assertEquals(oldPre("a {{b"), Main.pre("a {{b"));
+        assertEquals(Main.EOLN + "<pre>" + Main.EOLN + "{{b" + Main.EOLN + "</pre>" + Main.EOLN, Main.pre("a {{b"));
+        assertEquals(Main.EOLN + "<pre>" + Main.EOLN + "x &lt; <b>{{ v }}</b>" + Main.EOLN + "</pre>" + Main.EOLN, Main.pre("x < {{  v\t}}"));
+    }
+}
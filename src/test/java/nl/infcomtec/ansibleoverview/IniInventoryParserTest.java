@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringTokenizer;
+import org.ini4j.Ini;
+import org.ini4j.Profile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * IniInventoryParser on hand written inventories, and against the ini4j based
+ * parser it replaced on the inputs both understand.
+ *
+ * @author walter
+ */
+public class IniInventoryParserTest {
+
+    private static ScanResult parse(String text) {
+        ScanResult res = new ScanResult(ScanResult.Kind.INVENTORY, new File("hosts"));
+        IniInventoryParser.parse(res, text);
+        return res;
+    }
+
+    /**
+     * Group and host pairs, once each; every host variable adds its pair
+     * again.
+     */
+    private static List<String> hosts(ScanResult res) {
+        LinkedHashSet<String> ret = new LinkedHashSet<>();
+        for (String[] gh : res.hosts) {
+            ret.add(gh[0] + " " + gh[1]);
+        }
+        return new ArrayList<>(ret);
+    }
+
+    private static List<String> children(ScanResult res) {
+        List<String> ret = new ArrayList<>();
+        for (String[] pc : res.children) {
+            ret.add(pc[0] + " " + pc[1]);
+        }
+        return ret;
+    }
+
+    private static List<String> defs(ScanResult res) {
+        List<String> ret = new ArrayList<>();
+        for (ScanResult.Def d : res.defs) {
+            ret.add(d.name + " " + d.host + " " + d.group + " " + d.value);
+        }
+        return ret;
+    }
+
+    /**
+     * Main.parseIniHybrid as it was before IniInventoryParser: ini4j on every
+     * key=value token.
+     */
+    static void oldParse(ScanResult res, String text) throws IOException {
+        String currentGroup = null;
+        String sectionType = null;
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.startsWith("[") && line.endsWith("]")) {
+                    currentGroup = line.substring(1, line.length() - 1);
+                    sectionType = null;
+                    int colon = currentGroup.lastIndexOf(':');
+                    if (colon > 0) {
+                        sectionType = currentGroup.substring(colon + 1);
+                        if (sectionType.equals("children") || sectionType.equals("vars")) {
+                            currentGroup = currentGroup.substring(0, colon);
+                        } else {
+                            sectionType = null;
+                        }
+                    }
+                } else if (!line.isEmpty() && currentGroup != null && "children".equals(sectionType)) {
+                    res.addChild(currentGroup, new StringTokenizer(line).nextToken());
+                } else if (!line.isEmpty() && currentGroup != null && "vars".equals(sectionType)) {
+                    Ini ini = new Ini(new StringReader("[s]\n" + line));
+                    for (Map.Entry<String, Profile.Section> e1 : ini.entrySet()) {
+                        for (Map.Entry<String, String> e2 : e1.getValue().entrySet()) {
+                            res.putVar(e2.getKey(), null, null, currentGroup, e2.getValue());
+                        }
+                    }
+                } else if (!line.isEmpty() && currentGroup != null) {
+                    StringTokenizer toker = new StringTokenizer(line);
+                    String host = toker.nextToken();
+                    res.addHost(currentGroup, host);
+                    while (toker.hasMoreTokens()) {
+                        Ini ini = new Ini(new StringReader("[s]\n" + toker.nextToken()));
+                        for (Map.Entry<String, Profile.Section> e1 : ini.entrySet()) {
+                            for (Map.Entry<String, String> e2 : e1.getValue().entrySet()) {
+                                res.putVar(e2.getKey(), null, host, currentGroup, e2.getValue());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Random inventories without quotes, ranges, blanks in host variables or
+     * comments inside sections: what the old parser handled must come out
+     * the same, escapes included.
+     */
+    @Test
+    public void testAgreesWithIni4j() throws IOException {
+        Random rnd = new Random(9);
+        String[] values = {"1", "10.0.0.1", "a\\tb", "x\\\\y", "{{other}}", "/srv/app", "yes", "a,b,c", "\\u0041b"};
+        for (int n = 0; n < 200; n++) {
+            StringBuilder sb = new StringBuilder("# generated\n");
+            int groups = 1 + rnd.nextInt(4);
+            for (int g = 0; g < groups; g++) {
+                sb.append("[g").append(g).append("]\n");
+                for (int h = rnd.nextInt(5); h > 0; h--) {
+                    sb.append("  host").append(rnd.nextInt(20)).append(".example.com");
+                    for (int v = rnd.nextInt(3); v > 0; v--) {
+                        sb.append(rnd.nextBoolean() ? " " : "\t").append("v").append(rnd.nextInt(5)).append('=')
+                                .append(values[rnd.nextInt(values.length)]);
+                    }
+                    sb.append(rnd.nextBoolean() ? "\n" : "  \n");
+                }
+                sb.append("\n[g").append(g).append(":vars]\n");
+                for (int v = rnd.nextInt(3); v > 0; v--) {
+                    sb.append("gv").append(v).append(" = ").append(values[rnd.nextInt(values.length)]).append('\n');
+                }
+                if (g > 0) {
+                    sb.append("[g0:children]\ng").append(g).append('\n');
+                }
+            }
+            String text = sb.toString();
+            ScanResult old = new ScanResult(ScanResult.Kind.INVENTORY, new File("hosts"));
+            oldParse(old, text);
+            ScanResult now = parse(text);
+            assertEquals(text, hosts(old), hosts(now));
+            assertEquals(text, children(old), children(now));
+            assertEquals(text, defs(old), defs(now));
+        }
+    }
+
+    @Test
+    public void testQuotedValues() {
+        ScanResult res = parse("[web]\nw1 a=\"x y\" b='p q' c=\"it's\" d='say \"hi\"' e=\"open\n");
+        assertEquals(Arrays.asList("web w1"), hosts(res));
+        assertEquals(Arrays.asList(
+                "a w1 web x y", "b w1 web p q", "c w1 web it's", "d w1 web say \"hi\"", "e w1 web \"open"), defs(res));
+        res = parse("[web:vars]\nmotd = \"hello world\"\n");
+        assertEquals(Arrays.asList("motd null web hello world"), defs(res));
+    }
+
+    @Test
+    public void testEscapes() {
+        ScanResult res = parse("[web]\nw1 a=x\\ty b=\"q\\\"q\" c='\\t' d=\\u0041z e=\\u00\n");
+        assertEquals(Arrays.asList(
+                "a w1 web x\ty", "b w1 web q\"q", "c w1 web \\t", "d w1 web Az", "e w1 web u00"), defs(res));
+    }
+
+    @Test
+    public void testRanges() {
+        assertEquals(Arrays.asList("r web01", "r web02", "r web03"), hosts(parse("[r]\nweb[01:03]\n")));
+        assertEquals(Arrays.asList("r web9", "r web10"), hosts(parse("[r]\nweb[9:10]\n")));
+        assertEquals(Arrays.asList("r db-a", "r db-c", "r db-e"), hosts(parse("[r]\ndb-[a:e:2]\n")));
+        assertEquals(Arrays.asList("r n001", "r n004", "r n007", "r n010"), hosts(parse("[r]\nn[001:010:3]\n")));
+        assertEquals(Arrays.asList("r x1-a.lan", "r x1-b.lan", "r x2-a.lan", "r x2-b.lan"), hosts(parse("[r]\nx[1:2]-[a:b].lan\n")));
+        assertEquals(Arrays.asList("r n0", "r n1"), hosts(parse("[r]\nn[:1]\n")));
+        ScanResult res = parse("[r]\nweb[1:2] port=80\n");
+        assertEquals(Arrays.asList("port web1 r 80", "port web2 r 80"), defs(res));
+    }
+
+    @Test
+    public void testBadRanges() {
+        // reversed: nothing, the variables go with it
+        ScanResult res = parse("[r]\nweb[9:1] port=80\nok\n");
+        assertEquals(Arrays.asList("r ok"), hosts(res));
+        assertTrue(res.defs.isEmpty());
+        // malformed: taken literally
+        assertEquals(Arrays.asList("r bad[1:x]", "r s[1:5:0]", "r t[1:2:3:4]"), hosts(parse("[r]\nbad[1:x]\ns[1:5:0]\nt[1:2:3:4]\n")));
+        // huge: cut off, and no overflow
+        res = parse("[r]\nbig[1:2147483647]\nafter[2147483646:2147483647:1000]\n");
+        assertEquals(IniInventoryParser.MAX_HOSTS + 1, res.hosts.size());
+        assertEquals("big" + IniInventoryParser.MAX_HOSTS, res.hosts.get(IniInventoryParser.MAX_HOSTS - 1)[1]);
+        assertEquals("after2147483646", res.hosts.get(IniInventoryParser.MAX_HOSTS)[1]);
+        res = parse("[r]\nw[1:200]-[1:200]\n");
+        assertEquals(IniInventoryParser.MAX_HOSTS, res.hosts.size());
+    }
+
+    @Test
+    public void testVarsAndChildren() {
+        ScanResult res = parse("[web]\nw1\n[web:vars]\nport=80\n  user = deploy  \n=nothing\nnoequals\n"
+                + "[prod:children]\nweb  # the web servers\ndb\n[odd:section]\nh9\n");
+        assertEquals(Arrays.asList("web w1", "odd:section h9"), hosts(res));
+        assertEquals(Arrays.asList("prod web", "prod db"), children(res));
+        assertEquals(Arrays.asList("port null web 80", "user null web deploy"), defs(res));
+    }
+
+    @Test
+    public void testComments() {
+        ScanResult res = parse("# top\nungrouped a=1\n[web]\n# a comment\n; another\n  w1 a=1 # trailing b=2\nw2\t#\n\n[web:vars]\n# x=1\n");
+        assertEquals(Arrays.asList("web w1", "web w2"), hosts(res));
+        assertEquals(Arrays.asList("a w1 web 1"), defs(res));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Recognizing inventories by content.
+ *
+ * @author walter
+ */
+public class InventoryFormatTest {
+
+    @Test
+    public void testIni() {
+        assertEquals(InventoryFormat.INI, InventoryFormat.sniff("[web]\nw1 ansible_host=10.0.0.1\n"));
+        assertEquals(InventoryFormat.INI, InventoryFormat.sniff("# comment\n; other comment\n\n[web]\nw1\n"));
+        assertEquals(InventoryFormat.INI, InventoryFormat.sniff("lonely\n[web]\nw1\n"));
+        assertEquals(InventoryFormat.INI, InventoryFormat.sniff("[web:vars]\nport = 80\n"));
+        assertEquals(InventoryFormat.INI, InventoryFormat.sniff("[prod:children]\nweb\n[web]\nw[01:10]\n"));
+        assertEquals(InventoryFormat.INI, InventoryFormat.sniff("\uFEFF[web]\nw1\n"));
+    }
+
+    @Test
+    public void testYaml() {
+        assertEquals(InventoryFormat.YAML, InventoryFormat.sniff("all:\n  hosts:\n    w1:\n"));
+        assertEquals(InventoryFormat.YAML, InventoryFormat.sniff("---\nall:\n  hosts:\n"));
+        assertEquals(InventoryFormat.YAML, InventoryFormat.sniff("%YAML 1.2\n---\nall:\n"));
+        assertEquals(InventoryFormat.YAML, InventoryFormat.sniff("# hosts\nweb:\n  hosts: {w1: }\n"));
+        assertEquals(InventoryFormat.YAML, InventoryFormat.sniff("just\nwords\n"));
+    }
+
+    @Test
+    public void testJson() {
+        assertEquals(InventoryFormat.JSON, InventoryFormat.sniff("{\"all\": {\"hosts\": [\"w1\"]}}"));
+        assertEquals(InventoryFormat.JSON, InventoryFormat.sniff("\n  {\n  \"_meta\": {}\n}\n"));
+    }
+
+    @Test
+    public void testToml() {
+        assertEquals(InventoryFormat.TOML, InventoryFormat.sniff("[web.hosts]\nw1 = {}\n"));
+        assertEquals(InventoryFormat.TOML, InventoryFormat.sniff("[web]\nhosts = { w1 = {} }\n"));
+        assertEquals(InventoryFormat.TOML, InventoryFormat.sniff("[web]\nchildren = [\"db\"]\n"));
+        assertEquals(InventoryFormat.TOML, InventoryFormat.sniff("[prod.children]\nweb = {}\n"));
+        assertEquals(InventoryFormat.TOML, InventoryFormat.sniff("[[web]]\nname = \"w1\"\n"));
+        assertEquals(InventoryFormat.TOML, InventoryFormat.sniff("# toml\n[web.vars]\nport = 80\n"));
+    }
+
+    @Test
+    public void testScript() {
+        assertEquals(InventoryFormat.SCRIPT, InventoryFormat.sniff("#!/usr/bin/env python3\nprint('{}')\n"));
+        assertEquals(InventoryFormat.SCRIPT, InventoryFormat.sniff("\n#!/bin/sh\necho '{}'\n"));
+        assertEquals(InventoryFormat.INI, InventoryFormat.sniff("# !not a script\n[web]\nw1\n"));
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Load generator for --serve. Clients fetch the given URLs round robin for a
+ * fixed time, then requests per second, latency percentiles and status codes
+ * are printed. Run it against a local server, for example:
+ * <pre>
+ * java -cp target/test-classes nl.infcomtec.ansibleoverview.LoadGenerator -c 16 -d 10 --gzip --etag \
+ *     http://localhost:8080/ http://localhost:8080/roles/web.html
+ * </pre>
+ *
+ * @author walter
+ */
+public class LoadGenerator {
+
+    private final List<URL> urls = new ArrayList<>();
+    private int clients = 8;
+    private int seconds = 10;
+    private int warmup = 2;
+    private boolean gzip = false;
+    private boolean etag = false;
+    private volatile boolean measuring;
+    private volatile boolean stopped;
+    private final AtomicLong errors = new AtomicLong();
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadGenerator lt = new LoadGenerator();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-c":
+                        lt.clients = Integer.parseInt(args[++i]);
+                        break;
+                    case "-d":
+                        lt.seconds = Integer.parseInt(args[++i]);
+                        break;
+                    case "-w":
+                        lt.warmup = Integer.parseInt(args[++i]);
+                        break;
+                    case "--gzip":
+                        lt.gzip = true;
+                        break;
+                    case "--etag":
+                        lt.etag = true;
+                        break;
+                    default:
+                        lt.urls.add(new URL(args[i]));
+                }
+            }
+        } catch (IOException | ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            Logger.getLogger(LoadGenerator.class.getName()).log(Level.SEVERE, "Bad argument", ex);
+            return;
+        }
+        if (lt.urls.isEmpty()) {
+            Logger.getLogger(LoadGenerator.class.getName()).log(Level.SEVERE, "Usage: LoadGenerator <url>... [-c clients] [-d seconds] [-w warmup] [--gzip] [--etag]");
+            return;
+        }
+        lt.run();
+    }
+
+    private void run() throws InterruptedException {
+        Client[] cs = new Client[clients];
+        for (int i = 0; i < clients; i++) {
+            cs[i] = new Client(i);
+            cs[i].start();
+        }
+        Thread.sleep(warmup * 1000L);
+        measuring = true;
+        long t0 = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        measuring = false;
+        long elapsed = System.nanoTime() - t0;
+        stopped = true;
+        int n = 0;
+        for (Client c : cs) {
+            c.join();
+            n += c.count;
+        }
+        long[] all = new long[n];
+        Map<Integer, Long> codes = new TreeMap<>();
+        long bytes = 0;
+        int k = 0;
+        for (Client c : cs) {
+            System.arraycopy(c.latencies, 0, all, k, c.count);
+            k += c.count;
+            bytes += c.bytes;
+            for (Map.Entry<Integer, Long> e : c.codes.entrySet()) {
+                Long old = codes.get(e.getKey());
+                codes.put(e.getKey(), (null == old ? 0 : old) + e.getValue());
+            }
+        }
+        Arrays.sort(all);
+        double secs = elapsed / 1e9;
+        System.out.format("%d clients, %d urls, %.1f s%s%s%n", clients, urls.size(), secs,
+                gzip ? ", gzip" : "", etag ? ", If-None-Match" : "");
+        System.out.format("Requests: %d, %.0f req/s, %.1f MB/s%n", n, n / secs, bytes / secs / 1e6);
+        System.out.format("Latency ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n",
+                percentile(all, 50), percentile(all, 90), percentile(all, 99), percentile(all, 100));
+        System.out.format("Status: %s, errors %d%n", codes, errors.get());
+    }
+
+    private static double percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+
+    /**
+     * One client, requests one at a time over a kept-alive connection.
+     */
+    private class Client extends Thread {
+
+        private final int first;
+        private long[] latencies = new long[1 << 12];
+        private int count;
+        private long bytes;
+        private final Map<Integer, Long> codes = new TreeMap<>();
+        private final String[] etags = new String[urls.size()];
+        private final byte[] buf = new byte[1 << 14];
+
+        Client(int first) {
+            super("client-" + first);
+            this.first = first;
+        }
+
+        @Override
+        public void run() {
+            for (int i = first; !stopped; i++) {
+                int u = i % urls.size();
+                URL url = urls.get(u);
+                long t0 = System.nanoTime();
+                int code;
+                long size = 0;
+                try {
+                    HttpURLConnection con = (HttpURLConnection) url.openConnection();
+                    if (gzip) {
+                        con.setRequestProperty("Accept-Encoding", "gzip");
+                    }
+                    String tag = etags[u];
+                    if (etag && null != tag) {
+                        con.setRequestProperty("If-None-Match", tag);
+                    }
+                    code = con.getResponseCode();
+                    if (etag && null != con.getHeaderField("ETag")) {
+                        etags[u] = con.getHeaderField("ETag");
+                    }
+                    try (InputStream in = code < 400 ? con.getInputStream() : con.getErrorStream()) {
+                        if (null != in) {
+                            for (int r; (r = in.read(buf)) > 0;) {
+                                size += r;
+                            }
+                        }
+                    }
+                } catch (IOException ex) {
+                    errors.incrementAndGet();
+                    continue;
+                }
+                if (measuring) {
+                    record(System.nanoTime() - t0, code, size);
+                }
+            }
+        }
+
+        private void record(long nanos, int code, long size) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            bytes += size;
+            Long old = codes.get(code);
+            codes.put(code, (null == old ? 0 : old) + 1);
+        }
+    }
+}
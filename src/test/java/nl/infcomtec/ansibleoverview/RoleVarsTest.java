@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Role defaults and vars define their names for the usage report only; they
+ * are not variables, so they neither show in the table nor win over the
+ * inventory.
+ *
+ * @author walter
+ */
+public class RoleVarsTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private void write(File dir, String path, String text) throws IOException {
+        File f = new File(dir, path);
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRoleVarsOnlyDefineNames() throws IOException {
+        File dir = tmp.getRoot();
+        write(dir, "hosts", "[web]\nweb1\n");
+        write(dir, "group_vars/all.yml", "port: 80\n");
+        write(dir, "roles/app/defaults/main.yml", "port: 8080\nrole_default: x\n");
+        write(dir, "roles/app/vars/main.yml", "role_var: y\n");
+        write(dir, "roles/app/tasks/main.yml",
+                "- debug: msg=\"{{ port }} {{ role_default }} {{ role_var }} {{ nowhere }}\"\n");
+        Main main = new Main();
+        main.rescan(Arrays.asList(dir.getPath()));
+
+        assertNull(main.session.vars.get("role_default"));
+        assertNull(main.session.vars.get("role_var"));
+        List<Variable> port = main.session.vars.get("port");
+        assertEquals(1, port.size());
+        assertEquals("80", main.session.getVar("port", "web1", null, "app").value);
+
+        Map<String, ?> undefined = main.usages.undefined(main.session.vars);
+        assertTrue(undefined.containsKey("nowhere"));
+        assertFalse(undefined.containsKey("role_default"));
+        assertFalse(undefined.containsKey("role_var"));
+        assertFalse(main.usages.unused(main.session.vars).contains("role_default"));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * The TOML subset for inventories.
+ *
+ * @author walter
+ */
+public class TomlReaderTest {
+
+    @Test
+    public void testInventory() throws IOException {
+        Map<String, Object> doc = TomlReader.parse("# inventory\n"
+                + "[all.vars]\n"
+                + "ntp = \"pool.ntp.org\"  # comment\n"
+                + "\n"
+                + "[web]\n"
+                + "children = { front = {} }\n"
+                + "hosts = { w1 = { ansible_host = \"10.0.0.1\", port = 80 }, w2 = {} }\n"
+                + "vars.tier = 'front'\n"
+                + "\n"
+                + "[db.hosts.d1]\n"
+                + "roles = [\"pg\", 'backup',\n"
+                + "  \"monitor\", ]\n"
+                + "enabled = true\n");
+        assertEquals("{all={vars={ntp=pool.ntp.org}}, "
+                + "web={children={front={}}, hosts={w1={ansible_host=10.0.0.1, port=80}, w2={}}, vars={tier=front}}, "
+                + "db={hosts={d1={roles=[pg, backup, monitor], enabled=true}}}}", doc.toString());
+        assertEquals(Arrays.asList("all", "web", "db"), Arrays.asList(doc.keySet().toArray()));
+    }
+
+    @Test
+    public void testStrings() throws IOException {
+        Map<String, Object> doc = TomlReader.parse("a = \"tab\\tnew\\nquote\\\" \\u00e9 \\U0001F600\"\n"
+                + "b = 'C:\\path\\no\\escape'\n"
+                + "c = \"\"\"\nfirst\nsecond\"\"\"\n"
+                + "\"quoted key\" = 1\n");
+        assertEquals("tab\tnew\nquote\" \u00e9 \uD83D\uDE00", doc.get("a"));
+        assertEquals("C:\\path\\no\\escape", doc.get("b"));
+        assertEquals("first\nsecond", doc.get("c"));
+        assertEquals("1", doc.get("quoted key"));
+    }
+
+    @Test
+    public void testArraysOfTablesRejected() {
+        assertError("[web]\nx = 1\n\n[[web.hosts]]\nname = \"w1\"\n", "TOML line 4: arrays of tables are not supported");
+    }
+
+    @Test
+    public void testErrors() {
+        assertError("a = 1\nb =\n", "TOML line 2: value expected");
+        assertError("a = \"open\n", "TOML line 1: unterminated string");
+        assertError("a = \"x\" b\n", "TOML line 1: end of line expected");
+        assertError("a = 1\n[a.b]\n", "TOML line 2: a is not a table");
+        assertError("= 1\n", "TOML line 1: key expected");
+    }
+
+    private static void assertError(String text, String msg) {
+        try {
+            TomlReader.parse(text);
+            fail("no error for " + text);
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith(msg));
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * VariableIndex against the linear search getVar used to do, on one set of
+ * hand made variables. Where the old search found a variable that applies to
+ * the scope asked for and was the only one at its level, both must agree;
+ * the places where they deliberately differ are tested on their own.
+ *
+ * @author walter
+ */
+public class VariableIndexTest {
+
+    private static final String[] HOSTS = {null, "h1", "H1", "h2", "h3", "nohost"};
+    private static final String[] GROUPS = {null, "all", "web", "webprod", "db", "nogroup"};
+    private static final String[] ROLES = {null, "nginx", "norole"};
+
+    private OverviewSession session;
+    private VariableIndex index;
+
+    /**
+     * Groups: web holds h1 and h2 and has child webprod holding h1, db holds
+     * h3. Variables are added in scan order.
+     */
+    @Before
+    public void setUp() {
+        session = new OverviewSession();
+        FileId defaults = new FileId(session, "/tree/group_vars/all.yml");
+        FileId cfg = new FileId(session, "/tree/ansible.cfg");
+        FileId web = new FileId(session, "/tree/group_vars/web.yml");
+        FileId prod = new FileId(session, "/tree/group_vars/webprod.yml");
+        FileId db = new FileId(session, "/tree/group_vars/db.yml");
+        FileId h1 = new FileId(session, "/tree/host_vars/h1.yml");
+        FileId nginx = new FileId(session, "/tree/roles/nginx/vars/main.yml");
+        session.addHost("web", "h1");
+        session.addHost("web", "h2");
+        session.addHost("webprod", "h1");
+        session.addHost("db", "h3");
+        session.addChild("web", "webprod");
+
+        session.putVar("port", null, null, null, defaults, "1");
+        session.putVar("port", null, null, "web", web, "2");
+        session.putVar("port", null, null, "webprod", prod, "3");
+        session.putVar("port", null, "h1", null, h1, "4");
+        session.putVar("port", "nginx", null, null, nginx, "5");
+
+        session.putVar("only_global", null, null, null, defaults, "default");
+        session.putVar("only_global", null, null, null, cfg, "cfg");
+
+        session.putVar("app", null, null, "web", web, "web");
+        session.putVar("app", null, null, "webprod", prod, "prod");
+
+        session.putVar("role_var", "nginx", null, null, nginx, "r");
+
+        session.putVar("host_var", null, null, "web", web, "g");
+        session.putVar("host_var", null, "h1", null, h1, "x");
+
+        session.putVar("db_var", null, null, "db", db, "d");
+        session.putVar("db_var", null, null, null, defaults, "dflt");
+        index = session.getVariableIndex();
+    }
+
+    /**
+     * Variable.getVar as it was before the index, on the list of one name.
+     */
+    private static Variable baseline(List<Variable> get, String host, String group, String role) {
+        if (null == get) {
+            return null;
+        }
+        Variable ret = null;
+        for (Variable v : get) {
+            if (null != role && null != v.role && role.equals(v.role)) {
+                if (null == ret || ret.level.ordinal() < v.level.ordinal()) {
+                    ret = v;
+                }
+            }
+            if (null != host && null != v.host && host.equalsIgnoreCase(v.host)) {
+                if (null == ret || ret.level.ordinal() < v.level.ordinal()) {
+                    ret = v;
+                }
+            }
+            if (null != group && null != v.group && group.equals(v.group)) {
+                if (null == ret || ret.level.ordinal() < v.level.ordinal()) {
+                    ret = v;
+                }
+            }
+            if (null == ret || ret.level.ordinal() < v.level.ordinal()) {
+                ret = v;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Does the variable apply at the scope asked for?
+     */
+    private boolean applies(Variable v, String host, String group, String role) {
+        switch (v.level) {
+            case Role:
+                return v.role.equals(role);
+            case Host:
+                return null != host && v.host.equalsIgnoreCase(host);
+            case Group:
+                if (null != group) {
+                    return session.getGroupTree().selfAndAncestors(group).contains(v.group);
+                }
+                return null != host && session.getGroupTree().groupsOf(host).contains(v.group);
+            default:
+                return true;
+        }
+    }
+
+    private static int atLevel(List<Variable> list, Precedence level) {
+        int n = 0;
+        for (Variable v : list) {
+            if (v.level == level) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Every name at every scope: where the old result applies and was the
+     * only one at its level the index returns the same variable.
+     */
+    @Test
+    public void testResolveAgreesWithBaseline() {
+        int agreed = 0;
+        for (Map.Entry<String, List<Variable>> e : session.vars.entrySet()) {
+            for (String host : HOSTS) {
+                for (String group : GROUPS) {
+                    for (String role : ROLES) {
+                        Variable old = baseline(e.getValue(), host, group, role);
+                        Variable now = index.resolve(e.getKey(), host, group, role);
+                        if (applies(old, host, group, role) && 1 == atLevel(e.getValue(), old.level)) {
+                            assertEquals(e.getKey() + " " + host + " " + group + " " + role, old.value, now.value);
+                            agreed++;
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(agreed > 100);
+    }
+
+    /**
+     * The same through the session, which is what the renderers call.
+     */
+    @Test
+    public void testGetVarDelegates() {
+        for (String name : index.getNames()) {
+            for (String host : HOSTS) {
+                for (String group : GROUPS) {
+                    for (String role : ROLES) {
+                        assertSame(index.resolve(name, host, group, role), session.getVar(name, host, group, role));
+                    }
+                }
+            }
+        }
+        assertNull(session.getVar("unknown", "h1", "web", "nginx"));
+    }
+
+    /**
+     * The old search took the highest level over every variable of the name,
+     * so a role variable leaked into every host; now it applies to its role
+     * only.
+     */
+    @Test
+    public void testRoleVariableStaysInRole() {
+        assertEquals("r", baseline(session.vars.get("role_var"), "h2", null, null).value);
+        assertNull(index.resolve("role_var", "h2", null, null));
+        assertEquals("r", index.resolve("role_var", "h2", null, "nginx").value);
+        assertNull(index.resolve("role_var", null, null, "norole"));
+        assertEquals("1", index.resolve("port", "h3", null, "norole").value);
+        assertEquals("5", baseline(session.vars.get("port"), "h3", null, "norole").value);
+    }
+
+    /**
+     * Same for a host variable asked for another host: that host now gets
+     * its group value.
+     */
+    @Test
+    public void testHostVariableStaysOnHost() {
+        assertEquals("x", baseline(session.vars.get("host_var"), "h2", null, null).value);
+        assertEquals("g", index.resolve("host_var", "h2", null, null).value);
+        assertEquals("x", index.resolve("host_var", "H1", null, null).value);
+        assertNull(index.resolve("host_var", "h3", null, null));
+    }
+
+    /**
+     * Between groups the old search kept the first one scanned; now the
+     * deepest group of the host wins, whatever the scan order.
+     */
+    @Test
+    public void testDeeperGroupWins() {
+        assertEquals("web", baseline(session.vars.get("app"), "h1", null, null).value);
+        assertEquals("prod", index.resolve("app", "h1", null, null).value);
+        assertEquals("web", index.resolve("app", "h2", null, null).value);
+        assertEquals("prod", index.resolve("app", null, "webprod", null).value);
+        assertEquals("web", index.resolve("app", null, "web", null).value);
+        assertNull(index.resolve("app", "h3", null, null));
+        assertEquals("web", baseline(session.vars.get("app"), null, "webprod", null).value);
+    }
+
+    /**
+     * Group variables of a group the host is not in no longer apply; the
+     * global value does.
+     */
+    @Test
+    public void testOtherGroupFallsBackToGlobal() {
+        assertEquals("d", baseline(session.vars.get("db_var"), "h1", null, null).value);
+        assertEquals("dflt", index.resolve("db_var", "h1", null, null).value);
+        assertEquals("d", index.resolve("db_var", "h3", null, null).value);
+    }
+
+    /**
+     * The order is role, host, group by depth, global; a .cfg beats the
+     * defaults in both.
+     */
+    @Test
+    public void testPrecedenceOrder() {
+        assertEquals("5", index.resolve("port", "h1", null, "nginx").value);
+        assertEquals("4", index.resolve("port", "h1", null, null).value);
+        assertEquals("3", index.resolve("port", null, "webprod", null).value);
+        assertEquals("2", index.resolve("port", "h2", null, null).value);
+        assertEquals("1", index.resolve("port", "h3", null, null).value);
+        assertEquals("1", index.resolve("port", null, null, null).value);
+        assertEquals("cfg", index.resolve("only_global", null, null, null).value);
+        assertEquals("cfg", baseline(session.vars.get("only_global"), null, null, null).value);
+        assertEquals("/tree/ansible.cfg", index.resolve("only_global", "nohost", "nogroup", "norole").fileId.path);
+    }
+
+    /**
+     * resolveAll gives for every name what resolve gives for that name.
+     */
+    @Test
+    public void testResolveAllMatchesResolve() {
+        for (String host : index.getHosts()) {
+            for (String role : ROLES) {
+                TreeMap<String, Variable> all = index.resolveAll(host, index.getGroups(host), role);
+                for (String name : index.getNames()) {
+                    assertSame(host + " " + role + " " + name, index.resolve(name, host, null, role), all.get(name));
+                }
+                assertTrue(index.getNames().containsAll(all.keySet()));
+            }
+        }
+        for (String group : Arrays.asList("all", "web", "webprod", "db")) {
+            TreeMap<String, Variable> all = index.resolveGroup(group);
+            for (String name : index.getNames()) {
+                assertSame(group + " " + name, index.resolve(name, null, group, null), all.get(name));
+            }
+        }
+        assertEquals(index.resolveHost("h1"), index.resolveAll("h1", index.getGroups("h1"), null));
+        assertEquals("r", index.resolveRole("nginx").get("role_var").value);
+        assertNotSame(index.resolveRole("nginx").get("port"), index.resolveHost("h1").get("port"));
+    }
+
+    /**
+     * Changes to the session drop the index.
+     */
+    @Test
+    public void testInvalidate() {
+        session.putVar("app", null, "h2", null, new FileId(session, "/tree/host_vars/h2.yml"), "h2");
+        VariableIndex fresh = session.getVariableIndex();
+        assertNotSame(index, fresh);
+        assertEquals("h2", fresh.resolve("app", "h2", null, null).value);
+        assertEquals("web", index.resolve("app", "h2", null, null).value);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * VariableStore against a TreeMap of lists, the layout it replaced, under
+ * random adds, inserts and removals, including the compaction that follows
+ * enough removals.
+ *
+ * @author walter
+ */
+public class VariableStoreTest {
+
+    private final OverviewSession session = new OverviewSession();
+    private final VariableStore store = new VariableStore(session.files);
+    private final TreeMap<String, List<Variable>> model = new TreeMap<>();
+
+    private static String describe(Variable v) {
+        return v.level + " " + v.role + " " + v.host + " " + v.group + " " + v.fileId.id + " " + v.value;
+    }
+
+    private void check() {
+        assertEquals(model.size(), store.size());
+        Iterator<Map.Entry<String, List<Variable>>> it = store.entrySet().iterator();
+        for (Map.Entry<String, List<Variable>> e : model.entrySet()) {
+            Map.Entry<String, List<Variable>> got = it.next();
+            assertEquals(e.getKey(), got.getKey());
+            assertEquals(e.getValue().size(), got.getValue().size());
+            for (int i = 0; i < e.getValue().size(); i++) {
+                assertEquals(describe(e.getValue().get(i)), describe(got.getValue().get(i)));
+            }
+            assertTrue(store.containsKey(e.getKey()));
+        }
+        assertFalse(it.hasNext());
+    }
+
+    private void add(String name, Variable v, boolean insert) {
+        List<Variable> list = model.get(name);
+        if (null == list) {
+            list = new ArrayList<>();
+            model.put(name, list);
+        }
+        if (insert) {
+            int i = 0;
+            while (i < list.size() && list.get(i).fileId.id <= v.fileId.id) {
+                i++;
+            }
+            list.add(i, v);
+            store.insert(name, v);
+        } else {
+            list.add(v);
+            store.add(name, v);
+        }
+    }
+
+    private void remove(String name, FileId f) {
+        List<Variable> list = model.get(name);
+        if (null != list) {
+            for (Iterator<Variable> it = list.iterator(); it.hasNext();) {
+                if (it.next().fileId == f) {
+                    it.remove();
+                }
+            }
+            if (list.isEmpty()) {
+                model.remove(name);
+            }
+        }
+        store.removeFile(name, f);
+    }
+
+    @Test
+    public void testRandomUpdates() {
+        Random rnd = new Random(7);
+        FileId[] files = new FileId[40];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new FileId(session, "/tree/group_vars/g" + i + ".yml");
+        }
+        String[] groups = {null, "web", "db"};
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 400; i++) {
+                FileId f = files[rnd.nextInt(files.length)];
+                String group = groups[rnd.nextInt(groups.length)];
+                String[] values = {"", "value " + rnd.nextInt(1000) + " of " + f.id, "caf\u00e9 \u20ac" + i, "\ud83d\ude00 \u00ff"};
+                String value = values[rnd.nextInt(values.length)];
+                add("var_" + rnd.nextInt(60), new Variable(null, null, group, f, value), rnd.nextBoolean());
+            }
+            for (int i = 0; i < 300; i++) {
+                remove("var_" + rnd.nextInt(60), files[rnd.nextInt(files.length)]);
+            }
+            check();
+            int live = 0;
+            for (List<Variable> list : model.values()) {
+                live += list.size();
+            }
+            // removed rows are at most a quarter of all rows
+            assertTrue(store.rows() - live <= store.rows() / 4);
+        }
+    }
+
+    @Test
+    public void testCompactFreesRows() {
+        FileId keep = new FileId(session, "/tree/host_vars/keep.yml");
+        FileId drop = new FileId(session, "/tree/host_vars/drop.yml");
+        for (int i = 0; i < 10000; i++) {
+            add("v" + (i % 100), new Variable(null, "h" + i, null, i % 10 == 0 ? keep : drop, "x" + i), false);
+        }
+        assertEquals(10000, store.rows());
+        long before = store.footprint();
+        for (int i = 0; i < 100; i++) {
+            remove("v" + i, drop);
+        }
+        check();
+        assertTrue(store.rows() < 2000);
+        assertTrue(store.footprint() < before / 2);
+        add("v0", new Variable(null, "h", null, drop, "again"), false);
+        add("v0", new Variable(null, "h", null, keep, "first"), true);
+        check();
+        for (int i = 0; i < 100; i++) {
+            remove("v" + i, keep);
+        }
+        assertEquals(1, store.size());
+        assertEquals("again", store.get("v0").get(0).value);
+        assertNull(store.get("v1"));
+        check();
+    }
+}
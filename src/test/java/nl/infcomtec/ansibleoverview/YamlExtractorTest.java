@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2024 by Walter Stroebel and InfComTec.
+ */
+package nl.infcomtec.ansibleoverview;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * YamlExtractor on vars files and inventories: values as written, merge keys,
+ * hosts and children, and text outside the BMP.
+ *
+ * @author walter
+ */
+public class YamlExtractorTest {
+
+    private static ScanResult vars(String text) {
+        ScanResult res = new ScanResult(ScanResult.Kind.VARS, new File("group_vars/web.yml"), null, null, "web", null);
+        YamlExtractor.vars(res, text);
+        return res;
+    }
+
+    private static ScanResult inventory(String text) {
+        ScanResult res = new ScanResult(ScanResult.Kind.INVENTORY, new File("hosts.yml"));
+        YamlExtractor.inventory(res, text);
+        return res;
+    }
+
+    private static List<String> defs(ScanResult res) {
+        List<String> ret = new ArrayList<>();
+        for (ScanResult.Def d : res.defs) {
+            ret.add(d.name + " " + d.host + " " + d.group + " " + d.value);
+        }
+        return ret;
+    }
+
+    private static List<String> pairs(List<String[]> list) {
+        List<String> ret = new ArrayList<>();
+        for (String[] p : list) {
+            ret.add(p[0] + " " + p[1]);
+        }
+        return ret;
+    }
+
+    @Test
+    public void testSourceText() {
+        ScanResult res = vars("---\n"
+                + "plain: value one\n"
+                + "quoted: \"{{ host }}:{{ port }}\"\n"
+                + "list:\n"
+                + "  - one\n"
+                + "  - two  # kept\n"
+                + "  - \"{{ item }}\"\n"
+                + "# comment after the list\n"
+                + "\n"
+                + "map:\n"
+                + "    name: svc\n"
+                + "    limits:\n"
+                + "      cpu: 2\n"
+                + "flow: {a: 1, b: [x, y]}\n"
+                + "anchored: &a !!str tagged\n"
+                + "alias: *a\n"
+                + "plain: last wins\n");
+        assertEquals(Arrays.asList(
+                "plain null web last wins",
+                "quoted null web {{ host }}:{{ port }}",
+                "list null web - one\n- two  # kept\n- \"{{ item }}\"",
+                "map null web name: svc\nlimits:\n  cpu: 2",
+                "flow null web {a: 1, b: [x, y]}",
+                "anchored null web tagged",
+                "alias null web tagged"), defs(res));
+    }
+
+    @Test
+    public void testMergeKeys() {
+        ScanResult res = vars("base: &base\n"
+                + "  port: 80\n"
+                + "  user: app\n"
+                + "extra: &extra\n"
+                + "  debug: true\n"
+                + "<<: [*base, *extra]\n"
+                + "port: 8080\n");
+        assertEquals(Arrays.asList(
+                "base null web port: 80\nuser: app",
+                "extra null web debug: true",
+                "port null web 8080",
+                "user null web app",
+                "debug null web true"), defs(res));
+        res = inventory("defaults: &d\n"
+                + "  hosts:\n"
+                + "    h0:\n"
+                + "all:\n"
+                + "  children:\n"
+                + "    web:\n"
+                + "      hosts:\n"
+                + "        h1: &hv\n"
+                + "          port: 80\n"
+                + "          user: app\n"
+                + "        h2:\n"
+                + "          <<: *hv\n"
+                + "          port: 8080\n");
+        assertEquals(Arrays.asList(
+                "port h1 web 80", "user h1 web app", "port h2 web 8080", "user h2 web app"), defs(res));
+    }
+
+    @Test
+    public void testInventory() {
+        ScanResult res = inventory("all:\n"
+                + "  hosts:\n"
+                + "    lonely:\n"
+                + "  vars:\n"
+                + "    ntp: pool.ntp.org\n"
+                + "  children:\n"
+                + "    web:\n"
+                + "      hosts:\n"
+                + "        w1:\n"
+                + "          ansible_host: 10.0.0.1\n"
+                + "        w2:\n"
+                + "      vars:\n"
+                + "        http_port: 80\n"
+                + "    prod:\n"
+                + "      children:\n"
+                + "        web:\n"
+                + "        db:\n"
+                + "          hosts:\n"
+                + "            d1:\n");
+        assertEquals(Arrays.asList("all lonely", "web w1", "web w2", "db d1"), distinct(pairs(res.hosts)));
+        assertEquals(Arrays.asList("all web", "all prod", "prod web", "prod db"), pairs(res.children));
+        assertEquals(Arrays.asList(
+                "ntp null all pool.ntp.org", "ansible_host w1 web 10.0.0.1", "http_port null web 80"), defs(res));
+    }
+
+    @Test
+    public void testJsonInventory() {
+        ScanResult res = inventory("{\"_meta\": {\"hostvars\": {\"w1\": {\"port\": 80}}},\n"
+                + " \"all\": {\"children\": [\"ungrouped\", \"web\"]},\n"
+                + " \"web\": {\"hosts\": [\"w1\", \"w2\"], \"vars\": {\"tier\": \"front\"}},\n"
+                + " \"legacy\": [\"x1\"]}\n");
+        assertEquals(Arrays.asList("w1 80"), Arrays.asList(res.defs.get(0).host + " " + res.defs.get(0).value));
+        assertEquals(Arrays.asList("all ungrouped", "all web"), pairs(res.children));
+        assertEquals(Arrays.asList("web w1", "web w2", "legacy x1"), distinct(pairs(res.hosts)));
+        assertEquals("tier null web front", defs(res).get(1));
+    }
+
+    /**
+     * Marks count code points, the slices are in chars.
+     */
+    @Test
+    public void testOutsideBmp() {
+        StringBuilder sb = new StringBuilder("smile: \"😀\"\n");
+        for (int i = 0; i < 2000; i++) {
+            sb.append("v").append(i).append(":\n  - 🚀 ").append(i).append("\n  - x\n");
+        }
+        sb.append("last:\n  k: 😀\n");
+        List<String> defs = defs(vars(sb.toString()));
+        assertEquals("smile null web 😀", defs.get(0));
+        assertEquals("v0 null web - 🚀 0\n- x", defs.get(1));
+        assertEquals("v1999 null web - 🚀 1999\n- x", defs.get(2000));
+        assertEquals("last null web k: 😀", defs.get(2001));
+    }
+
+    private static List<String> distinct(List<String> list) {
+        List<String> ret = new ArrayList<>();
+        for (String s : list) {
+            if (!ret.contains(s)) {
+                ret.add(s);
+            }
+        }
+        return ret;
+    }
+}